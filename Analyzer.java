@@ -0,0 +1,531 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+/*
+ * File: Analyzer.java
+ *
+ * Command line tool that searches every position of a file of games, or of a text file of
+ * positions, and writes what the engine thinks of each one as a line of CSV: the move played,
+ * the best move, its score, the depth reached and the nodes searched. The positions are read
+ * one at a time and searched on a thread pool with a bounded queue, so files of any size are
+ * analyzed in constant memory on every core.
+ *
+ * The lines come out in the order of the positions. Every CHECKPOINT seconds the output is
+ * forced to disk and the number of positions written is saved next to it, so a run that is
+ * stopped can go on where it left off with -resume. The output is cut back to the last
+ * checkpoint and the positions before it are skipped.
+ *
+ * Games are files of GameRecordWriter. Every position before a move is searched, passes are
+ * not. Positions are text lines in the format of the BOARD reply of GameServer, "BOARD" being
+ * optional: size, player to move, then rows y = 1 first joined by '/', each x = a first, with
+ * x, o or '.' for every square, e.g. "4 x ..../.ox./.xo./....".
+ *
+ * CSV columns: game,ply,size,turn,played,best,score,depth,nodes,micros
+ *   game and ply number the game and the move in it from 0, for a positions file game is the
+ *   line's position and ply is 0. played is empty for positions, best is "pass" when the
+ *   player to move has no move. score is for the player to move: the minimax value, or the
+ *   search's score, where a finished game is Search.finalScore() of the piece difference,
+ *   Search.WIN_SCORE plus it for a win, minus Search.WIN_SCORE plus it for a loss and 0 for a
+ *   draw. Positions the endgame solver solved are scored the same way. The score of a played
+ *   move is the negated score of the next position of the game.
+ *
+ * Usage: java Analyzer -games=FILE|-positions=FILE -out=FILE.csv [-engine=search:6]
+ *                      [-threads=N] [-queue=N] [-checkpoint=SECONDS] [-resume]
+ *   engines are minimax:N, search:N and timed:MS, as in Tournament
+ */
+public class Analyzer {
+
+    public static final String HEADER = "game,ply,size,turn,played,best,score,depth,nodes,micros";
+    private static final int DEFAULT_CHECKPOINT_SECONDS = 30;
+    //each thread clears its table before every position, so it is kept small
+    private static final int TABLE_MEGABYTES = 2;
+
+    private int engineType;
+    private int depth;
+    private long moveTimeMillis;
+    //each search thread's searches, so no two threads share a transposition table
+    private ThreadLocal<Engine> engines = ThreadLocal.withInitial(Engine::new);
+
+    public static void main(String[] args) throws IOException {
+        String games = null;
+        String positions = null;
+        String out = null;
+        String engine = "search:6";
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = -1;
+        int checkpointSeconds = DEFAULT_CHECKPOINT_SECONDS;
+        boolean resume = false;
+        for(String arg: args){
+            if(arg.startsWith("-games=")){
+                games = arg.substring("-games=".length());
+            }
+            else if(arg.startsWith("-positions=")){
+                positions = arg.substring("-positions=".length());
+            }
+            else if(arg.startsWith("-out=")){
+                out = arg.substring("-out=".length());
+            }
+            else if(arg.startsWith("-engine=")){
+                engine = arg.substring("-engine=".length());
+            }
+            else if(arg.startsWith("-threads=")){
+                threads = Math.max(1, Integer.parseInt(arg.substring("-threads=".length())));
+            }
+            else if(arg.startsWith("-queue=")){
+                queue = Math.max(1, Integer.parseInt(arg.substring("-queue=".length())));
+            }
+            else if(arg.startsWith("-checkpoint=")){
+                checkpointSeconds = Math.max(1, Integer.parseInt(arg.substring("-checkpoint=".length())));
+            }
+            else if(arg.equals("-resume")){
+                resume = true;
+            }
+            else{
+                System.out.println("Unknown option " + arg);
+                return;
+            }
+        }
+        if(out == null || (games == null) == (positions == null)){
+            System.out.println("Usage: java Analyzer -games=FILE|-positions=FILE -out=FILE.csv [-engine=search:6] [-threads=N] [-queue=N] [-checkpoint=SECONDS] [-resume]");
+            System.out.println("ENGINE is minimax:N, search:N or timed:MS");
+            return;
+        }
+        if(queue < 0){
+            queue = threads * 16;
+        }
+
+        Analyzer analyzer;
+        try{
+            analyzer = new Analyzer(engine);
+        }
+        catch(IllegalArgumentException e){
+            System.out.println(e.getMessage());
+            return;
+        }
+        String input = games != null ? games : positions;
+        try(PositionSource source = games != null ? new GameSource(Paths.get(games)) : new TextSource(Paths.get(positions))){
+            analyzer.run(source, input + " " + engine, Paths.get(out), threads, queue, checkpointSeconds * 1000L, resume);
+        }
+    }
+
+    /**
+     * @param engine engine as minimax:N, search:N or timed:MS
+     * @throws IllegalArgumentException if the engine cannot be read
+     */
+    public Analyzer(String engine){
+        String[] parts = engine.split(":");
+        try{
+            if(parts.length != 2){
+                throw new IllegalArgumentException("Unknown engine " + engine);
+            }
+            else if(parts[0].equals("minimax")){
+                engineType = 3;
+                depth = Integer.parseInt(parts[1]);
+            }
+            else if(parts[0].equals("search")){
+                engineType = 4;
+                depth = Integer.parseInt(parts[1]);
+            }
+            else if(parts[0].equals("timed")){
+                engineType = 4;
+                depth = Integer.MAX_VALUE;
+                moveTimeMillis = Long.parseLong(parts[1]);
+            }
+            else{
+                throw new IllegalArgumentException("Unknown engine " + engine);
+            }
+        }
+        catch(NumberFormatException e){
+            throw new IllegalArgumentException("Engine " + engine + " needs a number after the colon");
+        }
+    }
+
+    /**
+     * Analyzes every position of the source and writes the CSV, resuming from the checkpoint
+     * of an earlier run if asked to
+     *
+     * @param source positions to analyze, read from the start
+     * @param job input and engine, a checkpoint of a different job is not resumed
+     * @param out CSV file to write
+     * @param threads number of search threads
+     * @param queue positions that may wait for a thread, the reader waits when they are all taken
+     * @param checkpointMillis time between checkpoints
+     * @param resume true to go on from the checkpoint next to out if there is one
+     * @throws IOException if a file cannot be read or written
+     */
+    public void run(PositionSource source, String job, Path out, int threads, int queue, long checkpointMillis, boolean resume) throws IOException {
+        Path checkpointFile = Paths.get(out + ".checkpoint");
+        long done = 0;
+        long bytes = 0;
+        if(resume && Files.exists(checkpointFile)){
+            Properties checkpoint = new Properties();
+            try(Reader reader = Files.newBufferedReader(checkpointFile)){
+                checkpoint.load(reader);
+            }
+            if(!job.equals(checkpoint.getProperty("job"))){
+                throw new IOException(checkpointFile + " is for \"" + checkpoint.getProperty("job") + "\", not \"" + job + "\"");
+            }
+            if(Boolean.parseBoolean(checkpoint.getProperty("complete"))){
+                System.out.println(out + " is already complete");
+                return;
+            }
+            done = Long.parseLong(checkpoint.getProperty("positions"));
+            bytes = Long.parseLong(checkpoint.getProperty("bytes"));
+            System.out.println("Resuming after " + done + " positions");
+        }
+
+        //no more positions are in flight than fit in the threads and the queue, and the queue holds
+        //them all, as a thread that finished a position may not have taken the next one yet
+        int inFlight = threads + queue;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(inFlight), runnable -> {
+            Thread thread = new Thread(runnable, "analyzer-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+        try(FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE)){
+            //anything past the checkpoint is thrown away and written again
+            channel.truncate(bytes);
+            channel.position(bytes);
+            Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.US_ASCII.newEncoder(), 1 << 16));
+            if(bytes == 0){
+                writer.write(HEADER);
+                writer.write('\n');
+                bytes += HEADER.length() + 1;
+            }
+            source.skip(done);
+
+            long start = System.nanoTime();
+            long written = done;
+            long lastCheckpoint = System.currentTimeMillis();
+            Position position;
+            while(true){
+                position = source.next();
+                if(position != null){
+                    Position task = position;
+                    pending.add(pool.submit(() -> analyze(task)));
+                }
+                //writes the oldest line once the pipeline is full, and every line at the end
+                while(!pending.isEmpty() && (pending.size() >= inFlight || position == null || pending.peek().isDone())){
+                    String line = take(pending.poll());
+                    writer.write(line);
+                    writer.write('\n');
+                    bytes += line.length() + 1;
+                    written++;
+                }
+                if(position == null){
+                    break;
+                }
+                if(System.currentTimeMillis() - lastCheckpoint >= checkpointMillis){
+                    checkpoint(writer, channel, checkpointFile, job, written, bytes, false);
+                    lastCheckpoint = System.currentTimeMillis();
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("Analyzed %d positions, %.1f positions/s%n", written, (written - done) / seconds);
+                }
+            }
+            checkpoint(writer, channel, checkpointFile, job, written, bytes, true);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Analyzed %d positions in %.1f s, %.1f positions/s, wrote %s%n", written - done, seconds, (written - done) / seconds, out);
+        }
+        finally{
+            pool.shutdownNow();
+        }
+    }
+
+    private static String take(Future<String> future){
+        try{
+            return future.get();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Analysis interrupted", e);
+        }
+        catch(ExecutionException e){
+            throw new IllegalStateException("Analysis failed", e.getCause());
+        }
+    }
+
+    //forces the lines written so far to disk, then replaces the checkpoint file with one naming them
+    private static void checkpoint(Writer writer, FileChannel channel, Path file, String job, long positions, long bytes, boolean complete) throws IOException {
+        writer.flush();
+        channel.force(false);
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("job", job);
+        checkpoint.setProperty("positions", Long.toString(positions));
+        checkpoint.setProperty("bytes", Long.toString(bytes));
+        checkpoint.setProperty("complete", Boolean.toString(complete));
+        Path temp = Paths.get(file + ".tmp");
+        try(Writer out = Files.newBufferedWriter(temp)){
+            checkpoint.store(out, "Analyzer progress, positions written to the CSV and its length in bytes");
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * -----------SEARCH CODE--------------
+     */
+
+    /**
+     * Searches one position on the calling thread with that thread's searches
+     *
+     * @param position position to search
+     * @return returns the CSV line of the position
+     */
+    public String analyze(Position position){
+        ReversiBoard board = position.board;
+        char turn = board.hasCurrentTurn();
+        int size = board.getGameSize();
+        int best = -1;
+        int score = 0;
+        int reached = 0;
+        long nodes = 0;
+        long start = System.nanoTime();
+        if(board.hasValidMove(turn)){
+            Engine engine = engines.get();
+            if(engineType == 3){
+                engine.context.reset(depth);
+                score = board.minimax(true, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, board, engine.context);
+                //the position's board is not used again, so the move minimax chose is played on it
+                best = board.cpuMinimax(engine.context);
+                reached = depth;
+                nodes = engine.context.getNodes();
+            }
+            else if(size > BitBoard.MAX_SIZE){
+                WideSearch search = engine.wide;
+                best = moveTimeMillis > 0 ? search.findMoveTimed(board, turn, depth, moveTimeMillis) : search.findMove(board, turn, depth);
+                score = search.getScore();
+                reached = search.getCompletedDepth();
+                nodes = search.getNodes();
+            }
+            else{
+                Search search = engine.search(size);
+                //every position is searched as if it were the first, so the lines do not depend on
+                //which thread searched what before, and a resumed run writes what a whole run would
+                search.clear();
+                best = moveTimeMillis > 0 ? search.findMoveTimed(board, turn, depth, moveTimeMillis) : search.findMove(board, turn, depth);
+                score = search.getStats().getScore();
+                //a solved position reports the piece difference, turned into the score of a finished game
+                if(search.getStats().isSolved()){
+                    score = Search.finalScore(score);
+                }
+                reached = search.getCompletedDepth();
+                nodes = search.getNodes();
+            }
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+
+        StringBuilder line = new StringBuilder(64);
+        line.append(position.game).append(',').append(position.ply).append(',').append(size).append(',').append(turn).append(',');
+        if(position.played >= 0){
+            line.append(MoveList.moveName(position.played));
+        }
+        line.append(',').append(best >= 0 ? MoveList.moveName(best) : "pass");
+        line.append(',').append(score).append(',').append(reached).append(',').append(nodes).append(',').append(micros);
+        return line.toString();
+    }
+
+    //the searches of one thread
+    private class Engine {
+        private SearchContext<ReversiBoard> context = new SearchContext<ReversiBoard>(depth);
+        private Search[] searches = new Search[BitBoard.MAX_SIZE + 1];
+        private WideSearch wide = new WideSearch();
+
+        //a Search per board size, so one size never reads another's table entries
+        private Search search(int size){
+            if(searches[size] == null){
+                searches[size] = new Search(TABLE_MEGABYTES);
+            }
+            return searches[size];
+        }
+    }
+
+    /**
+     * -----------POSITION CODE--------------
+     */
+
+    //a position to search, on a board of its own
+    public static class Position {
+        private long game;
+        private int ply;
+        //MoveList move played from the position, -1 if unknown
+        private int played;
+        private ReversiBoard board;
+
+        public Position(long game, int ply, int played, ReversiBoard board){
+            this.game = game;
+            this.ply = ply;
+            this.played = played;
+            this.board = board;
+        }
+    }
+
+    //positions read one at a time
+    public interface PositionSource extends AutoCloseable {
+        //next position, null at the end
+        public Position next() throws IOException;
+        //passes over the first positions, as next() would
+        public void skip(long positions) throws IOException;
+        public void close() throws IOException;
+    }
+
+    //the position before every move of every game of a GameRecordWriter file
+    public static class GameSource implements PositionSource {
+        private GameRecordReader reader;
+        private GameRecord record = new GameRecord();
+        private ReversiBoard board;
+        private long game = -1;
+        private int ply;
+
+        public GameSource(Path file) throws IOException {
+            reader = new GameRecordReader(file);
+        }
+
+        public Position next() throws IOException {
+            while(true){
+                if(board == null || ply == record.getMoveCount()){
+                    if(!reader.next(record)){
+                        return null;
+                    }
+                    game++;
+                    board = record.start();
+                    ply = 0;
+                    continue;
+                }
+                int at = ply++;
+                if(record.isPass(at)){
+                    record.play(board, at);
+                    continue;
+                }
+                Position position = new Position(game, at, record.getMove(at), copy(board));
+                record.play(board, at);
+                return position;
+            }
+        }
+
+        //whole games are passed over without replaying them
+        public void skip(long positions) throws IOException {
+            while(positions > 0){
+                if(board != null && ply < record.getMoveCount()){
+                    next();
+                    positions--;
+                    continue;
+                }
+                if(!reader.next(record)){
+                    return;
+                }
+                game++;
+                int moves = 0;
+                for(int i = 0; i<record.getMoveCount(); i++){
+                    if(!record.isPass(i)){
+                        moves++;
+                    }
+                }
+                if(moves <= positions){
+                    positions -= moves;
+                    board = null;
+                }
+                else{
+                    board = record.start();
+                    ply = 0;
+                }
+            }
+        }
+
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    //one position per line, in the format of GameServer's BOARD reply
+    public static class TextSource implements PositionSource {
+        private BufferedReader reader;
+        private long line;
+        private long index;
+
+        public TextSource(Path file) throws IOException {
+            reader = Files.newBufferedReader(file);
+        }
+
+        public Position next() throws IOException {
+            String text;
+            while((text = reader.readLine()) != null){
+                line++;
+                text = text.trim();
+                if(text.length() == 0 || text.startsWith("#")){
+                    continue;
+                }
+                return new Position(index++, 0, -1, parse(text));
+            }
+            return null;
+        }
+
+        public void skip(long positions) throws IOException {
+            for(long i = 0; i<positions && next() != null; i++){
+            }
+        }
+
+        //reads "[BOARD] size turn rows"
+        private ReversiBoard parse(String text) throws IOException {
+            String[] words = text.split("\\s+");
+            int first = words[0].equals("BOARD") ? 1 : 0;
+            try{
+                if(words.length != first + 3){
+                    throw new IllegalArgumentException("expected size, player to move and rows");
+                }
+                int size = Integer.parseInt(words[first]);
+                char turn = words[first + 1].charAt(0);
+                String[] rows = words[first + 2].split("/");
+                if(size < 4 || size % 2 != 0 || rows.length != size || (turn != 'x' && turn != 'o')){
+                    throw new IllegalArgumentException("bad size, player or number of rows");
+                }
+                char[][] squares = new char[size][size];
+                for(int y = 0; y<size; y++){
+                    if(rows[y].length() != size){
+                        throw new IllegalArgumentException("row " + (y + 1) + " is not " + size + " squares");
+                    }
+                    for(int x = 0; x<size; x++){
+                        char piece = rows[y].charAt(x);
+                        squares[x][y] = piece == '.' ? ' ' : piece;
+                    }
+                }
+                return new ReversiBoard(size, squares, turn);
+            }
+            catch(IllegalArgumentException e){
+                throw new IOException("Not a position on line " + line + ": " + e.getMessage());
+            }
+        }
+
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    //a board of its own with the same pieces and player to move
+    private static ReversiBoard copy(ReversiBoard board){
+        int size = board.getGameSize();
+        char[][] squares = new char[size][size];
+        for(int x = 0; x<size; x++){
+            for(int y = 0; y<size; y++){
+                squares[x][y] = board.pieceAt(x, y);
+            }
+        }
+        return new ReversiBoard(size, squares, board.hasCurrentTurn());
+    }
+}
@@ -0,0 +1,535 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+/*
+ * File: Benchmark.java
+ *
+ * Micro benchmarks of the hot paths, to check whether a change to one of them made it faster:
+ *   moves.*      legal move generation
+ *   movePiece.*  playing a single move
+ *   eval.*       scoring a leaf
+ *   search.*     a fixed depth search
+ * each on ReversiBoard and on BitBoard, over a fixed set of opening, middle game and endgame
+ * positions for every board size. The positions come from seeded random games so they are the
+ * same on every run. moves.wide times WideBoard on every size, and sizes above 8 only run the
+ * WideBoard benchmarks. The *.simd benchmarks time VectorMoveGenerator against the scalar loops
+ * next to them, when the JVM is started with "--add-modules jdk.incubator.vector".
+ *
+ * Every benchmark is run in warmup iterations that are thrown away, so the JIT compiler has
+ * finished with it, then in measured iterations of a fixed length. The report gives operations
+ * per second with the 99.9% error over the measured iterations, bytes allocated per operation
+ * (from the JVM's per thread allocation counter) and nodes per second for the searches that
+ * count nodes. Work that only prepares an operation, such as copying the board a move is
+ * played on, happens outside the timed part.
+ *
+ * Usage: java Benchmark [-filter=REGEX] [-sizes=4,6,8,16] [-warmup=N] [-iterations=N] [-time=MS]
+ *                       [-depth=N] [-patterns=FILE]
+ */
+public class Benchmark {
+
+    private static final String[] PHASES = {"opening", "midgame", "endgame"};
+    private static final int POSITIONS_PER_PHASE = 16;
+    //a batch is timed as a whole, it grows until it takes at least this long
+    private static final long MIN_BATCH_NANOS = 1000000L;
+    private static final int MAX_BATCH = 1 << 16;
+
+    //results are added here so the JIT cannot throw away the work that produced them
+    private static volatile long sink;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private int warmupIterations;
+    private int iterations;
+    private long iterationNanos;
+
+    public static void main(String[] args) throws IOException {
+        Pattern filter = Pattern.compile(".*");
+        int[] sizes = {4, 6, 8};
+        int warmup = 5;
+        int iterations = 5;
+        long timeMillis = 1000;
+        int depth = 4;
+        Evaluator patterns = null;
+        for(String arg: args){
+            if(arg.startsWith("-filter=")){
+                filter = Pattern.compile(arg.substring("-filter=".length()));
+            }
+            else if(arg.startsWith("-sizes=")){
+                String[] parts = arg.substring("-sizes=".length()).split(",");
+                sizes = new int[parts.length];
+                for(int i = 0; i<parts.length; i++){
+                    sizes[i] = Integer.parseInt(parts[i].trim());
+                }
+            }
+            else if(arg.startsWith("-warmup=")){
+                warmup = Integer.parseInt(arg.substring("-warmup=".length()));
+            }
+            else if(arg.startsWith("-iterations=")){
+                iterations = Math.max(1, Integer.parseInt(arg.substring("-iterations=".length())));
+            }
+            else if(arg.startsWith("-time=")){
+                timeMillis = Math.max(1, Long.parseLong(arg.substring("-time=".length())));
+            }
+            else if(arg.startsWith("-depth=")){
+                depth = Integer.parseInt(arg.substring("-depth=".length()));
+            }
+            else if(arg.startsWith("-patterns=")){
+                patterns = PatternEvaluator.load(Paths.get(arg.substring("-patterns=".length())), new MobilityEvaluator());
+            }
+            else{
+                System.out.println("Unknown option " + arg);
+                return;
+            }
+        }
+
+        if(MoveGenerators.create(BitBoard.MAX_SIZE) == null){
+            System.out.println("Skipping the simd benchmarks, " + MoveGenerators.getUnavailableReason());
+        }
+        Benchmark benchmark = new Benchmark(warmup, iterations, timeMillis);
+        System.out.printf("%-24s %4s %-8s %14s %12s %12s %14s%n", "Benchmark", "Size", "Phase", "ops/s", "error", "B/op", "nodes/s");
+        for(int size: sizes){
+            for(String phase: PHASES){
+                List<Case> cases;
+                if(size > BitBoard.MAX_SIZE){
+                    cases = wideCases(widePositions(size, phase));
+                }
+                else{
+                    cases = cases(positions(size, phase), depth, patterns);
+                }
+                for(Case c: cases){
+                    if(filter.matcher(c.name).find()){
+                        System.out.println(benchmark.run(c).format(c.name, size, phase));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param warmupIterations iterations run before measuring
+     * @param iterations measured iterations
+     * @param iterationMillis length of each iteration
+     */
+    public Benchmark(int warmupIterations, int iterations, long iterationMillis){
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1000000L;
+    }
+
+    /**
+     * Runs the warmup and measured iterations of one benchmark
+     *
+     * @param c benchmark to run
+     * @return returns the measurements
+     */
+    public Result run(Case c){
+        for(int i = 0; i<warmupIterations; i++){
+            iteration(c);
+        }
+        Result result = new Result(iterations);
+        for(int i = 0; i<iterations; i++){
+            long[] measured = iteration(c);
+            result.opsPerSecond[i] = measured[0] * 1e9 / measured[1];
+            result.ops += measured[0];
+            result.nanos += measured[1];
+            result.allocated += measured[2];
+            result.nodes += measured[3];
+        }
+        return result;
+    }
+
+    //runs timed batches until the iteration's time is used, returns {operations, nanoseconds, bytes allocated, nodes}
+    private long[] iteration(Case c){
+        long ops = 0;
+        long nanos = 0;
+        long allocated = 0;
+        long nodes = 0;
+        int batch = 1;
+        while(nanos < iterationNanos){
+            c.setup(batch);
+            long nodesBefore = c.nodes;
+            long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            long sum = 0;
+            for(int i = 0; i<batch; i++){
+                sum += c.run(i);
+            }
+            long elapsed = System.nanoTime() - start;
+            allocated += THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            sink += sum;
+            nodes += c.nodes - nodesBefore;
+            nanos += elapsed;
+            ops += batch;
+            if(elapsed < MIN_BATCH_NANOS && batch < c.maxBatch()){
+                batch = Math.min(batch * 2, c.maxBatch());
+            }
+        }
+        return new long[] {ops, nanos, allocated, nodes};
+    }
+
+    /**
+     * -----------POSITION CODE--------------
+     */
+
+    /**
+     * Builds the fixed positions of one game phase by playing seeded random games until the
+     * board is as full as the phase calls for. Every position has a move for the player to move.
+     *
+     * @param size width and height of the board
+     * @param phase "opening", "midgame" or "endgame"
+     * @return returns POSITIONS_PER_PHASE positions
+     */
+    public static BitBoard[] positions(int size, String phase){
+        int empties = phaseEmpties(size, phase);
+        Random random = new Random(size * 31L + empties);
+        BitBoard[] positions = new BitBoard[POSITIONS_PER_PHASE];
+        int found = 0;
+        while(found < POSITIONS_PER_PHASE){
+            BitBoard board = new BitBoard(size);
+            while(!board.isGameOver() && board.getEmptyCount() > empties){
+                long moves = board.movesFor(board.hasCurrentTurn());
+                if(moves == 0){
+                    board.passTurn();
+                    continue;
+                }
+                int skip = random.nextInt(Long.bitCount(moves));
+                for(int i = 0; i<skip; i++){
+                    moves &= moves - 1;
+                }
+                board.makeMove(Long.numberOfTrailingZeros(moves));
+            }
+            if(board.getEmptyCount() == empties && board.movesFor(board.hasCurrentTurn()) != 0){
+                positions[found++] = board;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Builds the positions of one game phase on a WideBoard, the same way as positions()
+     *
+     * @param size width and height of the board
+     * @param phase "opening", "midgame" or "endgame"
+     * @return returns POSITIONS_PER_PHASE positions
+     */
+    public static WideBoard[] widePositions(int size, String phase){
+        int empties = phaseEmpties(size, phase);
+        Random random = new Random(size * 31L + empties);
+        WideBoard[] positions = new WideBoard[POSITIONS_PER_PHASE];
+        MoveList moves = new MoveList();
+        int found = 0;
+        while(found < POSITIONS_PER_PHASE){
+            WideBoard board = new WideBoard(size);
+            while(!board.isGameOver() && board.getEmptyCount() > empties){
+                board.generateMoves(board.hasCurrentTurn(), moves);
+                if(moves.isEmpty()){
+                    board.passTurn();
+                    continue;
+                }
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+            if(board.getEmptyCount() == empties && board.hasValidMove(board.hasCurrentTurn())){
+                positions[found++] = board;
+            }
+        }
+        return positions;
+    }
+
+    //number of empty squares left in the positions of a game phase
+    private static int phaseEmpties(int size, String phase){
+        int squares = size * size;
+        if(phase.equals("opening")){
+            return squares - 4 - Math.max(2, squares / 16);
+        }
+        else if(phase.equals("midgame")){
+            return squares / 2;
+        }
+        return Math.max(3, squares / 6);
+    }
+
+    //the squares of a position in the char[][] form of ReversiBoard
+    private static char[][] toSquares(BitBoard position){
+        int size = position.getGameSize();
+        char[][] squares = new char[size][size];
+        for(int x = 0; x<size; x++){
+            for(int y = 0; y<size; y++){
+                squares[x][y] = position.pieceAt(x, y);
+            }
+        }
+        return squares;
+    }
+
+    /**
+     * -----------BENCHMARK CODE--------------
+     */
+
+    //one benchmark on one set of positions, run(i) is a single operation
+    public abstract static class Case {
+        private String name;
+        //nodes searched so far, for the benchmarks that count them
+        protected long nodes;
+
+        protected Case(String name){
+            this.name = name;
+        }
+
+        //prepares the next batch of operations, not timed
+        protected void setup(int batch){
+        }
+
+        protected int maxBatch(){
+            return MAX_BATCH;
+        }
+
+        protected abstract long run(int op);
+    }
+
+    //every benchmark on the given positions
+    private static List<Case> cases(BitBoard[] bitBoards, int depth, Evaluator patterns){
+        int count = bitBoards.length;
+        int size = bitBoards[0].getGameSize();
+        ReversiBoard[] boards = new ReversiBoard[count];
+        char[][][] squares = new char[count][][];
+        char[] turns = new char[count];
+        int[][] moves = new int[count][];
+        for(int i = 0; i<count; i++){
+            turns[i] = bitBoards[i].hasCurrentTurn();
+            squares[i] = toSquares(bitBoards[i]);
+            boards[i] = new ReversiBoard(size, ReversiBoard.copyGameState(size, squares[i]), turns[i]);
+            long bits = bitBoards[i].movesFor(turns[i]);
+            moves[i] = new int[Long.bitCount(bits)];
+            for(int m = 0; bits != 0; m++, bits &= bits - 1){
+                moves[i][m] = Long.numberOfTrailingZeros(bits);
+            }
+        }
+        BitBoard[] work = new BitBoard[count];
+        for(int i = 0; i<count; i++){
+            work[i] = bitBoards[i].copy();
+        }
+
+        List<Case> cases = new ArrayList<Case>();
+        cases.add(new Case("moves.reversi") {
+            protected long run(int op){
+                int i = op % count;
+                return boards[i].findValidMoves(turns[i]).size();
+            }
+        });
+        MoveList moveList = new MoveList();
+        cases.add(new Case("moveList.reversi") {
+            protected long run(int op){
+                int i = op % count;
+                boards[i].generateMoves(turns[i], moveList);
+                return moveList.size();
+            }
+        });
+        cases.add(new Case("moves.bitboard") {
+            protected long run(int op){
+                int i = op % count;
+                return bitBoards[i].movesFor(turns[i]);
+            }
+        });
+        MoveGenerator vector = MoveGenerators.create(size);
+        if(vector != null){
+            BitBoard[] simdBoards = new BitBoard[count];
+            for(int i = 0; i<count; i++){
+                simdBoards[i] = bitBoards[i].copy();
+                simdBoards[i].setMoveGenerator(vector);
+            }
+            cases.add(new Case("moves.simd") {
+                protected long run(int op){
+                    int i = op % count;
+                    return simdBoards[i].movesFor(turns[i]);
+                }
+            });
+            cases.add(new Case("movePiece.simd") {
+                protected long run(int op){
+                    int i = op % count;
+                    int square = moves[i][(op / count) % moves[i].length];
+                    long flipped = simdBoards[i].makeMove(square);
+                    simdBoards[i].undoMove(square, flipped);
+                    return flipped;
+                }
+            });
+        }
+        WideBoard[] wideBoards = new WideBoard[count];
+        for(int i = 0; i<count; i++){
+            wideBoards[i] = WideBoard.fromBoard(bitBoards[i], turns[i]);
+        }
+        cases.addAll(wideCases(wideBoards));
+        cases.add(new Case("movePiece.reversi") {
+            private ReversiBoard[] copies = new ReversiBoard[0];
+
+            //movePiece changes the board, so every operation gets its own copy
+            protected void setup(int batch){
+                if(copies.length < batch){
+                    copies = new ReversiBoard[batch];
+                }
+                for(int op = 0; op<batch; op++){
+                    int i = op % count;
+                    copies[op] = new ReversiBoard(size, ReversiBoard.copyGameState(size, squares[i]), turns[i]);
+                }
+            }
+
+            protected int maxBatch(){
+                return 4096;
+            }
+
+            protected long run(int op){
+                int i = op % count;
+                int square = moves[i][(op / count) % moves[i].length];
+                return copies[op].movePiece(BitBoard.squareX(square), BitBoard.squareY(square), turns[i]) ? 1 : 0;
+            }
+        });
+        cases.add(new Case("movePiece.bitboard") {
+            //the move is taken back straight away so the positions stay the same
+            protected long run(int op){
+                int i = op % count;
+                int square = moves[i][(op / count) % moves[i].length];
+                long flipped = work[i].makeMove(square);
+                work[i].undoMove(square, flipped);
+                return flipped;
+            }
+        });
+        cases.add(new Case("eval.reversi") {
+            protected long run(int op){
+                int i = op % count;
+                return boards[i].reversiHeuristic(turns[i]);
+            }
+        });
+        Evaluator[] evaluators = {new HeuristicEvaluator(), new MobilityEvaluator(), patterns};
+        String[] evaluatorNames = {"eval.heuristic", "eval.mobility", "eval.patterns"};
+        for(int e = 0; e<evaluators.length; e++){
+            Evaluator evaluator = evaluators[e];
+            if(evaluator == null){
+                continue;
+            }
+            cases.add(new Case(evaluatorNames[e]) {
+                protected long run(int op){
+                    return evaluator.evaluate(bitBoards[op % count]);
+                }
+            });
+        }
+        cases.add(new Case("search.minimax") {
+            private SearchContext<ReversiBoard> context = new SearchContext<ReversiBoard>(depth - 1);
+
+            protected long run(int op){
+                int i = op % count;
+                ReversiBoard board = boards[i];
+                context.reset(depth - 1);
+                int value = board.minimax(true, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, board, context);
+                nodes += context.getNodes();
+                return value;
+            }
+        });
+        cases.add(new Case("search.inplace") {
+            private Search search = newSearch();
+
+            protected long run(int op){
+                int i = op % count;
+                //a fresh table every time so each search does the same work
+                search.getTable().clear();
+                int square = search.findBestMove(bitBoards[i], turns[i], depth);
+                nodes += search.getNodes();
+                return square;
+            }
+        });
+        return cases;
+    }
+
+    //the move generation benchmarks of WideBoard, scalar and with the Vector API
+    private static List<Case> wideCases(WideBoard[] boards){
+        int count = boards.length;
+        int size = boards[0].getGameSize();
+        char[] turns = new char[count];
+        for(int i = 0; i<count; i++){
+            turns[i] = boards[i].hasCurrentTurn();
+        }
+        List<Case> cases = new ArrayList<Case>();
+        cases.add(new Case("moves.wide") {
+            protected long run(int op){
+                int i = op % count;
+                return boards[i].movesFor(turns[i])[size / 2];
+            }
+        });
+        if(MoveGenerators.create(size) == null){
+            return cases;
+        }
+        //every board needs a generator of its own for its scratch rows
+        WideBoard[] simdBoards = new WideBoard[count];
+        for(int i = 0; i<count; i++){
+            simdBoards[i] = boards[i].copy();
+            simdBoards[i].setMoveGenerator(MoveGenerators.create(size));
+        }
+        cases.add(new Case("moves.widesimd") {
+            protected long run(int op){
+                int i = op % count;
+                return simdBoards[i].movesFor(turns[i])[size / 2];
+            }
+        });
+        return cases;
+    }
+
+    //search that stays away from the endgame solver, so every phase measures the same search
+    private static Search newSearch(){
+        Search search = new Search(1);
+        search.setEndgameEmpties(0);
+        search.setPublishStats(false);
+        return search;
+    }
+
+    /**
+     * -----------RESULT CODE--------------
+     */
+
+    //measurements of one benchmark
+    public static class Result {
+        private double[] opsPerSecond;
+        private long ops;
+        private long nanos;
+        private long allocated;
+        private long nodes;
+
+        public Result(int iterations){
+            opsPerSecond = new double[iterations];
+        }
+
+        public double getOpsPerSecond(){
+            return ops * 1e9 / nanos;
+        }
+
+        //half width of the 99.9% confidence interval of the iterations' mean
+        public double getError(){
+            int n = opsPerSecond.length;
+            if(n < 2){
+                return Double.NaN;
+            }
+            double mean = 0;
+            for(double value: opsPerSecond){
+                mean += value / n;
+            }
+            double variance = 0;
+            for(double value: opsPerSecond){
+                variance += (value - mean) * (value - mean) / (n - 1);
+            }
+            return 3.29 * Math.sqrt(variance / n);
+        }
+
+        public double getBytesPerOp(){
+            return (double)allocated / ops;
+        }
+
+        public double getNodesPerSecond(){
+            return nodes * 1e9 / nanos;
+        }
+
+        public String format(String name, int size, String phase){
+            return String.format("%-24s %4d %-8s %14.1f %12.1f %12.1f %14s", name, size, phase, getOpsPerSecond(), getError(),
+                getBytesPerOp(), nodes == 0 ? "-" : String.format("%.0f", getNodesPerSecond()));
+        }
+    }
+}
@@ -0,0 +1,779 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * File: BitBoard.java
+ *
+ * Representation of a board for a game of Reversi using one 64 bit long per color.
+ * Square (x, y) is bit x*8 + y, so scanning bits from lowest to highest visits squares in
+ * the same order as the nested x, y loops of ReversiBoard. Boards smaller than 8x8 use the
+ * same layout with the unused squares masked off. Implements TwoPlayerPlayable and plays
+ * identically to ReversiBoard.
+ */
+public class BitBoard implements TwoPlayerPlayable<BitBoard>{
+
+    //largest board that fits in 64 bits, bigger boards play on WideBoard
+    public static final int MAX_SIZE = 8;
+    //number of bits between neighbouring squares, in the same order as the loops in ReversiBoard.movePiece()
+    private static final int[] DIRECTIONS = {-9, -8, -7, -1, 1, 7, 8, 9};
+    //all squares except y == 0 and y == 7, used to stop shifts wrapping into the next column
+    private static final long NOT_Y0 = 0xFEFEFEFEFEFEFEFEL;
+    private static final long NOT_Y7 = 0x7F7F7F7F7F7F7F7FL;
+
+    private int gameSize;
+    private char playerTurn;
+    private long black;
+    private long white;
+    private long hash;
+    private long mask;
+    private long[] directionMasks;
+    //vector move generation, null for the scalar loops below
+    private MoveGenerator generator;
+
+    public BitBoard(int gameSize){
+        this.gameSize = gameSize;
+        this.mask = squareMask(gameSize);
+        this.directionMasks = directionMasks(mask);
+        this.generator = MoveGenerators.forBitBoard(gameSize);
+        playerTurn = 'x';
+        initBoard();
+    }
+
+    public BitBoard(int gameSize, long black, long white, char playerChar){
+        this.gameSize = gameSize;
+        this.mask = squareMask(gameSize);
+        this.directionMasks = directionMasks(mask);
+        this.generator = MoveGenerators.forBitBoard(gameSize);
+        this.black = black;
+        this.white = white;
+        this.playerTurn = playerChar;
+        this.hash = Zobrist.hash(black, white, playerChar);
+    }
+
+    private BitBoard(BitBoard other, char playerChar){
+        this.gameSize = other.gameSize;
+        this.mask = other.mask;
+        this.directionMasks = other.directionMasks;
+        this.generator = other.generator;
+        this.black = other.black;
+        this.white = other.white;
+        this.playerTurn = playerChar;
+        this.hash = other.playerTurn == playerChar ? other.hash : other.hash ^ Zobrist.WHITE_TO_MOVE;
+    }
+
+    /**
+     * -------------BIT HELPERS------------------
+     */
+
+    /**
+     * Finds the bit index of a board location
+     *
+     * @param x x axis location, 0 being the column labelled "a"
+     * @param y y axis location, 0 being the row labelled "1"
+     * @return returns the bit index of the square
+     */
+    public static int square(int x, int y){
+        return (x << 3) | y;
+    }
+
+    //bit index as a MoveList move, -1 stays -1
+    public static int toMove(int square){
+        if(square < 0){
+            return -1;
+        }
+        return MoveList.move(squareX(square), squareY(square));
+    }
+
+    //x axis location of a bit index
+    public static int squareX(int square){
+        return square >>> 3;
+    }
+
+    //y axis location of a bit index
+    public static int squareY(int square){
+        return square & 7;
+    }
+
+    /**
+     * Bits of every square on a board of the given size
+     *
+     * @param gameSize width and height of the board, at most 8
+     * @return returns the mask of squares that are on the board
+     */
+    public static long squareMask(int gameSize){
+        if(gameSize < 1 || gameSize > MAX_SIZE){
+            throw new IllegalArgumentException("BitBoard supports boards up to 8x8, got " + gameSize);
+        }
+        long column = (1L << gameSize) - 1;
+        long result = 0;
+        for(int x = 0; x<gameSize; x++){
+            result |= column << (x << 3);
+        }
+        return result;
+    }
+
+    //mask applied after shifting in each direction, removes squares that wrapped around or fell off the board
+    private static long[] directionMasks(long mask){
+        long[] result = new long[DIRECTIONS.length];
+        for(int d = 0; d<DIRECTIONS.length; d++){
+            int dy = Math.floorMod(DIRECTIONS[d] + 1, 8) - 1;
+            if(dy == 1){
+                result[d] = mask & NOT_Y0;
+            }
+            else if(dy == -1){
+                result[d] = mask & NOT_Y7;
+            }
+            else{
+                result[d] = mask;
+            }
+        }
+        return result;
+    }
+
+    private static long shift(long bits, int d, long directionMask){
+        int amount = DIRECTIONS[d];
+        if(amount > 0){
+            return (bits << amount) & directionMask;
+        }
+        return (bits >>> -amount) & directionMask;
+    }
+
+    /**
+     * Finds the squares next to any of the given squares in any of the eight directions
+     *
+     * @param bits squares to spread from
+     * @return returns the bits of every square on the board touching one of the given squares
+     */
+    public long neighbours(long bits){
+        long result = 0;
+        for(int d = 0; d<DIRECTIONS.length; d++){
+            result |= shift(bits, d, directionMasks[d]);
+        }
+        return result;
+    }
+
+    /**
+     * Finds every legal move for the player owning own by flooding along all eight directions
+     *
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @return returns the bits of every empty square that flips at least one piece
+     */
+    public long legalMoves(long own, long opp){
+        if(generator != null){
+            return generator.legalMoves(own, opp);
+        }
+        long empty = ~(own | opp) & mask;
+        long moves = 0;
+        for(int d = 0; d<DIRECTIONS.length; d++){
+            long dirMask = directionMasks[d];
+            long run = shift(own, d, dirMask) & opp;
+            run |= shift(run, d, dirMask) & opp;
+            run |= shift(run, d, dirMask) & opp;
+            run |= shift(run, d, dirMask) & opp;
+            run |= shift(run, d, dirMask) & opp;
+            run |= shift(run, d, dirMask) & opp;
+            moves |= shift(run, d, dirMask) & empty;
+        }
+        return moves;
+    }
+
+    /**
+     * Finds the pieces flipped by placing a piece on the given square
+     *
+     * @param square bit index of the square played
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @return returns the bits of every flipped piece, 0 if the move is not legal
+     */
+    public long flips(int square, long own, long opp){
+        if(generator != null){
+            return generator.flips(square, own, opp);
+        }
+        long move = 1L << square;
+        long flipped = 0;
+        for(int d = 0; d<DIRECTIONS.length; d++){
+            long dirMask = directionMasks[d];
+            long run = 0;
+            long next = shift(move, d, dirMask);
+            while((next & opp) != 0){
+                run |= next;
+                next = shift(next, d, dirMask);
+            }
+            if((next & own) != 0){
+                flipped |= run;
+            }
+        }
+        return flipped;
+    }
+
+    /**
+     * -------------GAMEPLAY CODE------------------
+     */
+
+    public void initBoard(){
+        int rightMidLength = gameSize/2;
+        int leftMidLength = gameSize/2 - 1;
+        int topMidWidth = gameSize/2 - 1;
+        int bottomMidWidth = gameSize/2;
+
+        black = (1L << square(leftMidLength, bottomMidWidth)) | (1L << square(rightMidLength, topMidWidth));
+        white = (1L << square(leftMidLength, topMidWidth)) | (1L << square(rightMidLength, bottomMidWidth));
+        hash = Zobrist.hash(black, white, playerTurn);
+    }
+
+    public boolean movePiece(int x, int y, char playerChar){
+        //location is off the board
+        if(x < 0 || x >= gameSize || y < 0 || y >= gameSize){
+            return false;
+        }
+        int square = square(x, y);
+        long own = playerChar == 'x' ? black : white;
+        long opp = playerChar == 'x' ? white : black;
+
+        //location already occupied
+        if((((own | opp) >>> square) & 1L) != 0){
+            return false;
+        }
+
+        long flipped = flips(square, own, opp);
+        if(flipped == 0){
+            return false;
+        }
+
+        own |= flipped | (1L << square);
+        opp &= ~flipped;
+        //the hash always changes side to move, fix it up if the turn does not actually change
+        hash ^= Zobrist.moveDelta(square, flipped, playerChar);
+        if(playerTurn == (playerChar == 'x' ? 'o' : 'x')){
+            hash ^= Zobrist.WHITE_TO_MOVE;
+        }
+        if(playerChar == 'x'){
+            black = own;
+            white = opp;
+            playerTurn = 'o';
+        }
+        else{
+            white = own;
+            black = opp;
+            playerTurn = 'x';
+        }
+        return true;
+    }
+
+    public boolean safeMove(int x, int y, char playerChar){
+        //movePiece never changes the board on an illegal move, so no copy is needed
+        if(movePiece(x, y, playerChar)){
+            return true;
+        }
+        else{
+            printBoard();
+            return false;
+        }
+    }
+
+    public List<BitBoard> findValidMoves(char playerChar){
+        ArrayList<BitBoard> validMovesList = new ArrayList<BitBoard>();
+        findValidMoves(playerChar, validMovesList);
+        return validMovesList;
+    }
+
+    public void findValidMoves(char playerChar, List<BitBoard> validMovesList){
+        validMovesList.clear();
+        long moves = movesFor(playerChar);
+
+        while(moves != 0){
+            int square = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            BitBoard nextMoveBoard = new BitBoard(this, playerChar);
+            nextMoveBoard.movePiece(squareX(square), squareY(square), playerChar);
+            validMovesList.add(nextMoveBoard);
+        }
+    }
+
+    public void generateMoves(char playerChar, MoveList list){
+        list.clear();
+        for(long moves = movesFor(playerChar); moves != 0; moves &= moves - 1){
+            int square = Long.numberOfTrailingZeros(moves);
+            list.add(squareX(square), squareY(square));
+        }
+    }
+
+    public boolean apply(int move, char playerChar){
+        return movePiece(MoveList.moveX(move), MoveList.moveY(move), playerChar);
+    }
+
+    public BitBoard applied(int move, char playerChar){
+        BitBoard nextMoveBoard = new BitBoard(this, playerChar);
+        if(nextMoveBoard.apply(move, playerChar)){
+            return nextMoveBoard;
+        }
+        return null;
+    }
+
+    public List<List<Integer>> storeValidMoves(char playerChar){
+        ArrayList<List<Integer>> validMovesList = new ArrayList<List<Integer>>();
+        long moves = movesFor(playerChar);
+
+        while(moves != 0){
+            int square = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            ArrayList<Integer> boardLocation = new ArrayList<Integer>();
+            boardLocation.add(squareX(square));
+            boardLocation.add(squareY(square));
+            validMovesList.add(boardLocation);
+        }
+
+        return validMovesList;
+    }
+
+    /**
+     * Finds the legal moves of the given player
+     *
+     * @param playerChar player to find moves for
+     * @return returns the bits of every legal move
+     */
+    public long movesFor(char playerChar){
+        if(playerChar == 'x'){
+            return legalMoves(black, white);
+        }
+        return legalMoves(white, black);
+    }
+
+    /**
+     * -------------MAKE/UNMAKE CODE------------------
+     */
+
+    /**
+     * Plays a move for the player whose turn it is, in place and without checking legality.
+     * The returned flips are all undoMove() needs to restore the board.
+     *
+     * @param square bit index of a legal move for the player to move
+     * @return returns the bits of the flipped pieces
+     */
+    public long makeMove(int square){
+        long bit = 1L << square;
+        if(playerTurn == 'x'){
+            long flipped = flips(square, black, white);
+            black |= flipped | bit;
+            white &= ~flipped;
+            hash ^= Zobrist.moveDelta(square, flipped, 'x');
+            playerTurn = 'o';
+            return flipped;
+        }
+        else{
+            long flipped = flips(square, white, black);
+            white |= flipped | bit;
+            black &= ~flipped;
+            hash ^= Zobrist.moveDelta(square, flipped, 'o');
+            playerTurn = 'x';
+            return flipped;
+        }
+    }
+
+    /**
+     * Takes back a move made by makeMove(), giving the turn back to the player who made it
+     *
+     * @param square bit index of the move to take back
+     * @param flipped pieces returned by makeMove() for this move
+     */
+    public void undoMove(int square, long flipped){
+        long bit = 1L << square;
+        if(playerTurn == 'o'){
+            black &= ~(flipped | bit);
+            white |= flipped;
+            playerTurn = 'x';
+        }
+        else{
+            white &= ~(flipped | bit);
+            black |= flipped;
+            playerTurn = 'o';
+        }
+        hash ^= Zobrist.moveDelta(square, flipped, playerTurn);
+    }
+
+    /**
+     * Gives the turn to the other player without placing a piece
+     */
+    public void passTurn(){
+        playerTurn = playerTurn == 'x' ? 'o' : 'x';
+        hash ^= Zobrist.WHITE_TO_MOVE;
+    }
+
+    /**
+     * Copies the position and player to move into a new board
+     *
+     * @return returns a board independent of this one
+     */
+    public BitBoard copy(){
+        return new BitBoard(this, playerTurn);
+    }
+
+    /**
+     * Copies the position turned by one of the symmetries of the board
+     *
+     * @param symmetry number from 0 to 7, see Symmetry
+     * @return returns the turned board with the same player to move
+     */
+    public BitBoard transformed(int symmetry){
+        return new BitBoard(gameSize, Symmetry.apply(black, symmetry, gameSize), Symmetry.apply(white, symmetry, gameSize), playerTurn);
+    }
+
+    //symmetry that turns this board into its canonical orientation, the same for all 8 orientations
+    public int canonicalSymmetry(){
+        long own = playerTurn == 'x' ? black : white;
+        long opp = playerTurn == 'x' ? white : black;
+        return Symmetry.canonicalSymmetry(own, opp, gameSize);
+    }
+
+    /**
+     * Builds a bitboard holding the same position as any other board
+     *
+     * @param board board to copy
+     * @param playerChar player to move on the copy
+     * @return returns a bitboard with the same pieces
+     */
+    public static BitBoard fromBoard(TwoPlayerPlayable<?> board, char playerChar){
+        if(board instanceof BitBoard){
+            return new BitBoard((BitBoard)board, playerChar);
+        }
+        int size = board.getGameSize();
+        long black = 0;
+        long white = 0;
+        for(int i = 0; i<size; i++){
+            for(int j = 0; j<size; j++){
+                if(board.pieceAt(i, j) == 'x'){
+                    black |= 1L << square(i, j);
+                }
+                else if(board.pieceAt(i, j) == 'o'){
+                    white |= 1L << square(i, j);
+                }
+            }
+        }
+        return new BitBoard(size, black, white, playerChar);
+    }
+
+    /**
+     * -----------MINIMAX CODE-------------
+     */
+
+    /**
+     * Recursively implements the H-Minimax algorithm in the same way as ReversiBoard.minimax(),
+     * so both representations pick the same moves.
+     *
+     * @param maxPlayer if the current iteration of the method is true in wanting to maximize the value for the player,
+     *                  minimizing value if false. Initial call should make this true.
+     * @param level Keeps track of the current depth of the tree. Inital call should make this 0.
+     * @param alpha Holds the value of alpha in the context of alpha-beta pruning. Initial call should make this Integer.Min_Value.
+     * @param beta Holds the value of beta in the context of alpha-beta pruning. Initial call should make this Integer.Max_Value.
+     * @param board Holds the current board. Initial call should make this the given board.
+     * @param context Holds the cutoff depth, the best move and the lists of children of this search.
+     *                Initial call should reset it.
+     * @return Returns the value of the board.
+     */
+    public int minimax(boolean maxPlayer, int level, int alpha, int beta, BitBoard board, SearchContext<BitBoard> context){
+        context.visit();
+        //reached the cutoff level
+        if(level > context.getMaxLevel()){
+            return board.reversiHeuristic(board.playerTurn);
+        }
+
+        //finds children for the correct color, the player to move when maximizing and the other player otherwise
+        char turn = board.playerTurn;
+        char other = turn == 'x' ? 'o' : 'x';
+        List<BitBoard> children = context.children(level);
+        board.findValidMoves(maxPlayer ? turn : other, children);
+
+        //if no more moves, return value
+        if(children.size() == 0){
+            if(maxPlayer){
+                return board.getValue(turn);
+            }
+            else{
+                return -1 * board.getValue(turn);
+            }
+        }
+
+        //If the current iteration aims to find max value
+        if(maxPlayer){
+            int max = Integer.MIN_VALUE;
+            int bestMoveLocation = 0;
+
+            //run minimax for each children
+            for(int i = 0; i<children.size(); i++){
+                int keep = minimax(false, level + 1, alpha, beta, children.get(i), context);
+                max = Math.max(max, keep);
+                if(keep > alpha){
+                    alpha = keep;
+                    bestMoveLocation = i;
+                }
+                if(beta <= alpha){
+                    context.cutoff();
+                    break;
+                }
+            }
+
+            //back at top of tree
+            if(level == 0){
+                context.setBestMove(children.get(bestMoveLocation));
+            }
+
+            return max;
+        }
+        //if current iteration aims to minimize value
+        else{
+            int min = Integer.MAX_VALUE;
+            for(int i = 0; i<children.size(); i++){
+                int keep = minimax(true, level + 1, alpha, beta, children.get(i), context);
+                min = Math.min(min, keep);
+                if(keep < beta){
+                    beta = keep;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Function that changes the current board to the best move as per minimax()
+     *
+     * @param context context the search was run with
+     * @return returns the MoveList move played
+     */
+    public int cpuMinimax(SearchContext<BitBoard> context){
+        BitBoard bestMove = context.getBestMove();
+        //the one square the best move filled
+        int square = Long.numberOfTrailingZeros((bestMove.black | bestMove.white) & ~(black | white));
+        black = bestMove.black;
+        white = bestMove.white;
+        if(playerTurn == 'x'){
+            playerTurn = 'o';
+        }
+        else{
+            playerTurn = 'x';
+        }
+        hash = Zobrist.hash(black, white, playerTurn);
+        return toMove(square);
+    }
+
+    /**
+     * -----------STATE OF GAME CODE--------------
+     */
+
+    /**
+     * Returns if the game is over. i.e. when there is no more valid moves
+     * @return true if there are no more valid moves, false if there is
+     */
+    public boolean isGameOver() {
+        return legalMoves(black, white) == 0 && legalMoves(white, black) == 0;
+    }
+
+    //Returns if the player has any legal move
+    public boolean hasValidMove(char playerChar) {
+        return movesFor(playerChar) != 0;
+    }
+
+    /**
+     * Heurisitc function that calculates the value of the current board state,
+     * in favor of the given player. Counts number of pieces and weighs corners highly
+     *
+     * @param playerChar given player character to calculate in favor of
+     * @return returns the value of the board
+     */
+    public int reversiHeuristic(char playerChar){
+        long own = playerChar == 'x' ? black : white;
+        long opp = playerChar == 'x' ? white : black;
+        long corners = cornerMask();
+        int val = Long.bitCount(own & corners) - Long.bitCount(opp & corners);
+        if((own & corners) == 0){
+            val = 0;
+        }
+        return Long.bitCount(own) - Long.bitCount(opp) + val*gameSize;
+    }
+
+    /**
+     * Bits of the four corners of the board
+     *
+     * @return returns the mask of the corner squares
+     */
+    public long cornerMask(){
+        int last = gameSize - 1;
+        return (1L << square(0, 0)) | (1L << square(0, last)) | (1L << square(last, 0)) | (1L << square(last, last));
+    }
+
+    //Gets the difference in number of pieces in favor of black
+    public int valueDiffBlack(){
+        return Long.bitCount(black) - Long.bitCount(white);
+    }
+
+    //Gets the difference in number of pieces in favor of white
+    public int valueDiffWhite(){
+        return Long.bitCount(white) - Long.bitCount(black);
+    }
+
+    //Gets the number of empty squares left on the board
+    public int getEmptyCount(){
+        return Long.bitCount(~(black | white) & mask);
+    }
+
+    /**
+     * Finds the value of the board in favor the the given player character,
+     * does this by counting the number of pieces of that color on the board
+     *
+     * @param playerChar piece that will have its value calculated
+     * @return returns the number of pieces of given playerChar
+     */
+    public int getValue(char playerChar) {
+        if(playerChar == 'x'){
+            return Long.bitCount(black);
+        }
+        else if(playerChar == 'o'){
+            return Long.bitCount(white);
+        }
+        return 0;
+    }
+
+    /**
+     * -----------BOARD PRINTING CODE--------------
+     */
+
+    /**
+     * Prints out the board with formatted border
+     */
+    public void printBoard(){
+        printHorizontalBorder();
+        printBoardState();
+        printHorizontalBorder();
+    }
+
+    /**
+     * Helper funtion for printBoard() that prints the alphabetical borders
+     */
+    public void printHorizontalBorder(){
+        System.out.print("  ");
+        for(int i = 97; i<gameSize + 97; i++){
+            if(i == gameSize+96){
+                System.out.print((char)i);
+            }
+            else{
+                System.out.print((char)i + "| ");
+            }
+        }
+        System.out.println();
+    }
+
+    /**
+     * Helper function for printBoard() that prints the current board state
+     */
+    public void printBoardState(){
+        printLine();
+        for(int i = 0; i<gameSize; i++){
+            for(int j = 0; j<gameSize; j++){
+                if(j == 0){
+                    System.out.print((i + 1) + " ");
+                    System.out.print(pieceAt(j, i) + "| ");
+                }
+                else if(j == gameSize - 1){
+                    System.out.print(pieceAt(j, i) + " ");
+                    System.out.print((i + 1) + " ");
+                }
+                else{
+                    System.out.print(pieceAt(j, i) + "| ");
+                }
+            }
+            System.out.println();
+            printLine();
+        }
+    }
+
+    /**
+     * Helper method for printBoardState() that prints out the horizontal lines
+     */
+    public void printLine(){
+        System.out.print(" ");
+        for(int i = 0; i<gameSize; i++){
+            System.out.print("___");
+        }
+        System.out.println();
+    }
+
+     /**
+     * -----------GETTERS AND SETTERS--------------
+     */
+
+    /**
+     * Finds the piece on a board location
+     *
+     * @param x x axis location
+     * @param y y axis location
+     * @return returns 'x', 'o' or a space for an empty square
+     */
+    public char pieceAt(int x, int y){
+        long bit = 1L << square(x, y);
+        if((black & bit) != 0){
+            return 'x';
+        }
+        else if((white & bit) != 0){
+            return 'o';
+        }
+        return (char)32;
+    }
+
+    public int getGameSize() {
+        return gameSize;
+    }
+
+    public long getBlack() {
+        return black;
+    }
+
+    public long getWhite() {
+        return white;
+    }
+
+    /**
+     * Zobrist hash of the position and player to move, kept up to date as pieces are placed and flipped
+     *
+     * @return returns the hash of the board
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    public long getMask() {
+        return mask;
+    }
+
+    //vector move generator of the board, null when it uses the scalar loops
+    public MoveGenerator getMoveGenerator() {
+        return generator;
+    }
+
+    //sets the move generator of this board and the boards copied from it, null for the scalar loops
+    public void setMoveGenerator(MoveGenerator generator) {
+        this.generator = generator;
+    }
+
+    public char hasCurrentTurn() {
+        return playerTurn;
+    }
+
+    public void setPlayerTurn(char playerTurn) {
+        if(this.playerTurn != playerTurn){
+            hash ^= Zobrist.WHITE_TO_MOVE;
+        }
+        this.playerTurn = playerTurn;
+    }
+
+    @Override
+    public String toString(){
+        char[][] board = new char[gameSize][gameSize];
+        for(int i = 0; i<gameSize; i++){
+            for(int j = 0; j<gameSize; j++){
+                board[i][j] = pieceAt(i, j);
+            }
+        }
+        return Arrays.deepToString(board);
+    }
+}
@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+/*
+ * File: BookBuilder.java
+ *
+ * Command line tool that builds an OpeningBook from game records and self-play games. Every
+ * move of the first plies of every game is counted against the canonical form of the position
+ * it was played in, together with how the game ended for the player who made it. The book
+ * keeps, for each position, the move with the best average result among the moves played
+ * often enough to trust.
+ *
+ * Game records are the text format of PatternTrainer, one game per line such as "f5d6c3", or a
+ * file of GameRecordWriter, whose games of other board sizes are skipped.
+ *
+ * Usage: java BookBuilder -out=FILE [-size=8] [-games=FILE] [-selfplay=N] [-depth=N] [-plies=N]
+ *                         [-min-games=N] [-seed=N]
+ */
+public class BookBuilder {
+
+    private int gameSize;
+    private int plies;
+    //canonical hash to the moves played there, each move to {games, sum of final piece differences}
+    private Map<Long, Map<Integer, long[]>> positions = new HashMap<Long, Map<Integer, long[]>>();
+
+    public static void main(String[] args) throws IOException {
+        String out = null;
+        String games = null;
+        int size = 8;
+        int selfPlay = 0;
+        int depth = 4;
+        int plies = 14;
+        int minGames = 2;
+        long seed = 1;
+        for(String arg: args){
+            if(arg.startsWith("-out=")){
+                out = arg.substring("-out=".length());
+            }
+            else if(arg.startsWith("-size=")){
+                size = Integer.parseInt(arg.substring("-size=".length()));
+            }
+            else if(arg.startsWith("-games=")){
+                games = arg.substring("-games=".length());
+            }
+            else if(arg.startsWith("-selfplay=")){
+                selfPlay = Integer.parseInt(arg.substring("-selfplay=".length()));
+            }
+            else if(arg.startsWith("-depth=")){
+                depth = Integer.parseInt(arg.substring("-depth=".length()));
+            }
+            else if(arg.startsWith("-plies=")){
+                plies = Integer.parseInt(arg.substring("-plies=".length()));
+            }
+            else if(arg.startsWith("-min-games=")){
+                minGames = Math.max(1, Integer.parseInt(arg.substring("-min-games=".length())));
+            }
+            else if(arg.startsWith("-seed=")){
+                seed = Long.parseLong(arg.substring("-seed=".length()));
+            }
+            else{
+                System.out.println("Unknown option " + arg);
+                return;
+            }
+        }
+        if(out == null || (games == null && selfPlay <= 0)){
+            System.out.println("Usage: java BookBuilder -out=FILE [-size=8] [-games=FILE] [-selfplay=N] [-depth=N] [-plies=N] [-min-games=N] [-seed=N]");
+            return;
+        }
+        if(size != 4 && size != 6 && size != 8){
+            System.out.println("Board size must be 4, 6 or 8");
+            return;
+        }
+
+        List<String> records = new ArrayList<String>();
+        if(games != null){
+            records.addAll(PatternTrainer.readGames(Paths.get(games), size));
+        }
+        Random random = new Random(seed);
+        for(int i = 0; i<selfPlay; i++){
+            records.add(PatternTrainer.selfPlayGame(random, depth, size));
+            if((i + 1) % 100 == 0){
+                System.out.println("Played " + (i + 1) + " of " + selfPlay + " self-play games");
+            }
+        }
+
+        BookBuilder builder = new BookBuilder(size, plies);
+        for(String record: records){
+            builder.addGame(record);
+        }
+        int written = builder.write(out, minGames);
+        System.out.println("Wrote " + written + " positions from " + records.size() + " games to " + out);
+    }
+
+    /**
+     * @param gameSize width and height of the board the games are played on
+     * @param plies number of moves from the start of each game to put in the book
+     */
+    public BookBuilder(int gameSize, int plies){
+        this.gameSize = gameSize;
+        this.plies = plies;
+    }
+
+    /**
+     * Replays a game record and counts its first moves
+     *
+     * @param record squares played, for example "f5d6c3"
+     */
+    public void addGame(String record){
+        BitBoard board = new BitBoard(gameSize);
+        int moves = record.length() / 2;
+        long[] hashes = new long[Math.min(plies, moves)];
+        int[] squares = new int[hashes.length];
+        boolean[] blackMoved = new boolean[hashes.length];
+        for(int i = 0; i<moves; i++){
+            int x = Character.toLowerCase(record.charAt(2 * i)) - 'a';
+            int y = record.charAt(2 * i + 1) - '1';
+            if(board.movesFor(board.hasCurrentTurn()) == 0){
+                board.passTurn();
+            }
+            char turn = board.hasCurrentTurn();
+            if(i < hashes.length){
+                long own = turn == 'x' ? board.getBlack() : board.getWhite();
+                long opp = turn == 'x' ? board.getWhite() : board.getBlack();
+                int symmetry = Symmetry.canonicalSymmetry(own, opp, gameSize);
+                hashes[i] = Zobrist.hash(Symmetry.apply(own, symmetry, gameSize), Symmetry.apply(opp, symmetry, gameSize), 'x');
+                squares[i] = Symmetry.canonicalSquare(BitBoard.square(x, y), own, opp, gameSize);
+                blackMoved[i] = turn == 'x';
+            }
+            if(!board.movePiece(x, y, turn)){
+                throw new IllegalArgumentException("Illegal move " + record.substring(2 * i, 2 * i + 2) + " in game " + record);
+            }
+        }
+
+        int blackDiff = board.valueDiffBlack();
+        for(int i = 0; i<hashes.length; i++){
+            Map<Integer, long[]> played = positions.computeIfAbsent(hashes[i], key -> new HashMap<Integer, long[]>());
+            long[] stats = played.computeIfAbsent(squares[i], key -> new long[2]);
+            stats[0]++;
+            stats[1] += blackMoved[i] ? blackDiff : -blackDiff;
+        }
+    }
+
+    /**
+     * Picks the best move of every position and writes the book
+     *
+     * @param file file to write
+     * @param minGames fewest games a move must have been played in to be chosen
+     * @return returns the number of positions written
+     * @throws IOException if the file cannot be written
+     */
+    public int write(String file, int minGames) throws IOException {
+        long[] hashes = new long[positions.size()];
+        int count = 0;
+        for(Map.Entry<Long, Map<Integer, long[]>> position: positions.entrySet()){
+            if(bestMove(position.getValue(), minGames) >= 0){
+                hashes[count++] = position.getKey();
+            }
+        }
+        Arrays.sort(hashes, 0, count);
+
+        int[] moves = new int[count];
+        int[] scores = new int[count];
+        int[] games = new int[count];
+        for(int i = 0; i<count; i++){
+            Map<Integer, long[]> played = positions.get(hashes[i]);
+            moves[i] = bestMove(played, minGames);
+            long[] stats = played.get(moves[i]);
+            scores[i] = (int)Math.round((double)stats[1] * OpeningBook.SCORE_SCALE / stats[0]);
+            games[i] = (int)Math.min(Integer.MAX_VALUE, stats[0]);
+        }
+        OpeningBook.write(Paths.get(file), gameSize, hashes, moves, scores, games, count);
+        return count;
+    }
+
+    //move with the best average result among those played at least minGames times, -1 if none was
+    private static int bestMove(Map<Integer, long[]> played, int minGames){
+        int best = -1;
+        double bestAverage = 0;
+        for(Map.Entry<Integer, long[]> move: played.entrySet()){
+            long[] stats = move.getValue();
+            if(stats[0] < minGames){
+                continue;
+            }
+            double average = (double)stats[1] / stats[0];
+            if(best < 0 || average > bestAverage || (average == bestAverage && move.getKey() < best)){
+                best = move.getKey();
+                bestAverage = average;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,294 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+/*
+ * File: EndgameSolver.java
+ *
+ * Exact solver for the last moves of a game, where a heuristic cutoff is no longer needed.
+ * Scores are the final piece difference for the player to move, the same as getValue() of
+ * the player minus getValue() of the other player once the game is over.
+ *
+ * The empty squares are kept in a linked list that moves remove themselves from and undo
+ * puts back, so the deepest nodes only look at the few squares that are left. Above a few
+ * empties moves are tried fastest first, the move leaving the other player the fewest replies
+ * first. The root is first solved with a null window to find whether it is a win, loss or
+ * draw, then solved exactly inside the window that result allows.
+ */
+public class EndgameSolver {
+
+    public static final int DEFAULT_EMPTIES = 14;
+    //below this many empties sorting moves costs more than it saves
+    private static final int FASTEST_FIRST_EMPTIES = 7;
+    private static final int TIME_CHECK_INTERVAL = 4096;
+    private static final int MAX_SCORE = 64;
+    private static final int END = 64;
+
+    private BitBoard board;
+    private int[] next;
+    private int[] previous;
+    private int[][] moveBuffers;
+    private int[][] replyBuffers;
+    private int bestSquare;
+    private int score;
+    private long nodes;
+    private long deadline;
+    private boolean stopped;
+    private AtomicBoolean stopSignal;
+
+    public EndgameSolver(){
+        next = new int[65];
+        previous = new int[65];
+        moveBuffers = new int[65][64];
+        replyBuffers = new int[65][64];
+        bestSquare = -1;
+    }
+
+    /**
+     * Finds the best move and the exact final piece difference of a position
+     *
+     * @param position board to solve, it is not changed
+     * @param playerChar player to find a move for
+     * @param deadlineNanos value of System.nanoTime() at which to give up, Long.MAX_VALUE for no limit
+     * @return returns true if the position was solved, false if time ran out first
+     */
+    public boolean solve(BitBoard position, char playerChar, long deadlineNanos){
+        board = position.copy();
+        deadline = deadlineNanos;
+        stopped = false;
+        nodes = 0;
+        bestSquare = -1;
+        score = 0;
+        buildEmptyList(~(board.getBlack() | board.getWhite()) & board.getMask());
+
+        long own = playerChar == 'x' ? board.getBlack() : board.getWhite();
+        long opp = playerChar == 'x' ? board.getWhite() : board.getBlack();
+        int empties = Long.bitCount(~(own | opp) & board.getMask());
+
+        //win, loss or draw first, the null window search is much cheaper than the exact one
+        int outcome = solveRoot(own, opp, -1, 1, empties);
+        if(stopped){
+            return false;
+        }
+        int wldMove = bestSquare;
+        if(outcome > 0){
+            score = solveRoot(own, opp, 0, MAX_SCORE + 1, empties);
+        }
+        else if(outcome < 0){
+            score = solveRoot(own, opp, -MAX_SCORE - 1, 0, empties);
+        }
+        else{
+            score = 0;
+        }
+        if(stopped){
+            //the null window result is still exact about who wins
+            bestSquare = wldMove;
+            score = outcome;
+            return false;
+        }
+        if(outcome == 0){
+            bestSquare = wldMove;
+        }
+        return true;
+    }
+
+    //root of the search, remembers the best move
+    private int solveRoot(long own, long opp, int alpha, int beta, int empties){
+        bestSquare = -1;
+        long moves = board.legalMoves(own, opp);
+        if(moves == 0){
+            return negamax(own, opp, alpha, beta, empties, false);
+        }
+        moves = Symmetry.uniqueMoves(moves, own, opp, board.getGameSize());
+        int count = orderFastestFirst(moves, own, opp, empties);
+        int[] ordered = moveBuffers[empties];
+        int best = -MAX_SCORE - 1;
+        for(int i = 0; i<count; i++){
+            int square = ordered[i];
+            long flipped = board.flips(square, own, opp);
+            remove(square);
+            int value = -negamax(opp & ~flipped, own | flipped | (1L << square), -beta, -alpha, empties - 1, false);
+            restore(square);
+            if(stopped){
+                return best;
+            }
+            if(value > best){
+                best = value;
+                bestSquare = square;
+            }
+            if(value > alpha){
+                alpha = value;
+            }
+            if(alpha >= beta){
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Exact alpha-beta search to the end of the game
+     *
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @param alpha lower bound of the window
+     * @param beta upper bound of the window
+     * @param empties number of empty squares
+     * @param passed true if the other player just passed
+     * @return returns the final piece difference for the player to move
+     */
+    private int negamax(long own, long opp, int alpha, int beta, int empties, boolean passed){
+        nodes++;
+        if((nodes % TIME_CHECK_INTERVAL) == 0 && shouldStop()){
+            stopped = true;
+        }
+        if(stopped){
+            return 0;
+        }
+        if(empties == 0){
+            return Long.bitCount(own) - Long.bitCount(opp);
+        }
+
+        int best = -MAX_SCORE - 1;
+        boolean moved = false;
+
+        if(empties > FASTEST_FIRST_EMPTIES){
+            long moves = board.legalMoves(own, opp);
+            if(moves != 0){
+                moved = true;
+                int count = orderFastestFirst(moves, own, opp, empties);
+                int[] ordered = moveBuffers[empties];
+                for(int i = 0; i<count; i++){
+                    int square = ordered[i];
+                    long flipped = board.flips(square, own, opp);
+                    remove(square);
+                    int value = -negamax(opp & ~flipped, own | flipped | (1L << square), -beta, -alpha, empties - 1, false);
+                    restore(square);
+                    if(value > best){
+                        best = value;
+                        if(value > alpha){
+                            alpha = value;
+                            if(alpha >= beta){
+                                return best;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        else{
+            //few empties left, walk the empty list and skip squares that flip nothing
+            for(int square = next[END]; square != END; square = next[square]){
+                long flipped = board.flips(square, own, opp);
+                if(flipped == 0){
+                    continue;
+                }
+                moved = true;
+                remove(square);
+                int value = -negamax(opp & ~flipped, own | flipped | (1L << square), -beta, -alpha, empties - 1, false);
+                restore(square);
+                if(value > best){
+                    best = value;
+                    if(value > alpha){
+                        alpha = value;
+                        if(alpha >= beta){
+                            return best;
+                        }
+                    }
+                }
+            }
+        }
+
+        if(!moved){
+            //neither player can move, the game is over
+            if(passed){
+                return Long.bitCount(own) - Long.bitCount(opp);
+            }
+            return -negamax(opp, own, -beta, -alpha, empties, true);
+        }
+        return best;
+    }
+
+    /**
+     * Sorts moves so the one leaving the other player the fewest replies comes first
+     *
+     * @return returns the number of moves written to the buffer for this number of empties
+     */
+    private int orderFastestFirst(long moves, long own, long opp, int empties){
+        int[] buffer = moveBuffers[empties];
+        int[] replies = replyBuffers[empties];
+        int count = 0;
+        while(moves != 0){
+            int square = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            long flipped = board.flips(square, own, opp);
+            int replyCount = Long.bitCount(board.legalMoves(opp & ~flipped, own | flipped | (1L << square)));
+
+            int i = count;
+            while(i > 0 && replies[i - 1] > replyCount){
+                buffer[i] = buffer[i - 1];
+                replies[i] = replies[i - 1];
+                i--;
+            }
+            buffer[i] = square;
+            replies[i] = replyCount;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * -----------EMPTY SQUARE LIST--------------
+     */
+
+    //links every empty square into a list that starts and ends at END
+    private void buildEmptyList(long empty){
+        int last = END;
+        for(long bits = empty; bits != 0; bits &= bits - 1){
+            int square = Long.numberOfTrailingZeros(bits);
+            next[last] = square;
+            previous[square] = last;
+            last = square;
+        }
+        next[last] = END;
+        previous[END] = last;
+    }
+
+    private void remove(int square){
+        next[previous[square]] = next[square];
+        previous[next[square]] = previous[square];
+    }
+
+    //squares are restored in the reverse order they were removed, so their neighbours still point past them
+    private void restore(int square){
+        next[previous[square]] = square;
+        previous[next[square]] = square;
+    }
+
+    //out of time, or told to stop by another thread
+    private boolean shouldStop(){
+        if(System.nanoTime() > deadline){
+            return true;
+        }
+        return stopSignal != null && stopSignal.get();
+    }
+
+    /**
+     * ---------GETTERS AND SETTERS----------
+     */
+
+    //best move of the last solve, -1 if the player had to pass
+    public int getBestSquare() {
+        return bestSquare;
+    }
+
+    //final piece difference for the player to move, only a win/loss/draw sign if the solve ran out of time
+    public int getScore() {
+        return score;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public void setStopSignal(AtomicBoolean stopSignal) {
+        this.stopSignal = stopSignal;
+    }
+}
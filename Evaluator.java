@@ -0,0 +1,10 @@
+/*
+ * File: Evaluator.java
+ *
+ * Evaluation function used by Search at the cutoff depth. Implementations must not keep
+ * state between calls, since ParallelSearch calls one evaluator from several threads.
+ */
+public interface Evaluator {
+    //value of the board for the player whose turn it is, must stay below Search.WIN_SCORE
+    public int evaluate(BitBoard board);
+}
@@ -0,0 +1,229 @@
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+/*
+ * File: GameRecord.java
+ *
+ * One game as it was played: the board size, who played black and white, and every move in
+ * order including passes, one byte each. A move is the square x * size + y and a pass is PASS,
+ * so boards up to MAX_SIZE fit. GameRecordWriter appends records to a file and
+ * GameRecordReader reads them back into the same object one after the other, so a file of
+ * millions of games is replayed without holding more than one of them.
+ *
+ * Positions are rebuilt on a ReversiBoard with start() and play(), or position() for one ply.
+ */
+public class GameRecord {
+
+    public static final int PASS = 0xFF;
+    //largest even size whose squares all fit in a byte below PASS
+    public static final int MAX_SIZE = 14;
+    private static final Pattern TEXT_MOVE = Pattern.compile("([a-zA-Z])([0-9]{1,2})");
+
+    private int gameSize;
+    private String blackPlayer;
+    private String whitePlayer;
+    private byte[] moves = new byte[64];
+    private int moveCount;
+
+    //empty record, for GameRecordReader.next() to fill
+    public GameRecord(){
+        this(8, "", "");
+    }
+
+    /**
+     * @param gameSize width and height of the board, even and at most MAX_SIZE
+     * @param blackPlayer how black was played, e.g. "search:6", at most 255 characters
+     * @param whitePlayer how white was played
+     */
+    public GameRecord(int gameSize, String blackPlayer, String whitePlayer){
+        reset(gameSize, blackPlayer, whitePlayer);
+    }
+
+    /**
+     * Empties the record for a new game, keeping its move array
+     *
+     * @param gameSize width and height of the board, even and at most MAX_SIZE
+     * @param blackPlayer how black was played
+     * @param whitePlayer how white was played
+     */
+    public void reset(int gameSize, String blackPlayer, String whitePlayer){
+        if(gameSize < 4 || gameSize > MAX_SIZE || gameSize % 2 != 0){
+            throw new IllegalArgumentException("Game records hold even board sizes from 4 to " + MAX_SIZE + ", got " + gameSize);
+        }
+        this.gameSize = gameSize;
+        this.blackPlayer = blackPlayer;
+        this.whitePlayer = whitePlayer;
+        moveCount = 0;
+    }
+
+    /**
+     * Reads a game written as the squares played, e.g. "f5d6c3", the way PatternTrainer writes
+     * them. The passes the text leaves out are put back by replaying it.
+     *
+     * @param text squares played, passes left out
+     * @param gameSize width and height of the board
+     * @param blackPlayer how black was played
+     * @param whitePlayer how white was played
+     * @return returns the record
+     * @throws IllegalArgumentException if the text is not a legal game
+     */
+    public static GameRecord fromText(String text, int gameSize, String blackPlayer, String whitePlayer){
+        GameRecord record = new GameRecord(gameSize, blackPlayer, whitePlayer);
+        ReversiBoard board = record.start();
+        Matcher matcher = TEXT_MOVE.matcher(text);
+        int end = 0;
+        while(matcher.find()){
+            if(matcher.start() != end){
+                throw new IllegalArgumentException("Not a move at " + text.substring(end) + " in game " + text);
+            }
+            end = matcher.end();
+            int x = Character.toLowerCase(matcher.group(1).charAt(0)) - 'a';
+            int y = Integer.parseInt(matcher.group(2)) - 1;
+            char turn = board.hasCurrentTurn();
+            if(!board.hasValidMove(turn)){
+                record.addPass();
+                record.play(board, record.moveCount - 1);
+                turn = board.hasCurrentTurn();
+            }
+            if(x < 0 || x >= gameSize || y < 0 || y >= gameSize || !board.movePiece(x, y, turn)){
+                throw new IllegalArgumentException("Illegal move " + matcher.group() + " in game " + text);
+            }
+            record.addMove(MoveList.move(x, y));
+        }
+        if(end != text.length()){
+            throw new IllegalArgumentException("Not a move at " + text.substring(end) + " in game " + text);
+        }
+        return record;
+    }
+
+    /**
+     * -----------RECORDING CODE--------------
+     */
+
+    /**
+     * @param move move from MoveList, on a square of this record's board
+     */
+    public void addMove(int move){
+        int x = MoveList.moveX(move);
+        int y = MoveList.moveY(move);
+        if(x < 0 || x >= gameSize || y < 0 || y >= gameSize){
+            throw new IllegalArgumentException("Move " + MoveList.moveName(move) + " is not on a board of size " + gameSize);
+        }
+        add(x * gameSize + y);
+    }
+
+    public void addPass(){
+        add(PASS);
+    }
+
+    private void add(int code){
+        if(moveCount == moves.length){
+            byte[] grown = new byte[moves.length * 2];
+            System.arraycopy(moves, 0, grown, 0, moveCount);
+            moves = grown;
+        }
+        moves[moveCount++] = (byte)code;
+    }
+
+    //used by GameRecordReader to fill the moves in one copy
+    byte[] movesFor(int count){
+        if(moves.length < count){
+            moves = new byte[Math.max(count, moves.length * 2)];
+        }
+        moveCount = count;
+        return moves;
+    }
+
+    /**
+     * -----------REPLAY CODE--------------
+     */
+
+    //board at the start of the game, black to move
+    public ReversiBoard start(){
+        return new ReversiBoard(gameSize);
+    }
+
+    /**
+     * Plays one move of the record on a board that holds the position before it
+     *
+     * @param board board after the moves before ply
+     * @param ply index of the move, 0 for the first
+     * @throws IllegalArgumentException if the move is not legal on the board
+     */
+    public void play(ReversiBoard board, int ply){
+        char turn = board.hasCurrentTurn();
+        char other = turn == 'x' ? 'o' : 'x';
+        if(isPass(ply)){
+            if(board.hasValidMove(turn)){
+                throw new IllegalArgumentException("Pass at ply " + ply + " with moves to play");
+            }
+            board.setPlayerTurn(other);
+            return;
+        }
+        int code = moves[ply] & 0xFF;
+        if(!board.movePiece(code / gameSize, code % gameSize, turn)){
+            throw new IllegalArgumentException("Illegal move " + MoveList.moveName(getMove(ply)) + " at ply " + ply);
+        }
+    }
+
+    /**
+     * @param plies number of moves to play from the start, passes included
+     * @return returns a new board after the first plies moves
+     */
+    public ReversiBoard position(int plies){
+        ReversiBoard board = start();
+        for(int i = 0; i<plies; i++){
+            play(board, i);
+        }
+        return board;
+    }
+
+    //the squares played as text, e.g. "f5d6c3", passes left out
+    public String toText(){
+        StringBuilder text = new StringBuilder(moveCount * 2);
+        for(int i = 0; i<moveCount; i++){
+            if(!isPass(i)){
+                text.append(MoveList.moveName(getMove(i)));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * ---------GETTERS----------
+     */
+
+    public int getGameSize() {
+        return gameSize;
+    }
+
+    public String getBlackPlayer() {
+        return blackPlayer;
+    }
+
+    public String getWhitePlayer() {
+        return whitePlayer;
+    }
+
+    //number of moves, passes included
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public boolean isPass(int ply) {
+        return (moves[ply] & 0xFF) == PASS;
+    }
+
+    //MoveList move played at ply, -1 for a pass
+    public int getMove(int ply) {
+        int code = moves[ply] & 0xFF;
+        if(code == PASS){
+            return -1;
+        }
+        return MoveList.move(code / gameSize, code % gameSize);
+    }
+
+    //raw move bytes, valid up to getMoveCount(), for GameRecordWriter
+    byte[] getMoveBytes() {
+        return moves;
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+/*
+ * File: GameRecordReader.java
+ *
+ * Reads the games of a file written by GameRecordWriter one at a time into a GameRecord the
+ * caller reuses, through a buffer of BUFFER_BYTES, so a file of any size is read in constant
+ * memory and without an object per game.
+ *
+ * Usage: java GameRecordReader FILE [-text]
+ *   prints the number of games, moves and passes per board size and pair of players, or with
+ *   -text every game as a line of "size black white moves" with the passes left out
+ */
+public class GameRecordReader implements AutoCloseable {
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private Path file;
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.BIG_ENDIAN);
+    private boolean endOfFile;
+    //player texts by id, as defined so far
+    private String[] players = new String[256];
+    //bytes before the buffer's first byte, for error messages
+    private long bufferStart;
+
+    public static void main(String[] args) throws IOException {
+        String name = null;
+        boolean text = false;
+        for(String arg: args){
+            if(arg.equals("-text")){
+                text = true;
+            }
+            else if(arg.startsWith("-")){
+                System.out.println("Unknown option " + arg);
+                return;
+            }
+            else{
+                name = arg;
+            }
+        }
+        if(name == null){
+            System.out.println("Usage: java GameRecordReader FILE [-text]");
+            return;
+        }
+
+        //games, moves and passes of each size and pair of players, in the order first seen
+        Map<String, long[]> counts = new LinkedHashMap<String, long[]>();
+        GameRecord record = new GameRecord();
+        try(GameRecordReader reader = new GameRecordReader(Paths.get(name))){
+            while(reader.next(record)){
+                if(text){
+                    System.out.println(record.getGameSize() + " " + record.getBlackPlayer() + " " + record.getWhitePlayer() + " " + record.toText());
+                    continue;
+                }
+                String key = record.getGameSize() + "x" + record.getGameSize() + " " + record.getBlackPlayer() + " vs " + record.getWhitePlayer();
+                long[] count = counts.computeIfAbsent(key, k -> new long[3]);
+                count[0]++;
+                count[1] += record.getMoveCount();
+                for(int i = 0; i<record.getMoveCount(); i++){
+                    if(record.isPass(i)){
+                        count[2]++;
+                    }
+                }
+            }
+        }
+        for(Map.Entry<String, long[]> entry: counts.entrySet()){
+            long[] count = entry.getValue();
+            System.out.println(entry.getKey() + ": " + count[0] + " games, " + count[1] + " moves, " + count[2] + " passes");
+        }
+    }
+
+    /**
+     * Opens a record file and checks its header
+     *
+     * @param file file written by GameRecordWriter
+     * @throws IOException if the file cannot be read or is not a game record file
+     */
+    public GameRecordReader(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try{
+            checkHeader(channel, file);
+        }
+        catch(IOException e){
+            channel.close();
+            throw e;
+        }
+        channel.position(GameRecordWriter.HEADER_BYTES);
+        bufferStart = GameRecordWriter.HEADER_BYTES;
+        buffer.limit(0);
+    }
+
+    /**
+     * @param file file to look at
+     * @return returns true if the file starts with the magic of GameRecordWriter
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isRecordFile(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+            while(magic.hasRemaining()){
+                if(channel.read(magic) < 0){
+                    return false;
+                }
+            }
+            return magic.getInt(0) == GameRecordWriter.MAGIC;
+        }
+    }
+
+    //throws unless the channel starts with the magic and version of GameRecordWriter
+    static void checkHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(GameRecordWriter.HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+        while(header.hasRemaining()){
+            if(channel.read(header, header.position()) < 0){
+                break;
+            }
+        }
+        if(header.hasRemaining() || header.getInt(0) != GameRecordWriter.MAGIC){
+            throw new IOException(file + " is not a game record file");
+        }
+        if(header.getInt(4) != GameRecordWriter.VERSION){
+            throw new IOException(file + " has game record version " + header.getInt(4) + ", expected " + GameRecordWriter.VERSION);
+        }
+    }
+
+    /**
+     * Reads the next game
+     *
+     * @param record record to fill, its previous game is replaced
+     * @return returns false at the end of the file
+     * @throws IOException if the file cannot be read or ends in the middle of an entry
+     */
+    public boolean next(GameRecord record) throws IOException {
+        while(fill(1)){
+            long offset = bufferStart + buffer.position();
+            byte type = buffer.get();
+            if(type == GameRecordWriter.PLAYER){
+                require(2, offset);
+                int id = buffer.get() & 0xFF;
+                int length = buffer.get() & 0xFF;
+                require(length, offset);
+                byte[] text = new byte[length];
+                buffer.get(text);
+                players[id] = new String(text, StandardCharsets.US_ASCII);
+            }
+            else if(type == GameRecordWriter.GAME){
+                require(5, offset);
+                int size = buffer.get() & 0xFF;
+                String black = player(buffer.get() & 0xFF, offset);
+                String white = player(buffer.get() & 0xFF, offset);
+                int count = buffer.getShort() & 0xFFFF;
+                require(count, offset);
+                try{
+                    record.reset(size, black, white);
+                }
+                catch(IllegalArgumentException e){
+                    throw new IOException(file + " has a game of board size " + size + " at byte " + offset);
+                }
+                buffer.get(record.movesFor(count), 0, count);
+                return true;
+            }
+            else{
+                throw new IOException(file + " has an unknown entry " + type + " at byte " + offset);
+            }
+        }
+        return false;
+    }
+
+    private String player(int id, long offset) throws IOException {
+        if(players[id] == null){
+            throw new IOException(file + " names player " + id + " before defining it at byte " + offset);
+        }
+        return players[id];
+    }
+
+    //like fill(), for the rest of an entry that has started
+    private void require(int bytes, long offset) throws IOException {
+        if(!fill(bytes)){
+            throw new IOException(file + " ends in the middle of the entry at byte " + offset);
+        }
+    }
+
+    //makes sure the buffer holds at least bytes more, returns false if the file ends first
+    private boolean fill(int bytes) throws IOException {
+        if(buffer.remaining() >= bytes){
+            return true;
+        }
+        bufferStart += buffer.position();
+        buffer.compact();
+        while(buffer.position() < bytes && !endOfFile){
+            if(channel.read(buffer) < 0){
+                endOfFile = true;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= bytes;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+/*
+ * File: GameRecordWriter.java
+ *
+ * Appends GameRecords to a file, so any number of games from any number of runs end up in one
+ * file. Records are gathered in a large direct buffer and written to the channel when it is full,
+ * so logging a game costs a few bytes copied and one system call per BUFFER_BYTES.
+ *
+ * The file is an int magic and an int version, big endian, then entries one after the other:
+ *   PLAYER: byte 1, byte id, byte length, then the player's text in ASCII
+ *   GAME:   byte 2, byte board size, byte black id, byte white id, short move count, then a byte
+ *           per move, the square x * size + y or 255 for a pass
+ * A player's text is written the first time a writer uses it and games name it by id after that.
+ * A later PLAYER entry with the same id replaces it, so a writer appending to an existing file,
+ * or one that used all 256 ids, starts numbering again from 0.
+ *
+ * Appending is synchronized, so the games of many threads can go to one writer.
+ */
+public class GameRecordWriter implements AutoCloseable {
+
+    public static final int MAGIC = 0x52564752;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+    public static final byte PLAYER = 1;
+    public static final byte GAME = 2;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int MAX_PLAYER_IDS = 256;
+
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.BIG_ENDIAN);
+    //player text to its id in this writer's entries
+    private Map<String, Integer> playerIds = new HashMap<String, Integer>();
+    private long games;
+
+    /**
+     * Opens a record file for appending, creating it if it does not exist
+     *
+     * @param file file to append to
+     * @throws IOException if the file cannot be opened or is not a game record file
+     */
+    public GameRecordWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try{
+            long size = channel.size();
+            if(size == 0){
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+            }
+            else{
+                GameRecordReader.checkHeader(channel, file);
+            }
+            channel.position(size);
+        }
+        catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a game to the end of the file, the record can be reused once this returns
+     *
+     * @param record game to add
+     * @throws IOException if the buffer cannot be written
+     */
+    public synchronized void append(GameRecord record) throws IOException {
+        if(record.getMoveCount() > 0xFFFF){
+            throw new IllegalArgumentException("A game record holds at most " + 0xFFFF + " moves");
+        }
+        int black = playerId(record.getBlackPlayer());
+        int white = playerId(record.getWhitePlayer());
+        //a new player id may have ended the buffer, the ids are in it either way
+        if(buffer.remaining() < 6 + record.getMoveCount()){
+            flushBuffer();
+        }
+        buffer.put(GAME);
+        buffer.put((byte)record.getGameSize());
+        buffer.put((byte)black);
+        buffer.put((byte)white);
+        buffer.putShort((short)record.getMoveCount());
+        buffer.put(record.getMoveBytes(), 0, record.getMoveCount());
+        games++;
+    }
+
+    //id of a player's text, writing the PLAYER entry the first time it is used
+    private int playerId(String player) throws IOException {
+        Integer id = playerIds.get(player);
+        if(id != null){
+            return id;
+        }
+        byte[] text = player.getBytes(StandardCharsets.US_ASCII);
+        if(text.length > 255){
+            throw new IllegalArgumentException("Player text is longer than 255 characters: " + player);
+        }
+        if(playerIds.size() == MAX_PLAYER_IDS){
+            playerIds.clear();
+        }
+        id = playerIds.size();
+        playerIds.put(player, id);
+        if(buffer.remaining() < 3 + text.length){
+            flushBuffer();
+        }
+        buffer.put(PLAYER);
+        buffer.put((byte)(int)id);
+        buffer.put((byte)text.length);
+        buffer.put(text);
+        return id;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered games to the file, so a reader sees them
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        flushBuffer();
+    }
+
+    //games appended by this writer
+    public synchronized long getGames() {
+        return games;
+    }
+
+    public synchronized void close() throws IOException {
+        if(!channel.isOpen()){
+            return;
+        }
+        try{
+            flushBuffer();
+        }
+        finally{
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,712 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+/*
+ * File: GameServer.java
+ *
+ * Hosts many games at once over a line based protocol on a TCP socket, so the engine can run
+ * behind a service instead of on System.in. One selector thread does all the network work for
+ * every connection, and each connection holds one game session with its own board and CPU
+ * player settings. The CPU's moves are searched on a fixed pool of threads with a bounded
+ * queue, each thread reusing its own Search between sessions the way Tournament does.
+ *
+ * Backpressure: a connection is not read while its CPU move is being searched, or while its
+ * client is not reading the replies, so one client cannot queue up work. A move that would
+ * need a search while the search queue is full is answered with BUSY and not played, and the
+ * client tries again later. Connections over the session limit are refused.
+ *
+ * With -store=FILE the searches keep their deep results in a PositionStore, so positions that
+ * were searched before, by this server or by an earlier run of it, are answered at once.
+ *
+ * Commands, one per line, replies one per line:
+ *   NEW size color opponent [depth|ms]  starts a game, e.g. "NEW 8 x search 6", "NEW 16 o timed 500",
+ *                                       "NEW 6 x minimax 4" or "NEW 6 x random". The reply is OK NEW
+ *                                       then the board.
+ *   MOVE d3                             plays the user's move. The reply is OK d3, a CPU line for
+ *                                       each CPU move and PASS x when a player has to pass, then
+ *                                       the board. OVER follows the board when the game ends.
+ *   BOARD                               BOARD size turn rows, rows y = 1 first joined by '/',
+ *                                       each x = a first, with x, o or '.' for every square
+ *   MOVES                               MOVES and the user's legal moves, e.g. "MOVES c4 d3"
+ *   STATS                               STATS and the server metrics as key=value pairs
+ *   QUIT                                BYE, then the server closes the connection
+ * Errors are ERR and a message, and the connection stays open.
+ *
+ * Usage: java GameServer [-host=127.0.0.1] [-port=7777] [-workers=N] [-queue=N] [-sessions=N] [-store=FILE]
+ */
+public class GameServer {
+
+    public static final int DEFAULT_PORT = 7777;
+    //longest command accepted, a longer line closes the connection
+    private static final int MAX_LINE = 256;
+    //replies a client may leave unread before the server stops reading its commands
+    private static final int MAX_PENDING_OUTPUT = 1 << 16;
+    private static final int TABLE_MEGABYTES = 4;
+    private static final int DEFAULT_DEPTH = 6;
+    private static final long DEFAULT_MOVE_MILLIS = 1000;
+
+    private ServerSocketChannel server;
+    private Selector selector;
+    private ThreadPoolExecutor pool;
+    private GameServerMetrics metrics;
+    private int maxSessions;
+    //results kept between runs, null for none
+    private PositionStore store;
+    private volatile boolean running;
+    //read by the selector thread only
+    private ByteBuffer readBuffer = ByteBuffer.allocateDirect(8192);
+    //CPU replies finished by the search threads, handed back to the selector thread
+    private ConcurrentLinkedQueue<Reply> replies = new ConcurrentLinkedQueue<Reply>();
+    //one Search per board size on each search thread, so one size never reads another's table entries
+    private ThreadLocal<Search[]> searches = ThreadLocal.withInitial(() -> new Search[BitBoard.MAX_SIZE + 1]);
+
+    public static void main(String[] args) throws IOException {
+        String host = "127.0.0.1";
+        int port = DEFAULT_PORT;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = -1;
+        int maxSessions = 10000;
+        String storeFile = null;
+        for(String arg: args){
+            if(arg.startsWith("-host=")){
+                host = arg.substring("-host=".length());
+            }
+            else if(arg.startsWith("-port=")){
+                port = Integer.parseInt(arg.substring("-port=".length()));
+            }
+            else if(arg.startsWith("-workers=")){
+                workers = Math.max(1, Integer.parseInt(arg.substring("-workers=".length())));
+            }
+            else if(arg.startsWith("-queue=")){
+                queue = Math.max(1, Integer.parseInt(arg.substring("-queue=".length())));
+            }
+            else if(arg.startsWith("-sessions=")){
+                maxSessions = Math.max(1, Integer.parseInt(arg.substring("-sessions=".length())));
+            }
+            else if(arg.startsWith("-store=")){
+                storeFile = arg.substring("-store=".length());
+            }
+            else{
+                System.out.println("Unknown option " + arg);
+                System.out.println("Usage: java GameServer [-host=127.0.0.1] [-port=7777] [-workers=N] [-queue=N] [-sessions=N] [-store=FILE]");
+                return;
+            }
+        }
+        if(queue < 0){
+            queue = workers * 64;
+        }
+
+        PositionStore store = null;
+        if(storeFile != null){
+            try{
+                store = PositionStore.open(Paths.get(storeFile));
+            }
+            catch(IOException e){
+                System.out.println("Could not open position store: " + e.getMessage());
+                return;
+            }
+            System.out.println("Position store " + storeFile + " holds " + store.getEntryCount() + " positions");
+        }
+        try{
+            GameServer gameServer = new GameServer(new InetSocketAddress(host, port), workers, queue, maxSessions);
+            gameServer.setStore(store);
+            Runtime.getRuntime().addShutdownHook(new Thread(gameServer::stop));
+            System.out.println("Serving Reversi on " + host + ":" + gameServer.getPort() + " with " + workers
+                + " search threads, a queue of " + queue + " and at most " + maxSessions + " sessions");
+            gameServer.serve();
+        }
+        finally{
+            if(store != null){
+                store.close();
+            }
+        }
+    }
+
+    /**
+     * Opens the server socket, serve() then accepts the connections
+     *
+     * @param address address to listen on, port 0 picks a free port
+     * @param workers number of threads the CPU moves are searched on
+     * @param queueCapacity searches that may wait for a thread before moves are answered with BUSY
+     * @param maxSessions open connections allowed at once
+     * @throws IOException if the socket cannot be opened
+     */
+    public GameServer(InetSocketAddress address, int workers, int queueCapacity, int maxSessions) throws IOException {
+        this.maxSessions = maxSessions;
+        pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "reversi-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.prestartAllCoreThreads();
+        metrics = new GameServerMetrics(pool);
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Runs the selector loop on the calling thread until stop() is called
+     *
+     * @throws IOException if the selector fails
+     */
+    public void serve() throws IOException {
+        running = true;
+        metrics.register();
+        try{
+            while(running){
+                selector.select();
+                drainReplies();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid()){
+                        continue;
+                    }
+                    if(key.isAcceptable()){
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection)key.attachment();
+                    try{
+                        if(key.isReadable()){
+                            read(connection);
+                        }
+                        if(key.isValid() && key.isWritable()){
+                            write(connection);
+                        }
+                    }
+                    catch(IOException e){
+                        //the client went away
+                        close(connection);
+                    }
+                }
+            }
+        }
+        finally{
+            for(SelectionKey key: selector.keys()){
+                if(key.attachment() instanceof Connection){
+                    close((Connection)key.attachment());
+                }
+            }
+            server.close();
+            selector.close();
+            pool.shutdownNow();
+            metrics.unregister();
+        }
+    }
+
+    //store the searches keep their deep results in, set before serve()
+    public void setStore(PositionStore store) {
+        this.store = store;
+    }
+
+    //makes serve() return, from any thread
+    public void stop(){
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * -----------NETWORK CODE--------------
+     */
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if(channel == null){
+            return;
+        }
+        channel.configureBlocking(false);
+        if(metrics.getSessions() >= maxSessions){
+            metrics.connectionRefused();
+            try{
+                channel.write(ByteBuffer.wrap("ERR server full\n".getBytes(StandardCharsets.US_ASCII)));
+            }
+            finally{
+                channel.close();
+            }
+            return;
+        }
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        metrics.sessionOpened();
+    }
+
+    //splits what the client sent into lines and handles the complete ones
+    private void read(Connection connection) throws IOException {
+        readBuffer.clear();
+        int count = connection.channel.read(readBuffer);
+        if(count < 0){
+            close(connection);
+            return;
+        }
+        readBuffer.flip();
+        while(readBuffer.hasRemaining()){
+            char c = (char)(readBuffer.get() & 0xFF);
+            if(c == '\n'){
+                connection.lines.add(connection.line.toString().trim());
+                connection.line.setLength(0);
+            }
+            else if(c != '\r'){
+                if(connection.line.length() >= MAX_LINE){
+                    send(connection, "ERR line longer than " + MAX_LINE + " characters");
+                    connection.closing = true;
+                    break;
+                }
+                connection.line.append(c);
+            }
+        }
+        handleLines(connection);
+    }
+
+    private void write(Connection connection) throws IOException {
+        while(!connection.out.isEmpty()){
+            ByteBuffer buffer = connection.out.peek();
+            connection.outBytes -= connection.channel.write(buffer);
+            if(buffer.hasRemaining()){
+                break;
+            }
+            connection.out.poll();
+        }
+        if(connection.closing && connection.out.isEmpty()){
+            close(connection);
+            return;
+        }
+        //commands waiting for the client to catch up can go on now
+        handleLines(connection);
+    }
+
+    private void send(Connection connection, String line){
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.US_ASCII);
+        connection.out.add(ByteBuffer.wrap(bytes));
+        connection.outBytes += bytes.length;
+    }
+
+    //handles the commands read so far, unless a search is running or the client is behind on replies
+    private void handleLines(Connection connection){
+        while(!connection.thinking && !connection.closing && connection.outBytes < MAX_PENDING_OUTPUT && !connection.lines.isEmpty()){
+            handle(connection, connection.lines.poll());
+        }
+        updateInterest(connection);
+    }
+
+    private void updateInterest(Connection connection){
+        if(!connection.key.isValid()){
+            return;
+        }
+        int ops = 0;
+        //reading stops while a search runs, older commands wait or the client is not reading its replies
+        if(!connection.thinking && !connection.closing && connection.lines.isEmpty() && connection.outBytes < MAX_PENDING_OUTPUT){
+            ops |= SelectionKey.OP_READ;
+        }
+        if(!connection.out.isEmpty()){
+            ops |= SelectionKey.OP_WRITE;
+        }
+        connection.key.interestOps(ops);
+    }
+
+    private void close(Connection connection){
+        if(connection.closed){
+            return;
+        }
+        connection.closed = true;
+        connection.key.cancel();
+        try{
+            connection.channel.close();
+        }
+        catch(IOException e){
+            //already gone
+        }
+        metrics.sessionClosed();
+    }
+
+    //sends the CPU replies the search threads finished to their clients
+    private void drainReplies(){
+        Reply reply;
+        while((reply = replies.poll()) != null){
+            metrics.cpuMoved(reply.nanos);
+            Connection connection = reply.connection;
+            if(connection.closed){
+                continue;
+            }
+            connection.thinking = false;
+            for(String line: reply.lines){
+                send(connection, line);
+            }
+            handleLines(connection);
+        }
+    }
+
+    /**
+     * -----------COMMAND CODE--------------
+     */
+
+    private void handle(Connection connection, String line){
+        String[] words = line.split("\\s+");
+        String command = words[0].toUpperCase();
+        if(command.isEmpty()){
+            return;
+        }
+        else if(command.equals("NEW")){
+            newGame(connection, words);
+        }
+        else if(command.equals("MOVE")){
+            move(connection, words);
+        }
+        else if(command.equals("BOARD")){
+            if(connection.session == null){
+                send(connection, "ERR no game, start one with NEW");
+            }
+            else{
+                send(connection, connection.session.boardLine());
+            }
+        }
+        else if(command.equals("MOVES")){
+            if(connection.session == null){
+                send(connection, "ERR no game, start one with NEW");
+            }
+            else{
+                send(connection, connection.session.movesLine());
+            }
+        }
+        else if(command.equals("STATS")){
+            send(connection, "STATS " + metrics.getStatsLine() + (store != null ? " " + store.getStatsLine() : ""));
+        }
+        else if(command.equals("QUIT")){
+            send(connection, "BYE");
+            connection.closing = true;
+        }
+        else{
+            send(connection, "ERR unknown command " + words[0]);
+        }
+    }
+
+    //NEW size color opponent [depth|ms]
+    private void newGame(Connection connection, String[] words){
+        if(words.length < 4 || words.length > 5){
+            send(connection, "ERR usage: NEW size x|o random|minimax|search|timed [depth|ms]");
+            return;
+        }
+        int size;
+        long setting = -1;
+        try{
+            size = Integer.parseInt(words[1]);
+            if(words.length == 5){
+                setting = Long.parseLong(words[4]);
+            }
+        }
+        catch(NumberFormatException e){
+            send(connection, "ERR not a number: " + e.getMessage());
+            return;
+        }
+        if(size < 4 || size > WideBoard.MAX_SIZE || size % 2 != 0){
+            send(connection, "ERR size must be even, from 4 to " + WideBoard.MAX_SIZE);
+            return;
+        }
+        String color = words[2].toLowerCase();
+        if(!color.equals("x") && !color.equals("o")){
+            send(connection, "ERR color must be x or o");
+            return;
+        }
+        String opponent = words[3].toLowerCase();
+        int playerType;
+        int depth = DEFAULT_DEPTH;
+        long moveMillis = 0;
+        if(opponent.equals("random")){
+            playerType = 1;
+        }
+        else if(opponent.equals("minimax") || opponent.equals("search")){
+            //minimax copies the board for every child, the search plays and takes back moves in place
+            playerType = opponent.equals("minimax") ? 3 : 4;
+            if(setting >= 0){
+                depth = (int)Math.max(1, Math.min(setting, Search.MAX_PLY / 2));
+            }
+        }
+        else if(opponent.equals("timed")){
+            playerType = 4;
+            depth = Integer.MAX_VALUE;
+            moveMillis = setting > 0 ? Math.min(setting, 60000) : DEFAULT_MOVE_MILLIS;
+        }
+        else{
+            send(connection, "ERR opponent must be random, minimax, search or timed");
+            return;
+        }
+        char human = color.charAt(0);
+        //the CPU moves first as black, which needs room in the queue
+        if(human == 'o' && queueFull()){
+            metrics.busy();
+            send(connection, "BUSY");
+            return;
+        }
+        if(size > BitBoard.MAX_SIZE){
+            connection.session = new Session<WideBoard>(new WideBoard(size), human, playerType, depth, moveMillis);
+        }
+        else{
+            connection.session = new Session<ReversiBoard>(new ReversiBoard(size), human, playerType, depth, moveMillis);
+        }
+        metrics.gameStarted();
+        send(connection, "OK NEW");
+        if(human == 'o'){
+            startCpu(connection, System.nanoTime());
+        }
+        else{
+            send(connection, connection.session.boardLine());
+        }
+    }
+
+    //MOVE d3
+    private void move(Connection connection, String[] words){
+        long arrived = System.nanoTime();
+        Session<?> session = connection.session;
+        if(session == null){
+            send(connection, "ERR no game, start one with NEW");
+            return;
+        }
+        if(words.length != 2 || !words[1].matches("[a-zA-Z][0-9]{1,2}")){
+            send(connection, "ERR usage: MOVE d3");
+            return;
+        }
+        if(session.isGameOver()){
+            send(connection, "ERR the game is over, start a new one with NEW");
+            return;
+        }
+        if(queueFull()){
+            metrics.busy();
+            send(connection, "BUSY");
+            return;
+        }
+        int x = Character.toLowerCase(words[1].charAt(0)) - 'a';
+        int y = Integer.parseInt(words[1].substring(1)) - 1;
+        if(!session.humanMove(x, y)){
+            send(connection, "ERR illegal move " + words[1]);
+            return;
+        }
+        send(connection, "OK " + words[1].toLowerCase());
+        if(session.cpuHasMove()){
+            startCpu(connection, arrived);
+            return;
+        }
+        //the CPU passes, or nobody can move
+        if(!session.isGameOver()){
+            send(connection, "PASS " + session.cpu);
+        }
+        send(connection, session.boardLine());
+        if(session.isGameOver()){
+            send(connection, session.overLine());
+        }
+    }
+
+    //true if a search submitted now would be refused, only the selector thread submits so it stays true
+    private boolean queueFull(){
+        return pool.getQueue().remainingCapacity() == 0;
+    }
+
+    //searches the CPU's moves on the pool, the connection is not read until the reply is back
+    private void startCpu(Connection connection, long arrived){
+        Session<?> session = connection.session;
+        connection.thinking = true;
+        try{
+            pool.execute(() -> {
+                List<String> lines;
+                try{
+                    lines = session.cpuTurn(searches.get(), store);
+                }
+                catch(RuntimeException e){
+                    lines = new ArrayList<String>();
+                    lines.add("ERR search failed: " + e);
+                }
+                replies.add(new Reply(connection, lines, System.nanoTime() - arrived));
+                selector.wakeup();
+            });
+        }
+        catch(RejectedExecutionException e){
+            //only when the server is stopping, the queue was checked before
+            connection.thinking = false;
+            send(connection, "ERR server is stopping");
+            connection.closing = true;
+        }
+    }
+
+    /**
+     * ---------GETTERS----------
+     */
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public GameServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * -----------SESSION CODE--------------
+     */
+
+    //one client's socket and what it sent and has yet to receive, used by the selector thread only
+    private static class Connection {
+        private SocketChannel channel;
+        private SelectionKey key;
+        private StringBuilder line = new StringBuilder();
+        private ArrayDeque<String> lines = new ArrayDeque<String>();
+        private ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+        private int outBytes;
+        private Session<?> session;
+        //a search of this session is queued or running, the board belongs to it until the reply
+        private boolean thinking;
+        private boolean closing;
+        private boolean closed;
+
+        private Connection(SocketChannel channel){
+            this.channel = channel;
+        }
+    }
+
+    //CPU moves searched for a connection, with the time since the user's move arrived
+    private static class Reply {
+        private Connection connection;
+        private List<String> lines;
+        private long nanos;
+
+        private Reply(Connection connection, List<String> lines, long nanos){
+            this.connection = connection;
+            this.lines = lines;
+            this.nanos = nanos;
+        }
+    }
+
+    //one game: the board and how the CPU plays it
+    private static class Session<T extends TwoPlayerPlayable<T>> {
+        private T board;
+        private char human;
+        private char cpu;
+        private COLOR cpuColor;
+        private int playerType;
+        private int depth;
+        private long moveMillis;
+        private MoveList moves = new MoveList();
+
+        private Session(T board, char human, int playerType, int depth, long moveMillis){
+            this.board = board;
+            this.board.initBoard();
+            this.human = human;
+            this.cpu = human == 'x' ? 'o' : 'x';
+            this.cpuColor = cpu == 'x' ? COLOR.BLACK : COLOR.WHITE;
+            this.playerType = playerType;
+            this.depth = depth;
+            this.moveMillis = moveMillis;
+        }
+
+        //plays the user's move if it is legal
+        private boolean humanMove(int x, int y){
+            int size = board.getGameSize();
+            if(x < 0 || x >= size || y < 0 || y >= size){
+                return false;
+            }
+            int move = MoveList.move(x, y);
+            board.generateMoves(human, moves);
+            return moves.contains(move) && board.apply(move, human);
+        }
+
+        private boolean cpuHasMove(){
+            return board.hasValidMove(cpu);
+        }
+
+        private boolean isGameOver(){
+            return board.isGameOver();
+        }
+
+        /**
+         * Plays the CPU's moves until the user has a move or the game is over. Runs on a search
+         * thread with that thread's Search, so a Player is made for every turn.
+         *
+         * @param cached the search thread's Search for each board size
+         * @param store store a new Search keeps its deep results in, null for none
+         * @return returns the reply lines
+         */
+        private List<String> cpuTurn(Search[] cached, PositionStore store){
+            int size = board.getGameSize();
+            Search search = null;
+            if(size <= BitBoard.MAX_SIZE){
+                if(cached[size] == null){
+                    cached[size] = new Search(TABLE_MEGABYTES);
+                    cached[size].setStore(store);
+                }
+                search = cached[size];
+            }
+            Player<T> player = new Player<T>(board, cpuColor, playerType, search);
+            player.setSearchDepth(depth);
+            player.setMoveTimeMillis(moveMillis);
+
+            List<String> lines = new ArrayList<String>();
+            while(board.hasValidMove(cpu)){
+                if(!player.cpuMove(playerType)){
+                    lines.add("ERR the CPU could not play a move");
+                    break;
+                }
+                lines.add("CPU " + MoveList.moveName(player.getLastMove()));
+                //the CPU moves again while the user has to pass
+                if(board.hasValidMove(human) || !board.hasValidMove(cpu)){
+                    break;
+                }
+                lines.add("PASS " + human);
+            }
+            lines.add(boardLine());
+            if(board.isGameOver()){
+                lines.add(overLine());
+            }
+            return lines;
+        }
+
+        private String boardLine(){
+            int size = board.getGameSize();
+            StringBuilder text = new StringBuilder("BOARD ").append(size).append(' ').append(board.hasCurrentTurn()).append(' ');
+            for(int y = 0; y<size; y++){
+                if(y > 0){
+                    text.append('/');
+                }
+                for(int x = 0; x<size; x++){
+                    char piece = board.pieceAt(x, y);
+                    text.append(piece == ' ' ? '.' : piece);
+                }
+            }
+            return text.toString();
+        }
+
+        private String movesLine(){
+            board.generateMoves(human, moves);
+            StringBuilder text = new StringBuilder("MOVES");
+            for(int i = 0; i<moves.size(); i++){
+                text.append(' ').append(MoveList.moveName(moves.get(i)));
+            }
+            return text.toString();
+        }
+
+        private String overLine(){
+            int black = board.getValue('x');
+            int white = board.getValue('o');
+            String winner = black > white ? "x" : white > black ? "o" : "draw";
+            return "OVER x=" + black + " o=" + white + " winner=" + winner;
+        }
+    }
+}
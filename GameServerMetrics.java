@@ -0,0 +1,175 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.ThreadPoolExecutor;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+/*
+ * File: GameServerMetrics.java
+ *
+ * Counts what a GameServer is doing and publishes it as a JMX MBean and as the line the STATS
+ * command replies with: open sessions, searches waiting for a thread and running, and how
+ * long users wait for the CPU's move. The latencies of the last LATENCY_WINDOW CPU moves are
+ * kept so the percentiles follow the current load instead of the whole life of the server.
+ *
+ * Sessions are only counted by the selector thread, moves are recorded once per CPU move, so
+ * the lock is never taken inside a search.
+ */
+public class GameServerMetrics implements GameServerMetricsMBean {
+
+    public static final String OBJECT_NAME = "Reversi:type=GameServer";
+    //number of recent CPU moves the latency percentiles are taken over
+    private static final int LATENCY_WINDOW = 4096;
+
+    private ThreadPoolExecutor pool;
+    private int sessions;
+    private long refused;
+    private long gamesStarted;
+    private long cpuMoves;
+    private long busyReplies;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    private long[] recent = new long[LATENCY_WINDOW];
+    private int recentCount;
+    private int recentNext;
+
+    /**
+     * @param pool executor the server's searches run on, for the queue depth
+     */
+    public GameServerMetrics(ThreadPoolExecutor pool){
+        this.pool = pool;
+    }
+
+    //publishes the metrics over JMX, the server still works if the JMX server refuses them
+    public void register(){
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if(!server.isRegistered(name)){
+                server.registerMBean(this, name);
+            }
+        }
+        catch(JMException | SecurityException e){
+            System.err.println("Game server metrics are not available over JMX: " + e.getMessage());
+        }
+    }
+
+    //takes the metrics off JMX, so another server in the same JVM can publish its own
+    public void unregister(){
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if(server.isRegistered(name)){
+                server.unregisterMBean(name);
+            }
+        }
+        catch(JMException | SecurityException e){
+            //nothing was published
+        }
+    }
+
+    /**
+     * -----------RECORDING CODE--------------
+     */
+
+    public synchronized void sessionOpened(){
+        sessions++;
+    }
+
+    public synchronized void sessionClosed(){
+        sessions--;
+    }
+
+    public synchronized void connectionRefused(){
+        refused++;
+    }
+
+    public synchronized void gameStarted(){
+        gamesStarted++;
+    }
+
+    //a move answered with BUSY because the search queue was full
+    public synchronized void busy(){
+        busyReplies++;
+    }
+
+    /**
+     * Adds the latency of one CPU reply
+     *
+     * @param nanos time from the user's move arriving to the reply being ready
+     */
+    public synchronized void cpuMoved(long nanos){
+        cpuMoves++;
+        totalLatencyNanos += nanos;
+        maxLatencyNanos = Math.max(maxLatencyNanos, nanos);
+        recent[recentNext] = nanos;
+        recentNext = (recentNext + 1) % LATENCY_WINDOW;
+        recentCount = Math.min(recentCount + 1, LATENCY_WINDOW);
+    }
+
+    //latency below which the given fraction of the recent moves were answered
+    private synchronized double percentileMillis(double fraction){
+        if(recentCount == 0){
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(recent, recentCount);
+        Arrays.sort(sorted);
+        int index = Math.min(recentCount - 1, (int)Math.ceil(fraction * recentCount) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * ---------MBEAN ATTRIBUTES----------
+     */
+
+    public synchronized int getSessions() {
+        return sessions;
+    }
+
+    public synchronized long getConnectionsRefused() {
+        return refused;
+    }
+
+    public synchronized long getGamesStarted() {
+        return gamesStarted;
+    }
+
+    public synchronized long getCpuMoves() {
+        return cpuMoves;
+    }
+
+    public synchronized long getBusyReplies() {
+        return busyReplies;
+    }
+
+    public int getQueuedSearches() {
+        return pool.getQueue().size();
+    }
+
+    public int getActiveSearches() {
+        return pool.getActiveCount();
+    }
+
+    public synchronized double getAverageLatencyMillis() {
+        return cpuMoves == 0 ? 0 : totalLatencyNanos / 1e6 / cpuMoves;
+    }
+
+    public double getMedianLatencyMillis() {
+        return percentileMillis(0.5);
+    }
+
+    public double getP99LatencyMillis() {
+        return percentileMillis(0.99);
+    }
+
+    public synchronized double getMaxLatencyMillis() {
+        return maxLatencyNanos / 1e6;
+    }
+
+    //every attribute as key=value pairs on one line
+    public String getStatsLine() {
+        return String.format("sessions=%d refused=%d games=%d queued=%d active=%d cpuMoves=%d busy=%d latencyAvgMs=%.2f latencyP50Ms=%.2f latencyP99Ms=%.2f latencyMaxMs=%.2f",
+            getSessions(), getConnectionsRefused(), getGamesStarted(), getQueuedSearches(), getActiveSearches(), getCpuMoves(),
+            getBusyReplies(), getAverageLatencyMillis(), getMedianLatencyMillis(), getP99LatencyMillis(), getMaxLatencyMillis());
+    }
+}
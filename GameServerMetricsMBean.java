@@ -0,0 +1,33 @@
+/*
+ * File: GameServerMetricsMBean.java
+ *
+ * Management interface of GameServerMetrics, the attributes shown by JConsole or any other JMX
+ * client under Reversi:type=GameServer. Latencies are from the user's move arriving to the
+ * CPU's reply being ready, queueing included, over the most recent CPU moves.
+ */
+public interface GameServerMetricsMBean {
+
+    int getSessions();
+
+    long getConnectionsRefused();
+
+    long getGamesStarted();
+
+    long getCpuMoves();
+
+    long getBusyReplies();
+
+    int getQueuedSearches();
+
+    int getActiveSearches();
+
+    double getAverageLatencyMillis();
+
+    double getMedianLatencyMillis();
+
+    double getP99LatencyMillis();
+
+    double getMaxLatencyMillis();
+
+    String getStatsLine();
+}
@@ -0,0 +1,12 @@
+/*
+ * File: HeuristicEvaluator.java
+ *
+ * The original heuristic of ReversiBoard.reversiHeuristic(), the piece difference plus a
+ * bonus for corners, computed with popcounts on the bitboard.
+ */
+public class HeuristicEvaluator implements Evaluator {
+
+    public int evaluate(BitBoard board){
+        return board.reversiHeuristic(board.hasCurrentTurn());
+    }
+}
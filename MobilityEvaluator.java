@@ -0,0 +1,194 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+/*
+ * File: MobilityEvaluator.java
+ *
+ * Evaluator combining the features that matter most in the middle game, each the value for
+ * the player to move minus the value for the other player:
+ *   mobility            number of legal moves
+ *   potentialMobility   empty squares next to the other player's pieces
+ *   frontier            own pieces next to an empty square, a low count is better
+ *   stability           edge pieces that can never be flipped, counted from the corners
+ *   position            sum of the static square weights of MoveOrderer
+ *   discs               number of pieces
+ * Every feature is a handful of shifts and popcounts on the bitboards. The weights can be
+ * loaded from a properties file using the feature names above as keys.
+ */
+public class MobilityEvaluator implements Evaluator {
+
+    private int mobilityWeight;
+    private int potentialMobilityWeight;
+    private int frontierWeight;
+    private int stabilityWeight;
+    private int positionWeight;
+    private int discWeight;
+
+    //for each board size, the squares grouped by square weight
+    private long[][] positionMasks;
+    private int[][] positionValues;
+    //for each board size, the squares of each edge walking away from a corner
+    private int[][][] edgeRuns;
+
+    public MobilityEvaluator(){
+        this(10, 3, -4, 20, 1, 0);
+    }
+
+    public MobilityEvaluator(int mobilityWeight, int potentialMobilityWeight, int frontierWeight,
+        int stabilityWeight, int positionWeight, int discWeight){
+        this.mobilityWeight = mobilityWeight;
+        this.potentialMobilityWeight = potentialMobilityWeight;
+        this.frontierWeight = frontierWeight;
+        this.stabilityWeight = stabilityWeight;
+        this.positionWeight = positionWeight;
+        this.discWeight = discWeight;
+
+        positionMasks = new long[9][];
+        positionValues = new int[9][];
+        edgeRuns = new int[9][][];
+        for(int size = 1; size<=8; size++){
+            buildPositionMasks(size);
+            edgeRuns[size] = buildEdgeRuns(size);
+        }
+    }
+
+    /**
+     * Builds an evaluator from a weights file, features missing from the file keep their default weight
+     *
+     * @param file properties file with one weight per feature
+     * @return returns the evaluator
+     * @throws IOException if the file cannot be read
+     */
+    public static MobilityEvaluator load(Path file) throws IOException {
+        Properties weights = new Properties();
+        try(Reader reader = Files.newBufferedReader(file)){
+            weights.load(reader);
+        }
+        MobilityEvaluator defaults = new MobilityEvaluator();
+        return new MobilityEvaluator(
+            weight(weights, "mobility", defaults.mobilityWeight),
+            weight(weights, "potentialMobility", defaults.potentialMobilityWeight),
+            weight(weights, "frontier", defaults.frontierWeight),
+            weight(weights, "stability", defaults.stabilityWeight),
+            weight(weights, "position", defaults.positionWeight),
+            weight(weights, "discs", defaults.discWeight));
+    }
+
+    private static int weight(Properties weights, String name, int defaultWeight){
+        String value = weights.getProperty(name);
+        if(value == null){
+            return defaultWeight;
+        }
+        try{
+            return Integer.parseInt(value.trim());
+        }
+        catch(NumberFormatException e){
+            throw new IllegalArgumentException("Weight \"" + name + "\" is not a number: " + value, e);
+        }
+    }
+
+    public int evaluate(BitBoard board){
+        boolean black = board.hasCurrentTurn() == 'x';
+        long own = black ? board.getBlack() : board.getWhite();
+        long opp = black ? board.getWhite() : board.getBlack();
+        long empty = ~(own | opp) & board.getMask();
+        int size = board.getGameSize();
+
+        int score = 0;
+        if(mobilityWeight != 0){
+            score += mobilityWeight * (Long.bitCount(board.legalMoves(own, opp)) - Long.bitCount(board.legalMoves(opp, own)));
+        }
+        if(potentialMobilityWeight != 0){
+            score += potentialMobilityWeight * (Long.bitCount(board.neighbours(opp) & empty) - Long.bitCount(board.neighbours(own) & empty));
+        }
+        if(frontierWeight != 0){
+            long nextToEmpty = board.neighbours(empty);
+            score += frontierWeight * (Long.bitCount(own & nextToEmpty) - Long.bitCount(opp & nextToEmpty));
+        }
+        if(stabilityWeight != 0){
+            score += stabilityWeight * (Long.bitCount(stableEdges(own, size)) - Long.bitCount(stableEdges(opp, size)));
+        }
+        if(positionWeight != 0){
+            long[] masks = positionMasks[size];
+            int[] values = positionValues[size];
+            int position = 0;
+            for(int i = 0; i<masks.length; i++){
+                position += values[i] * (Long.bitCount(own & masks[i]) - Long.bitCount(opp & masks[i]));
+            }
+            score += positionWeight * position;
+        }
+        if(discWeight != 0){
+            score += discWeight * (Long.bitCount(own) - Long.bitCount(opp));
+        }
+        return score;
+    }
+
+    /**
+     * Finds the edge pieces that can never be flipped, those joined to an owned corner along the edge
+     *
+     * @param pieces pieces of one player
+     * @param size width and height of the board
+     * @return returns the bits of the stable edge pieces
+     */
+    public long stableEdges(long pieces, int size){
+        long stable = 0;
+        for(int[] run: edgeRuns[size]){
+            for(int square: run){
+                long bit = 1L << square;
+                if((pieces & bit) == 0){
+                    break;
+                }
+                stable |= bit;
+            }
+        }
+        return stable;
+    }
+
+    /**
+     * -----------TABLE BUILDING CODE--------------
+     */
+
+    //one mask per distinct square weight, so the position score is one popcount per weight
+    private void buildPositionMasks(int size){
+        int[] weights = MoveOrderer.squareWeights(size);
+        long board = BitBoard.squareMask(size);
+        int[] distinct = new int[64];
+        long[] masks = new long[64];
+        int count = 0;
+        for(long bits = board; bits != 0; bits &= bits - 1){
+            int square = Long.numberOfTrailingZeros(bits);
+            int i = 0;
+            while(i < count && distinct[i] != weights[square]){
+                i++;
+            }
+            if(i == count){
+                distinct[count] = weights[square];
+                count++;
+            }
+            masks[i] |= 1L << square;
+        }
+        positionMasks[size] = Arrays.copyOf(masks, count);
+        positionValues[size] = Arrays.copyOf(distinct, count);
+    }
+
+    //two runs per corner, one along each edge the corner is on
+    private static int[][] buildEdgeRuns(int size){
+        int last = size - 1;
+        int[][] corners = {{0, 0}, {0, last}, {last, 0}, {last, last}};
+        int[][] runs = new int[8][size];
+        int r = 0;
+        for(int[] corner: corners){
+            int stepX = corner[0] == 0 ? 1 : -1;
+            int stepY = corner[1] == 0 ? 1 : -1;
+            for(int i = 0; i<size; i++){
+                runs[r][i] = BitBoard.square(corner[0] + i * stepX, corner[1]);
+                runs[r + 1][i] = BitBoard.square(corner[0], corner[1] + i * stepY);
+            }
+            r += 2;
+        }
+        return runs;
+    }
+}
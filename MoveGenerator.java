@@ -0,0 +1,16 @@
+/*
+ * File: MoveGenerator.java
+ *
+ * Finds legal moves and flipped pieces in place of the scalar loops of BitBoard and WideBoard,
+ * for one board size. The 64 bit methods keep no state and can be
+ * shared between threads. The row method keeps scratch rows of its own, so every WideBoard
+ * needs its own generator. MoveGenerators hands them out.
+ */
+public interface MoveGenerator {
+    //legal moves of own in BitBoard's layout, every empty square that flips at least one piece
+    public long legalMoves(long own, long opp);
+    //pieces flipped by own playing on a square in BitBoard's layout, 0 if the move is not legal
+    public long flips(int square, long own, long opp);
+    //legal moves of own in WideBoard's layout of one long per row, written to moves
+    public void legalMoves(long[] own, long[] opp, long[] moves);
+}
@@ -0,0 +1,99 @@
+/*
+ * File: MoveGenerators.java
+ *
+ * Chooses between the scalar move generation the boards do themselves and the SIMD generator
+ * in VectorMoveGenerator. The Vector API is still an incubator module, so VectorMoveGenerator
+ * is only loaded by name when the vector generator is turned on. A JVM started without
+ * "--add-modules jdk.incubator.vector" cannot load it, and the boards keep their scalar loops.
+ *
+ * Boards ask for a generator when they are made, so turn the vector generator on before the
+ * boards of a game are set up.
+ */
+public class MoveGenerators {
+
+    private static final String VECTOR_CLASS = "VectorMoveGenerator";
+
+    private static volatile boolean vector = false;
+    //the 64 bit generators keep no state, so one per size is shared by every BitBoard
+    private static final MoveGenerator[] shared = new MoveGenerator[BitBoard.MAX_SIZE + 1];
+    private static String unavailableReason = null;
+
+    /**
+     * Turns the vector generator on or off for the boards made from now on
+     *
+     * @param on true to use the Vector API
+     * @return returns true if the vector generator is in use afterwards, false if it was turned
+     *         off or cannot be loaded in this JVM
+     */
+    public static synchronized boolean setVector(boolean on){
+        vector = on && create(BitBoard.MAX_SIZE) != null;
+        return vector;
+    }
+
+    public static boolean isVector(){
+        return vector;
+    }
+
+    //why the vector generator could not be loaded, null if it loaded or was never tried
+    public static synchronized String getUnavailableReason(){
+        return unavailableReason;
+    }
+
+    /**
+     * Generator a new BitBoard should use
+     *
+     * @param gameSize width and height of the board, at most 8
+     * @return returns the shared vector generator of the size, null for the board's own scalar loops
+     */
+    public static MoveGenerator forBitBoard(int gameSize){
+        if(!vector){
+            return null;
+        }
+        MoveGenerator generator = shared[gameSize];
+        if(generator == null){
+            generator = create(gameSize);
+            shared[gameSize] = generator;
+        }
+        return generator;
+    }
+
+    /**
+     * Generator a new WideBoard should use
+     *
+     * @param gameSize width and height of the board
+     * @return returns a vector generator for this board alone, null for the board's own scalar loops
+     */
+    public static MoveGenerator forRows(int gameSize){
+        if(!vector){
+            return null;
+        }
+        return create(gameSize);
+    }
+
+    /**
+     * Loads a vector generator whether or not it is turned on, for benchmarks and checks that
+     * compare both generators
+     *
+     * @param gameSize width and height of the board
+     * @return returns a new vector generator, null if the Vector API is not available
+     */
+    public static synchronized MoveGenerator create(int gameSize){
+        if(unavailableReason != null){
+            return null;
+        }
+        try{
+            return (MoveGenerator)Class.forName(VECTOR_CLASS).getConstructor(int.class).newInstance(gameSize);
+        }
+        catch(java.lang.reflect.InvocationTargetException e){
+            //a bad size is the caller's mistake, a missing module is the JVM's
+            if(e.getCause() instanceof IllegalArgumentException){
+                throw (IllegalArgumentException)e.getCause();
+            }
+            unavailableReason = String.valueOf(e.getCause());
+        }
+        catch(ReflectiveOperationException | LinkageError e){
+            unavailableReason = e.toString();
+        }
+        return null;
+    }
+}
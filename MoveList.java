@@ -0,0 +1,103 @@
+/*
+ * File: MoveList.java
+ *
+ * Reusable list of moves backed by an int[], so finding the legal moves of a board boxes
+ * nothing and allocates nothing once the list has grown to the most moves it has held. A
+ * move is one int holding its board location, x in the high bits and y in the low byte, so
+ * the same move means the same square on every board representation and size.
+ */
+public class MoveList {
+
+    private int[] moves;
+    private int size;
+
+    public MoveList(){
+        this(32);
+    }
+
+    /**
+     * @param capacity number of moves the list holds before it grows
+     */
+    public MoveList(int capacity){
+        moves = new int[Math.max(1, capacity)];
+        size = 0;
+    }
+
+    /**
+     * Encodes a board location as a move
+     *
+     * @param x x axis location, 0 being the column labelled "a"
+     * @param y y axis location, 0 being the row labelled "1"
+     * @return returns the move
+     */
+    public static int move(int x, int y){
+        return (x << 8) | y;
+    }
+
+    //x axis location of a move
+    public static int moveX(int move){
+        return move >>> 8;
+    }
+
+    //y axis location of a move
+    public static int moveY(int move){
+        return move & 0xFF;
+    }
+
+    //name of a move as typed by the user, for example "d3"
+    public static String moveName(int move){
+        return "" + (char)('a' + moveX(move)) + (moveY(move) + 1);
+    }
+
+    public void add(int move){
+        if(size == moves.length){
+            moves = java.util.Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[size++] = move;
+    }
+
+    public void add(int x, int y){
+        add(move(x, y));
+    }
+
+    public int get(int index){
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Move " + index + " of a list of " + size);
+        }
+        return moves[index];
+    }
+
+    public boolean contains(int move){
+        for(int i = 0; i<size; i++){
+            if(moves[i] == move){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //empties the list, keeping its array for the next use
+    public void clear(){
+        size = 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder text = new StringBuilder("[");
+        for(int i = 0; i<size; i++){
+            if(i > 0){
+                text.append(", ");
+            }
+            text.append(moveName(moves[i]));
+        }
+        return text.append(']').toString();
+    }
+}
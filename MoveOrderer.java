@@ -0,0 +1,196 @@
+/*
+ * File: MoveOrderer.java
+ *
+ * Ranks the moves of a node before Search recurses into them, since alpha-beta prunes most
+ * when the best move is tried first. In order of priority a move is ranked by being the
+ * transposition table move, being a killer move that caused a cutoff at the same ply, and
+ * then by its static square weight plus its history score. Each Search owns one orderer, so
+ * nothing here is shared between threads.
+ */
+public class MoveOrderer {
+
+    private static final int TT_MOVE_SCORE = 1 << 30;
+    private static final int KILLER_SCORE = 1 << 29;
+    //square weights are scaled above the history scores that build up within one search
+    private static final int WEIGHT_SCALE = 1 << 12;
+    private static final int HISTORY_LIMIT = 1 << 20;
+
+    private int[] squareWeights;
+    private int[][] killers;
+    private int[][] history;
+    private int[][] moveBuffers;
+    private int[][] scoreBuffers;
+    private long cutoffs;
+    private long firstMoveCutoffs;
+
+    public MoveOrderer(int gameSize){
+        squareWeights = squareWeights(gameSize);
+        killers = new int[Search.MAX_PLY][2];
+        history = new int[2][64];
+        moveBuffers = new int[Search.MAX_PLY][64];
+        scoreBuffers = new int[Search.MAX_PLY][64];
+        clearKillers();
+    }
+
+    /**
+     * Static value of every square on a board of the given size. Corners are worth the most,
+     * the squares diagonally next to a corner (X-squares) and next to it along an edge
+     * (C-squares) are worth the least since they tend to give the corner away.
+     *
+     * @param gameSize width and height of the board
+     * @return returns the weight of every bit index
+     */
+    public static int[] squareWeights(int gameSize){
+        int[] weights = new int[64];
+        for(int x = 0; x<gameSize; x++){
+            for(int y = 0; y<gameSize; y++){
+                int dx = Math.min(x, gameSize - 1 - x);
+                int dy = Math.min(y, gameSize - 1 - y);
+                int near = Math.min(dx, dy);
+                int far = Math.max(dx, dy);
+                int weight;
+                if(near == 0 && far == 0){
+                    weight = 100;
+                }
+                else if(near == 0 && far == 1){
+                    weight = -20;
+                }
+                else if(near == 1 && far == 1){
+                    weight = -50;
+                }
+                else if(near == 0){
+                    weight = far == 2 ? 10 : 5;
+                }
+                else if(near == 1){
+                    weight = -2;
+                }
+                else{
+                    weight = -1;
+                }
+                weights[BitBoard.square(x, y)] = weight;
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Called at the start of each move, keeps what was learnt from the last move but lets it fade
+     */
+    public void newSearch(){
+        clearKillers();
+        for(int[] colorHistory: history){
+            for(int i = 0; i<colorHistory.length; i++){
+                colorHistory[i] >>= 1;
+            }
+        }
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+    }
+
+    private void clearKillers(){
+        for(int[] plyKillers: killers){
+            plyKillers[0] = -1;
+            plyKillers[1] = -1;
+        }
+    }
+
+    /**
+     * Sorts the moves of a node into a buffer owned by the given ply, best first
+     *
+     * @param moves bits of the legal moves
+     * @param ply ply of the node, picks the buffer and killer moves
+     * @param ttMove bit index of the transposition table move, -1 if there is none
+     * @param playerChar player to move
+     * @return returns the buffer holding the moves, the first Long.bitCount(moves) entries are used
+     */
+    public int[] orderMoves(long moves, int ply, int ttMove, char playerChar){
+        int[] buffer = moveBuffers[ply];
+        int[] scores = scoreBuffers[ply];
+        int[] colorHistory = history[playerChar == 'x' ? 0 : 1];
+        int[] plyKillers = killers[ply];
+        int count = 0;
+
+        while(moves != 0){
+            int square = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+
+            int score;
+            if(square == ttMove){
+                score = TT_MOVE_SCORE;
+            }
+            else if(square == plyKillers[0]){
+                score = KILLER_SCORE + 1;
+            }
+            else if(square == plyKillers[1]){
+                score = KILLER_SCORE;
+            }
+            else{
+                score = squareWeights[square] * WEIGHT_SCALE + colorHistory[square];
+            }
+
+            //insertion sort, there are rarely more than a dozen moves
+            int i = count;
+            while(i > 0 && scores[i - 1] < score){
+                buffer[i] = buffer[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            buffer[i] = square;
+            scores[i] = score;
+            count++;
+        }
+        return buffer;
+    }
+
+    /**
+     * Records a move that caused a beta cutoff
+     *
+     * @param ply ply of the node
+     * @param square bit index of the move
+     * @param depth depth left at the node, deeper cutoffs count for more
+     * @param playerChar player who made the move
+     * @param moveIndex position of the move in the ordered list, 0 for the first move tried
+     */
+    public void recordCutoff(int ply, int square, int depth, char playerChar, int moveIndex){
+        cutoffs++;
+        if(moveIndex == 0){
+            firstMoveCutoffs++;
+        }
+
+        int[] plyKillers = killers[ply];
+        if(plyKillers[0] != square){
+            plyKillers[1] = plyKillers[0];
+            plyKillers[0] = square;
+        }
+
+        int[] colorHistory = history[playerChar == 'x' ? 0 : 1];
+        int bonus = Math.min(depth, 64);
+        colorHistory[square] = Math.min(HISTORY_LIMIT, colorHistory[square] + bonus * bonus);
+    }
+
+    /**
+     * ---------STATISTICS----------
+     */
+
+    //number of beta cutoffs since the start of the search
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    //number of beta cutoffs caused by the first move tried
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * Percentage of cutoffs caused by the first move tried, a measure of how good the ordering is
+     *
+     * @return returns a percentage, 0 if there were no cutoffs
+     */
+    public double getFirstMoveCutoffPercent() {
+        if(cutoffs == 0){
+            return 0;
+        }
+        return 100.0 * firstMoveCutoffs / cutoffs;
+    }
+}
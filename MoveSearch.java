@@ -0,0 +1,14 @@
+/*
+ * File: MoveSearch.java
+ *
+ * A search that picks a move on a board of any representation and size. Moves come back as
+ * MoveList moves, so the caller plays them with TwoPlayerPlayable.apply() without knowing how
+ * the search holds the board. Search and ParallelSearch play boards up to 8x8 on 64 bits and
+ * WideSearch plays the larger boards.
+ */
+public interface MoveSearch {
+    //best move to a fixed depth, -1 if the player has no moves
+    public int findMove(TwoPlayerPlayable<?> position, char playerChar, int depth);
+    //best move of the deepest search that finishes in the time budget, -1 if the player has no moves
+    public int findMoveTimed(TwoPlayerPlayable<?> position, char playerChar, int maxDepth, long budgetMillis);
+}
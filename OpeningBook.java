@@ -0,0 +1,180 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+/*
+ * File: OpeningBook.java
+ *
+ * Book of known good moves for the first moves of the game, so the CPU does not search
+ * positions that have been played many times before. Positions are looked up by the
+ * canonical hash of Symmetry, so one entry serves all 8 orientations of a position, and the
+ * move stored for the canonical orientation is turned back to the board as it is.
+ *
+ * The book file is sorted fixed size records that are memory mapped and binary searched in
+ * place, so opening a book costs nothing however big it is:
+ *   int magic, int version, int board size, int record count, then for each record
+ *   long canonical hash, byte move in the canonical orientation, byte unused,
+ *   short average final piece difference for the player to move in sixteenths of a piece,
+ *   int number of games the move was played in, all big endian and sorted by hash.
+ * BookBuilder writes the file.
+ */
+public class OpeningBook {
+
+    public static final int MAGIC = 0x5256424B;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_BYTES = 16;
+    public static final int SCORE_SCALE = 16;
+
+    private MappedByteBuffer records;
+    private int gameSize;
+    private int count;
+
+    private OpeningBook(MappedByteBuffer records, int gameSize, int count){
+        this.records = records;
+        this.gameSize = gameSize;
+        this.count = count;
+    }
+
+    /**
+     * Maps a book file into memory
+     *
+     * @param file book written by write()
+     * @return returns the book
+     * @throws IOException if the file cannot be read or is not a book
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        //the mapping stays valid after the channel is closed
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if(buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC){
+            throw new IOException(file + " is not an opening book");
+        }
+        if(buffer.getInt(4) != VERSION){
+            throw new IOException(file + " has book version " + buffer.getInt(4) + ", expected " + VERSION);
+        }
+        int gameSize = buffer.getInt(8);
+        int count = buffer.getInt(12);
+        if(buffer.capacity() != HEADER_BYTES + (long)count * RECORD_BYTES){
+            throw new IOException(file + " should hold " + count + " records but is " + buffer.capacity() + " bytes");
+        }
+        return new OpeningBook(buffer, gameSize, count);
+    }
+
+    /**
+     * Writes a book file, records must already be sorted by hash with no hash twice
+     *
+     * @param file file to write
+     * @param gameSize board size the book is for, each book holds one size
+     * @param hashes canonical hashes, sorted
+     * @param moves move of each hash in the canonical orientation
+     * @param scores average final piece difference of each move in sixteenths of a piece
+     * @param games number of games each move was played in
+     * @param count number of records
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, int gameSize, long[] hashes, int[] moves, int[] scores, int[] games, int count) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(gameSize);
+            out.writeInt(count);
+            for(int i = 0; i<count; i++){
+                if(i > 0 && hashes[i] <= hashes[i - 1]){
+                    throw new IllegalArgumentException("Book records must be sorted by hash with no hash twice");
+                }
+                out.writeLong(hashes[i]);
+                out.writeByte(moves[i]);
+                out.writeByte(0);
+                out.writeShort(Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, scores[i])));
+                out.writeInt(games[i]);
+            }
+        }
+    }
+
+    /**
+     * Finds the book move of a position
+     *
+     * @param position board to look up, it is not changed
+     * @param playerChar player to move
+     * @return returns the bit index of the book move, -1 if the position is not in the book
+     */
+    public int lookup(TwoPlayerPlayable<?> position, char playerChar){
+        if(position.getGameSize() != gameSize){
+            return -1;
+        }
+        BitBoard board = BitBoard.fromBoard(position, playerChar);
+        long own = playerChar == 'x' ? board.getBlack() : board.getWhite();
+        long opp = playerChar == 'x' ? board.getWhite() : board.getBlack();
+        int symmetry = Symmetry.canonicalSymmetry(own, opp, gameSize);
+        int record = find(Zobrist.hash(Symmetry.apply(own, symmetry, gameSize), Symmetry.apply(opp, symmetry, gameSize), 'x'));
+        if(record < 0){
+            return -1;
+        }
+        int square = Symmetry.fromCanonical(getMove(record), symmetry, gameSize);
+        //a hash collision could name a square that is not a move here
+        if((((own | opp) >>> square) & 1L) != 0 || board.flips(square, own, opp) == 0){
+            return -1;
+        }
+        return square;
+    }
+
+    /**
+     * Binary search of the records for a canonical hash
+     *
+     * @param hash canonical hash of a position
+     * @return returns the record number, -1 if the hash is not in the book
+     */
+    public int find(long hash){
+        int low = 0;
+        int high = count - 1;
+        while(low <= high){
+            int middle = (low + high) >>> 1;
+            long key = records.getLong(HEADER_BYTES + middle * RECORD_BYTES);
+            if(key < hash){
+                low = middle + 1;
+            }
+            else if(key > hash){
+                high = middle - 1;
+            }
+            else{
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * ---------GETTERS----------
+     */
+
+    //move of a record in the canonical orientation
+    public int getMove(int record) {
+        return records.get(HEADER_BYTES + record * RECORD_BYTES + 8);
+    }
+
+    //average final piece difference after the move, in sixteenths of a piece
+    public int getScore(int record) {
+        return records.getShort(HEADER_BYTES + record * RECORD_BYTES + 10);
+    }
+
+    public int getGames(int record) {
+        return records.getInt(HEADER_BYTES + record * RECORD_BYTES + 12);
+    }
+
+    public int getGameSize() {
+        return gameSize;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+/*
+ * File: ParallelSearch.java
+ *
+ * Multi-core search in the lazy SMP style. Every thread runs its own Search on the same
+ * position and they share one transposition table, so results found by one thread cut off
+ * work in the others. Helper threads start one move deeper on every other thread so they
+ * fill the table ahead of the main thread. The move played is always the main thread's.
+ * The stats of a move are the main thread's with the work of every helper added.
+ *
+ * Once the root is within reach of the endgame solver the main thread solves it alone, as each
+ * helper would solve the same position again with a solver of its own that shares nothing.
+ */
+public class ParallelSearch implements MoveSearch {
+
+    private int threadCount;
+    private TranspositionTable table;
+    private Search[] searches;
+    private ExecutorService pool;
+    private AtomicBoolean stopSignal;
+    private SearchStats stats;
+    //helpers that searched the last move, 0 when the main thread solved it alone
+    private int activeHelpers;
+
+    /**
+     * @param threadCount number of threads searching each move, at least 1
+     * @param tableMegabytes memory budget of the shared transposition table
+     */
+    public ParallelSearch(int threadCount, int tableMegabytes){
+        this.threadCount = Math.max(1, threadCount);
+        this.table = new TranspositionTable(tableMegabytes);
+        this.stopSignal = new AtomicBoolean();
+        this.searches = new Search[this.threadCount];
+        for(int i = 0; i<this.threadCount; i++){
+            searches[i] = new Search(table);
+            searches[i].setStopSignal(stopSignal);
+            searches[i].setPublishStats(false);
+        }
+        stats = new SearchStats();
+        //helpers are daemon threads so an unfinished game never keeps the program running
+        pool = Executors.newFixedThreadPool(Math.max(1, this.threadCount - 1), runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ParallelSearch(int threadCount){
+        this(threadCount, Search.DEFAULT_TABLE_MEGABYTES * threadCount);
+    }
+
+    /**
+     * Searches the given position to a fixed depth using every thread
+     *
+     * @param position board to search from, it is not changed
+     * @param playerChar player to find a move for
+     * @param depth number of moves to look ahead
+     * @return returns the bit index of the best move, -1 if the player has no moves
+     */
+    public int findBestMove(TwoPlayerPlayable<?> position, char playerChar, int depth){
+        return run(position, playerChar, depth, depth, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Deepens one move at a time on every thread until the time budget runs out
+     *
+     * @param position board to search from, it is not changed
+     * @param playerChar player to find a move for
+     * @param maxDepth deepest search to try, Integer.MAX_VALUE for no limit
+     * @param budgetMillis wall clock time the search may take
+     * @return returns the bit index of the best move, -1 if the player has no moves
+     */
+    public int findBestMoveTimed(TwoPlayerPlayable<?> position, char playerChar, int maxDepth, long budgetMillis){
+        return run(position, playerChar, 1, maxDepth, System.nanoTime() + budgetMillis * 1000000L, true);
+    }
+
+    //findBestMove() as a MoveList move
+    public int findMove(TwoPlayerPlayable<?> position, char playerChar, int depth){
+        return BitBoard.toMove(findBestMove(position, playerChar, depth));
+    }
+
+    //findBestMoveTimed() as a MoveList move
+    public int findMoveTimed(TwoPlayerPlayable<?> position, char playerChar, int maxDepth, long budgetMillis){
+        return BitBoard.toMove(findBestMoveTimed(position, playerChar, maxDepth, budgetMillis));
+    }
+
+    //starts the helpers, runs the main search on the calling thread, then stops the helpers
+    private int run(TwoPlayerPlayable<?> position, char playerChar, int firstDepth, int maxDepth, long deadline, boolean timed){
+        table.newSearch();
+        stopSignal.set(false);
+
+        boolean solving = position.getEmptyCount() <= searches[0].getEndgameEmpties();
+        activeHelpers = solving ? 0 : threadCount - 1;
+        List<Future<?>> helpers = new ArrayList<Future<?>>();
+        for(int i = 1; i<=activeHelpers; i++){
+            Search helper = searches[i];
+            int helperFirst = firstDepth + (i % 2);
+            int helperMax = timed ? maxDepth : Math.max(maxDepth, helperFirst);
+            helpers.add(pool.submit(() -> helper.deepen(position, playerChar, helperFirst, helperMax, deadline)));
+        }
+
+        int result;
+        if(timed){
+            result = searches[0].deepen(position, playerChar, firstDepth, maxDepth, deadline);
+        }
+        else{
+            result = searches[0].findBestMove(position, playerChar, maxDepth);
+        }
+
+        stopSignal.set(true);
+        for(Future<?> helper: helpers){
+            try{
+                helper.get();
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            catch(ExecutionException e){
+                throw new IllegalStateException("Search helper failed", e.getCause());
+            }
+        }
+
+        stats.copyFrom(searches[0].getStats());
+        for(int i = 1; i<=activeHelpers; i++){
+            stats.addWork(searches[i].getStats());
+        }
+        SearchMetrics.getInstance().record(stats);
+        return result;
+    }
+
+    /**
+     * Sets the evaluator of every thread, evaluators keep no state so one instance is shared
+     *
+     * @param evaluator evaluation function used at the cutoff depth
+     */
+    public void setEvaluator(Evaluator evaluator){
+        for(Search search: searches){
+            search.setEvaluator(evaluator);
+        }
+    }
+
+    /**
+     * Stops the helper threads, the search cannot be used afterwards
+     */
+    public void shutdown(){
+        pool.shutdownNow();
+    }
+
+    /**
+     * ---------GETTERS----------
+     */
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    //nodes searched by every thread that took part in the last search
+    public long getNodes() {
+        long nodes = 0;
+        for(int i = 0; i<=activeHelpers; i++){
+            nodes += searches[i].getNodes();
+        }
+        return nodes;
+    }
+
+    //deepest search the main thread finished during the last search
+    public int getCompletedDepth() {
+        return searches[0].getCompletedDepth();
+    }
+
+    //stats of the last move, over every thread
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+}
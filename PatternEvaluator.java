@@ -0,0 +1,338 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+/*
+ * File: PatternEvaluator.java
+ *
+ * Evaluator for the 8x8 game in the style of pattern based Othello engines. The board is cut
+ * into lines and corner regions (the patterns below), every placement of those squares up to
+ * a symmetry of the board is an instance, and the contents of an instance are read as a base 3
+ * number (0 empty, 1 own, 2 other player) that indexes a table of weights. There is one set of
+ * tables per game phase, since the same shape is worth different amounts in the opening and
+ * near the end. The value of a board is the sum of one table read per instance, in sixteenths
+ * of a piece of the final piece difference.
+ *
+ * Weights are trained by PatternTrainer and stored as a compact binary file:
+ *   int magic, int version, int phases, int patterns, int size of each pattern's table,
+ *   then for each phase and each pattern its table as 16 bit values, all big endian.
+ * Boards other than 8x8 are passed on to a fallback evaluator.
+ */
+public class PatternEvaluator implements Evaluator {
+
+    public static final int MAGIC = 0x52565054;
+    public static final int VERSION = 1;
+    public static final int PHASES = 6;
+    //weights are stored in sixteenths of a piece
+    public static final int SCALE = 16;
+
+    //pattern shapes as (x, y) pairs in one corner, the other instances are their symmetries
+    private static final int[][] SHAPES = {
+        {},
+        {0,0, 1,0, 2,0, 3,0, 4,0, 5,0, 6,0, 7,0, 1,1, 6,1},
+        {0,0, 1,0, 2,0, 3,0, 4,0, 0,1, 1,1, 2,1, 3,1, 4,1},
+        {0,0, 1,0, 2,0, 0,1, 1,1, 2,1, 0,2, 1,2, 2,2},
+        {0,0, 1,1, 2,2, 3,3, 4,4, 5,5, 6,6, 7,7},
+        {0,1, 1,2, 2,3, 3,4, 4,5, 5,6, 6,7},
+        {0,2, 1,3, 2,4, 3,5, 4,6, 5,7},
+        {0,3, 1,4, 2,5, 3,6, 4,7},
+        {0,4, 1,5, 2,6, 3,7},
+        {0,1, 1,1, 2,1, 3,1, 4,1, 5,1, 6,1, 7,1},
+        {0,2, 1,2, 2,2, 3,2, 4,2, 5,2, 6,2, 7,2},
+        {0,3, 1,3, 2,3, 3,3, 4,3, 5,3, 6,3, 7,3}
+    };
+    public static final String[] NAMES = {
+        "bias", "edge+2x", "corner2x5", "corner3x3", "diagonal8", "diagonal7", "diagonal6",
+        "diagonal5", "diagonal4", "line2", "line3", "line4"
+    };
+
+    private static final int[][] INSTANCE_SQUARES;
+    private static final int[] INSTANCE_PATTERN;
+    private static final int[] TABLE_SIZES;
+    //the squares of every instance one after the other with the power of 3 of each, instance i ends at INSTANCE_END[i]
+    private static final int[] FLAT_SQUARES;
+    private static final int[] FLAT_POWERS;
+    private static final int[] INSTANCE_END;
+    //one square contents buffer per thread, evaluators are shared between search threads
+    private static final ThreadLocal<int[]> CELLS = ThreadLocal.withInitial(() -> new int[64]);
+
+    static {
+        List<int[]> squares = new ArrayList<int[]>();
+        List<Integer> patterns = new ArrayList<Integer>();
+        TABLE_SIZES = new int[SHAPES.length];
+        for(int p = 0; p<SHAPES.length; p++){
+            int length = SHAPES[p].length / 2;
+            TABLE_SIZES[p] = (int)Math.pow(3, length);
+            Set<String> seen = new HashSet<String>();
+            for(int symmetry = 0; symmetry<8; symmetry++){
+                int[] instance = new int[length];
+                for(int i = 0; i<length; i++){
+                    instance[i] = transform(SHAPES[p][2*i], SHAPES[p][2*i + 1], symmetry);
+                }
+                int[] sorted = instance.clone();
+                Arrays.sort(sorted);
+                if(seen.add(Arrays.toString(sorted))){
+                    squares.add(instance);
+                    patterns.add(p);
+                }
+            }
+        }
+        INSTANCE_SQUARES = squares.toArray(new int[0][]);
+        INSTANCE_PATTERN = new int[patterns.size()];
+        for(int i = 0; i<INSTANCE_PATTERN.length; i++){
+            INSTANCE_PATTERN[i] = patterns.get(i);
+        }
+
+        INSTANCE_END = new int[INSTANCE_SQUARES.length];
+        int total = 0;
+        for(int i = 0; i<INSTANCE_SQUARES.length; i++){
+            total += INSTANCE_SQUARES[i].length;
+            INSTANCE_END[i] = total;
+        }
+        FLAT_SQUARES = new int[total];
+        FLAT_POWERS = new int[total];
+        int f = 0;
+        for(int[] instance: INSTANCE_SQUARES){
+            int power = 1;
+            for(int square: instance){
+                FLAT_SQUARES[f] = square;
+                FLAT_POWERS[f] = power;
+                power *= 3;
+                f++;
+            }
+        }
+    }
+
+    private short[][][] weights;
+    private Evaluator fallback;
+
+    /**
+     * @param weights weight tables indexed by phase, pattern and pattern index
+     * @param fallback evaluator used for boards that are not 8x8
+     */
+    public PatternEvaluator(short[][][] weights, Evaluator fallback){
+        if(weights.length != PHASES || weights[0].length != SHAPES.length){
+            throw new IllegalArgumentException("Weight tables do not match the patterns");
+        }
+        this.weights = weights;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Loads weights written by save(), reading the whole file in one go
+     *
+     * @param file binary weights file
+     * @param fallback evaluator used for boards that are not 8x8
+     * @return returns the evaluator
+     * @throws IOException if the file cannot be read or is not a weights file
+     */
+    public static PatternEvaluator load(Path file, Evaluator fallback) throws IOException {
+        ByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            buffer = ByteBuffer.allocate((int)channel.size()).order(ByteOrder.BIG_ENDIAN);
+            while(buffer.hasRemaining()){
+                if(channel.read(buffer) < 0){
+                    break;
+                }
+            }
+        }
+        buffer.flip();
+        if(buffer.remaining() < 16 || buffer.getInt() != MAGIC){
+            throw new IOException(file + " is not a pattern weights file");
+        }
+        int version = buffer.getInt();
+        int phases = buffer.getInt();
+        int patterns = buffer.getInt();
+        if(version != VERSION || phases != PHASES || patterns != SHAPES.length){
+            throw new IOException(file + " has version " + version + " with " + phases + " phases and " + patterns + " patterns, expected "
+                + VERSION + ", " + PHASES + " and " + SHAPES.length);
+        }
+        for(int p = 0; p<patterns; p++){
+            if(buffer.getInt() != TABLE_SIZES[p]){
+                throw new IOException(file + " has the wrong table size for pattern " + NAMES[p]);
+            }
+        }
+        long tableBytes = 0;
+        for(int size: TABLE_SIZES){
+            tableBytes += 2L * size * PHASES;
+        }
+        if(buffer.remaining() != tableBytes){
+            throw new IOException(file + " should hold " + tableBytes + " bytes of weights but holds " + buffer.remaining());
+        }
+        short[][][] weights = emptyWeights();
+        for(int phase = 0; phase<PHASES; phase++){
+            for(int p = 0; p<patterns; p++){
+                buffer.asShortBuffer().get(weights[phase][p]);
+                buffer.position(buffer.position() + 2 * TABLE_SIZES[p]);
+            }
+        }
+        return new PatternEvaluator(weights, fallback);
+    }
+
+    /**
+     * Writes the weights in the format read by load()
+     *
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(PHASES);
+            out.writeInt(SHAPES.length);
+            for(int size: TABLE_SIZES){
+                out.writeInt(size);
+            }
+            for(short[][] phase: weights){
+                for(short[] table: phase){
+                    for(short weight: table){
+                        out.writeShort(weight);
+                    }
+                }
+            }
+        }
+    }
+
+    public int evaluate(BitBoard board){
+        if(board.getGameSize() != 8){
+            return fallback.evaluate(board);
+        }
+        boolean black = board.hasCurrentTurn() == 'x';
+        long own = black ? board.getBlack() : board.getWhite();
+        long opp = black ? board.getWhite() : board.getBlack();
+        short[][] tables = weights[phase(board.getEmptyCount())];
+        int[] cells = CELLS.get();
+        fillCells(own, opp, cells);
+
+        int score = 0;
+        int f = 0;
+        for(int i = 0; i<INSTANCE_END.length; i++){
+            int index = 0;
+            for(int end = INSTANCE_END[i]; f<end; f++){
+                index += cells[FLAT_SQUARES[f]] * FLAT_POWERS[f];
+            }
+            score += tables[INSTANCE_PATTERN[i]][index];
+        }
+        return score;
+    }
+
+    /**
+     * -----------PATTERN CODE--------------
+     */
+
+    /**
+     * Game phase of a board, phases split the 60 moves of the game evenly
+     *
+     * @param empties number of empty squares
+     * @return returns a phase from 0 to PHASES - 1
+     */
+    public static int phase(int empties){
+        return Math.min(PHASES - 1, Math.max(0, (60 - empties) * PHASES / 61));
+    }
+
+    /**
+     * Reads the squares of an instance as a base 3 number, the first square being the lowest digit
+     *
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @param squares bit indexes of the instance
+     * @return returns the index into the pattern's table
+     */
+    public static int index(long own, long opp, int[] squares){
+        int index = 0;
+        for(int i = squares.length - 1; i>=0; i--){
+            int square = squares[i];
+            index = index * 3 + (int)((own >>> square) & 1L) + 2 * (int)((opp >>> square) & 1L);
+        }
+        return index;
+    }
+
+    /**
+     * Computes the index of every instance at once, the same values as index() for each instance
+     *
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @param indexes array of getInstanceCount() entries to fill
+     */
+    public static void indexes(long own, long opp, int[] indexes){
+        int[] cells = CELLS.get();
+        fillCells(own, opp, cells);
+        int f = 0;
+        for(int i = 0; i<INSTANCE_END.length; i++){
+            int index = 0;
+            for(int end = INSTANCE_END[i]; f<end; f++){
+                index += cells[FLAT_SQUARES[f]] * FLAT_POWERS[f];
+            }
+            indexes[i] = index;
+        }
+    }
+
+    //base 3 digit of every square, reading them from an array is cheaper than shifting both boards per square
+    private static void fillCells(long own, long opp, int[] cells){
+        for(int square = 0; square<64; square++){
+            cells[square] = (int)((own >>> square) & 1L) + 2 * (int)((opp >>> square) & 1L);
+        }
+    }
+
+    //maps (x, y) on the 8x8 board through one of the 8 symmetries of the square
+    private static int transform(int x, int y, int symmetry){
+        if((symmetry & 4) != 0){
+            int swap = x;
+            x = y;
+            y = swap;
+        }
+        if((symmetry & 1) != 0){
+            x = 7 - x;
+        }
+        if((symmetry & 2) != 0){
+            y = 7 - y;
+        }
+        return BitBoard.square(x, y);
+    }
+
+    //weight tables of the right sizes, all zero
+    public static short[][][] emptyWeights(){
+        short[][][] weights = new short[PHASES][SHAPES.length][];
+        for(int phase = 0; phase<PHASES; phase++){
+            for(int p = 0; p<SHAPES.length; p++){
+                weights[phase][p] = new short[TABLE_SIZES[p]];
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * ---------GETTERS----------
+     */
+
+    public static int getInstanceCount(){
+        return INSTANCE_SQUARES.length;
+    }
+
+    public static int[] getInstanceSquares(int instance){
+        return INSTANCE_SQUARES[instance];
+    }
+
+    public static int getInstancePattern(int instance){
+        return INSTANCE_PATTERN[instance];
+    }
+
+    public static int getPatternCount(){
+        return SHAPES.length;
+    }
+
+    public static int getTableSize(int pattern){
+        return TABLE_SIZES[pattern];
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+/*
+ * File: PatternTrainer.java
+ *
+ * Command line tool that fits the weights of PatternEvaluator to game records by least
+ * squares. Every position of every game becomes a sample whose target is the final piece
+ * difference for the player to move, and the weights are fitted by stochastic gradient
+ * descent on the squared error of the pattern sum.
+ *
+ * Game records are text files with one game per line written as the squares played, for
+ * example "f5d6c3d3c4". Passes are not written since they are forced. Lines starting with
+ * # are ignored. Files written by GameRecordWriter are read too, keeping the 8x8 games. Games
+ * can also be generated by self-play.
+ *
+ * Usage: java PatternTrainer -out=FILE [-games=FILE] [-selfplay=N] [-save-games=FILE]
+ *                            [-depth=N] [-epochs=N] [-seed=N]
+ */
+public class PatternTrainer {
+
+    private static final int OPENING_RANDOM_MOVES = 8;
+    private static final double RANDOM_MOVE_CHANCE = 0.1;
+    private static final int SELF_PLAY_ENDGAME_EMPTIES = 12;
+
+    private long[] own = new long[1024];
+    private long[] opp = new long[1024];
+    private byte[] phases = new byte[1024];
+    private float[] targets = new float[1024];
+    private int sampleCount;
+
+    public static void main(String[] args) throws IOException {
+        String out = null;
+        String games = null;
+        String saveGames = null;
+        int selfPlay = 0;
+        int depth = 2;
+        int epochs = 10;
+        long seed = 1;
+        for(String arg: args){
+            if(arg.startsWith("-out=")){
+                out = arg.substring("-out=".length());
+            }
+            else if(arg.startsWith("-games=")){
+                games = arg.substring("-games=".length());
+            }
+            else if(arg.startsWith("-save-games=")){
+                saveGames = arg.substring("-save-games=".length());
+            }
+            else if(arg.startsWith("-selfplay=")){
+                selfPlay = Integer.parseInt(arg.substring("-selfplay=".length()));
+            }
+            else if(arg.startsWith("-depth=")){
+                depth = Integer.parseInt(arg.substring("-depth=".length()));
+            }
+            else if(arg.startsWith("-epochs=")){
+                epochs = Integer.parseInt(arg.substring("-epochs=".length()));
+            }
+            else if(arg.startsWith("-seed=")){
+                seed = Long.parseLong(arg.substring("-seed=".length()));
+            }
+            else{
+                System.out.println("Unknown option " + arg);
+                return;
+            }
+        }
+        if(out == null || (games == null && selfPlay <= 0)){
+            System.out.println("Usage: java PatternTrainer -out=FILE [-games=FILE] [-selfplay=N] [-save-games=FILE] [-depth=N] [-epochs=N] [-seed=N]");
+            return;
+        }
+
+        List<String> records = new ArrayList<String>();
+        if(games != null){
+            records.addAll(readGames(Paths.get(games), 8));
+        }
+        Random random = new Random(seed);
+        for(int i = 0; i<selfPlay; i++){
+            records.add(selfPlayGame(random, depth));
+            if((i + 1) % 100 == 0){
+                System.out.println("Played " + (i + 1) + " of " + selfPlay + " self-play games");
+            }
+        }
+        if(saveGames != null){
+            try(BufferedWriter writer = Files.newBufferedWriter(Paths.get(saveGames))){
+                for(String record: records){
+                    writer.write(record);
+                    writer.newLine();
+                }
+            }
+        }
+
+        PatternTrainer trainer = new PatternTrainer();
+        for(String record: records){
+            trainer.addGame(record);
+        }
+        System.out.println("Training on " + trainer.sampleCount + " positions from " + records.size() + " games");
+        PatternEvaluator evaluator = new PatternEvaluator(trainer.train(epochs, random), new MobilityEvaluator());
+        evaluator.save(Paths.get(out));
+        System.out.println("Wrote " + out);
+    }
+
+    /**
+     * Reads a text file of game records, one game per line, or a file of GameRecordWriter
+     *
+     * @param file file to read
+     * @param gameSize board size of the games kept from a GameRecordWriter file, text files
+     *                 do not say and are read whole
+     * @return returns the records, without blank lines and comments
+     * @throws IOException if the file cannot be read
+     */
+    public static List<String> readGames(Path file, int gameSize) throws IOException {
+        List<String> records = new ArrayList<String>();
+        if(GameRecordReader.isRecordFile(file)){
+            GameRecord record = new GameRecord();
+            try(GameRecordReader reader = new GameRecordReader(file)){
+                while(reader.next(record)){
+                    if(record.getGameSize() == gameSize){
+                        records.add(record.toText());
+                    }
+                }
+            }
+            return records;
+        }
+        try(BufferedReader reader = Files.newBufferedReader(file)){
+            String line;
+            while((line = reader.readLine()) != null){
+                line = line.trim();
+                if(line.length() > 0 && !line.startsWith("#")){
+                    records.add(line);
+                }
+            }
+        }
+        return records;
+    }
+
+    public static String selfPlayGame(Random random, int depth){
+        return selfPlayGame(random, depth, 8);
+    }
+
+    /**
+     * Plays a game between two copies of the search with a random opening and a few random moves
+     *
+     * @param random source of the random moves
+     * @param depth search depth of both players
+     * @param size width and height of the board
+     * @return returns the game record
+     */
+    public static String selfPlayGame(Random random, int depth, int size){
+        BitBoard board = new BitBoard(size);
+        Search search = new Search(4);
+        search.setEvaluator(new MobilityEvaluator());
+        search.setEndgameEmpties(SELF_PLAY_ENDGAME_EMPTIES);
+        StringBuilder record = new StringBuilder();
+        int ply = 0;
+
+        while(!board.isGameOver()){
+            char turn = board.hasCurrentTurn();
+            long moves = board.movesFor(turn);
+            if(moves == 0){
+                board.passTurn();
+                continue;
+            }
+            int square;
+            if(ply < OPENING_RANDOM_MOVES || random.nextDouble() < RANDOM_MOVE_CHANCE){
+                int skip = random.nextInt(Long.bitCount(moves));
+                for(int i = 0; i<skip; i++){
+                    moves &= moves - 1;
+                }
+                square = Long.numberOfTrailingZeros(moves);
+            }
+            else{
+                square = search.findBestMove(board, turn, depth);
+            }
+            board.makeMove(square);
+            record.append((char)('a' + BitBoard.squareX(square))).append(BitBoard.squareY(square) + 1);
+            ply++;
+        }
+        return record.toString();
+    }
+
+    /**
+     * Replays a game record and adds every position to the training samples
+     *
+     * @param record squares played, for example "f5d6c3"
+     */
+    public void addGame(String record){
+        BitBoard board = new BitBoard(8);
+        int first = sampleCount;
+        for(int i = 0; i + 1<record.length(); i += 2){
+            int x = Character.toLowerCase(record.charAt(i)) - 'a';
+            int y = record.charAt(i + 1) - '1';
+            char turn = board.hasCurrentTurn();
+            if(board.movesFor(turn) == 0){
+                board.passTurn();
+                turn = board.hasCurrentTurn();
+            }
+            addSample(board);
+            if(!board.movePiece(x, y, turn)){
+                throw new IllegalArgumentException("Illegal move " + record.substring(i, i + 2) + " in game " + record);
+            }
+        }
+
+        //every sample's target is the final result from the view of its player to move
+        int blackDiff = board.valueDiffBlack();
+        for(int i = first; i<sampleCount; i++){
+            targets[i] = targets[i] > 0 ? blackDiff : -blackDiff;
+        }
+    }
+
+    //stores a position from the view of the player to move, the target holds only whose view it is until the game ends
+    private void addSample(BitBoard board){
+        if(sampleCount == own.length){
+            int capacity = own.length * 2;
+            own = Arrays.copyOf(own, capacity);
+            opp = Arrays.copyOf(opp, capacity);
+            phases = Arrays.copyOf(phases, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+        }
+        boolean black = board.hasCurrentTurn() == 'x';
+        own[sampleCount] = black ? board.getBlack() : board.getWhite();
+        opp[sampleCount] = black ? board.getWhite() : board.getBlack();
+        phases[sampleCount] = (byte)PatternEvaluator.phase(board.getEmptyCount());
+        targets[sampleCount] = black ? 1 : -1;
+        sampleCount++;
+    }
+
+    /**
+     * Fits the weights by stochastic gradient descent on the squared error
+     *
+     * @param epochs number of passes over the samples
+     * @param random source of the sample order
+     * @return returns the weights in sixteenths of a piece
+     */
+    public short[][][] train(int epochs, Random random){
+        int instances = PatternEvaluator.getInstanceCount();
+        int patterns = PatternEvaluator.getPatternCount();
+        float[][][] weights = new float[PatternEvaluator.PHASES][patterns][];
+        for(int phase = 0; phase<PatternEvaluator.PHASES; phase++){
+            for(int p = 0; p<patterns; p++){
+                weights[phase][p] = new float[PatternEvaluator.getTableSize(p)];
+            }
+        }
+
+        int[] order = new int[sampleCount];
+        for(int i = 0; i<sampleCount; i++){
+            order[i] = i;
+        }
+        int[] indexes = new int[instances];
+        float rate = 0.5f / instances;
+
+        for(int epoch = 0; epoch<epochs; epoch++){
+            shuffle(order, random);
+            double squaredError = 0;
+            for(int n = 0; n<sampleCount; n++){
+                int sample = order[n];
+                float[][] tables = weights[phases[sample]];
+                float prediction = 0;
+                PatternEvaluator.indexes(own[sample], opp[sample], indexes);
+                for(int i = 0; i<instances; i++){
+                    prediction += tables[PatternEvaluator.getInstancePattern(i)][indexes[i]];
+                }
+                float error = targets[sample] - prediction;
+                squaredError += error * error;
+                float step = rate * error;
+                for(int i = 0; i<instances; i++){
+                    tables[PatternEvaluator.getInstancePattern(i)][indexes[i]] += step;
+                }
+            }
+            System.out.printf("Epoch %d: root mean squared error %.2f pieces%n", epoch + 1, Math.sqrt(squaredError / Math.max(1, sampleCount)));
+            rate *= 0.8f;
+        }
+
+        short[][][] result = PatternEvaluator.emptyWeights();
+        for(int phase = 0; phase<PatternEvaluator.PHASES; phase++){
+            for(int p = 0; p<patterns; p++){
+                for(int i = 0; i<result[phase][p].length; i++){
+                    long scaled = Math.round(weights[phase][p][i] * PatternEvaluator.SCALE);
+                    result[phase][p][i] = (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, scaled));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void shuffle(int[] order, Random random){
+        for(int i = order.length - 1; i>0; i--){
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+}
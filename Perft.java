@@ -0,0 +1,394 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+/*
+ * File: Perft.java
+ *
+ * Counts the positions reached after exactly N moves from a position, the perft test of chess
+ * engines. Two move generators that agree on these counts agree on every legal move, so it is
+ * a quick check when changing the board representation, and the nodes per second it reports
+ * measure the raw speed of the move generator.
+ *
+ * A player with no legal move passes, and the pass counts as one move, so a line only ends
+ * early when neither player can move and the game is over. A finished game counts as one
+ * position at whatever depth it ends. From the 8x8 start the counts are 4, 12, 56, 244, 1396,
+ * 8200, 55092, 390216, 3005288 and 24571284 for depths 1 to 10.
+ *
+ * perft() works on any TwoPlayerPlayable through findValidMoves(), the way ReversiBoard plays.
+ * perftBits() is the fast path on a BitBoard, playing and taking back moves in place and
+ * counting the last move by a population count instead of playing it. perftWide() does the
+ * same on a WideBoard, and -board=wide checks it against ReversiBoard on any even size up to 26.
+ *
+ * "-simd" counts the bitboard and wide positions with VectorMoveGenerator, checking it against
+ * ReversiBoard the same way. The JVM needs "--add-modules jdk.incubator.vector" for it.
+ *
+ * Usage: java Perft [-size=8] [-depth=N] [-board=reversi|bitboard|both|wide] [-threads=N]
+ *                   [-moves=f5d6...] [-divide] [-simd]
+ */
+public class Perft {
+
+    public static void main(String[] args){
+        int size = 8;
+        int depth = 6;
+        int threads = 1;
+        String boardType = "both";
+        String moves = "";
+        boolean divide = false;
+        for(String arg: args){
+            if(arg.startsWith("-size=")){
+                size = Integer.parseInt(arg.substring("-size=".length()));
+            }
+            else if(arg.startsWith("-depth=")){
+                depth = Integer.parseInt(arg.substring("-depth=".length()));
+            }
+            else if(arg.startsWith("-threads=")){
+                threads = Math.max(1, Integer.parseInt(arg.substring("-threads=".length())));
+            }
+            else if(arg.startsWith("-board=")){
+                boardType = arg.substring("-board=".length());
+            }
+            else if(arg.startsWith("-moves=")){
+                moves = arg.substring("-moves=".length());
+            }
+            else if(arg.equals("-divide")){
+                divide = true;
+            }
+            else if(arg.equals("-simd")){
+                if(!MoveGenerators.setVector(true)){
+                    System.out.println("Vector API not available: " + MoveGenerators.getUnavailableReason());
+                    return;
+                }
+            }
+            else{
+                System.out.println("Unknown option " + arg);
+                return;
+            }
+        }
+        if(boardType.equals("wide")){
+            if(size < 4 || size > WideBoard.MAX_SIZE || size % 2 != 0){
+                System.out.println("Board size must be even, from 4 to " + WideBoard.MAX_SIZE);
+                return;
+            }
+            if(!moves.isEmpty() || divide){
+                System.out.println("-moves and -divide need a bitboard");
+                return;
+            }
+            if(!compareWide(size, depth)){
+                System.exit(1);
+            }
+            return;
+        }
+        if(size != 4 && size != 6 && size != 8){
+            System.out.println("Board size must be 4, 6 or 8");
+            return;
+        }
+        if(!boardType.equals("reversi") && !boardType.equals("bitboard") && !boardType.equals("both")){
+            System.out.println("Board must be reversi, bitboard, both or wide");
+            return;
+        }
+
+        BitBoard start = new BitBoard(size);
+        try{
+            playMoves(start, moves);
+        }
+        catch(IllegalArgumentException e){
+            System.out.println(e.getMessage());
+            return;
+        }
+        char player = start.hasCurrentTurn();
+        ReversiBoard reversiStart = toReversiBoard(start);
+
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try{
+            if(divide){
+                divide(start, player, depth, pool);
+                return;
+            }
+            boolean mismatch = false;
+            for(int d = 1; d<=depth; d++){
+                long reversiCount = -1;
+                long bitCount = -1;
+                if(!boardType.equals("bitboard")){
+                    long begin = System.nanoTime();
+                    reversiCount = perftRoot(reversiStart, player, d, pool);
+                    report("reversi", d, reversiCount, System.nanoTime() - begin);
+                }
+                if(!boardType.equals("reversi")){
+                    long begin = System.nanoTime();
+                    bitCount = perftBitsRoot(start, d, pool);
+                    report("bitboard", d, bitCount, System.nanoTime() - begin);
+                }
+                if(reversiCount >= 0 && bitCount >= 0 && reversiCount != bitCount){
+                    System.out.println("MISMATCH at depth " + d + ": reversi " + reversiCount + ", bitboard " + bitCount);
+                    mismatch = true;
+                    break;
+                }
+            }
+            if(mismatch){
+                System.exit(1);
+            }
+        }
+        finally{
+            if(pool != null){
+                pool.shutdown();
+            }
+        }
+    }
+
+    //counts both ReversiBoard and WideBoard from the start, returns false on the first mismatch
+    private static boolean compareWide(int size, int depth){
+        ReversiBoard reversiStart = new ReversiBoard(size);
+        reversiStart.initBoard();
+        WideBoard start = new WideBoard(size);
+        start.initBoard();
+        MoveList[] lists = new MoveList[depth + 1];
+        for(int i = 0; i<lists.length; i++){
+            lists[i] = new MoveList(size * size);
+        }
+        for(int d = 1; d<=depth; d++){
+            long begin = System.nanoTime();
+            long reversiCount = perft(reversiStart, reversiStart.hasCurrentTurn(), d);
+            report("reversi", d, reversiCount, System.nanoTime() - begin);
+            begin = System.nanoTime();
+            long wideCount = perftWide(start, d, lists);
+            report("wide", d, wideCount, System.nanoTime() - begin);
+            if(reversiCount != wideCount){
+                System.out.println("MISMATCH at depth " + d + ": reversi " + reversiCount + ", wide " + wideCount);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void report(String board, int depth, long nodes, long nanos){
+        System.out.printf("%-8s depth %2d: %,15d nodes in %9.3f s, %,14.0f nodes/s%n", board, depth, nodes, nanos / 1e9,
+            nanos == 0 ? 0 : nodes * 1e9 / nanos);
+    }
+
+    /**
+     * -----------PERFT CODE--------------
+     */
+
+    /**
+     * Counts the positions after exactly depth moves using findValidMoves()
+     *
+     * @param board position to count from, it is not changed
+     * @param playerChar player to move
+     * @param depth number of moves, passes included
+     * @return returns the number of positions, finished games counting once
+     */
+    public static <T extends TwoPlayerPlayable<T>> long perft(T board, char playerChar, int depth){
+        if(depth == 0){
+            return 1;
+        }
+        char otherChar = playerChar == 'x' ? 'o' : 'x';
+        List<T> children = board.findValidMoves(playerChar);
+        if(children.size() == 0){
+            if(!board.hasValidMove(otherChar)){
+                return 1;
+            }
+            return perft(board, otherChar, depth - 1);
+        }
+        //bulk count, the children are the positions one move on
+        if(depth == 1){
+            return children.size();
+        }
+        long nodes = 0;
+        for(T child: children){
+            nodes += perft(child, otherChar, depth - 1);
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts the positions after exactly depth moves, playing and taking back moves in place
+     *
+     * @param board position to count from, the player to move is the board's, it is the same afterwards
+     * @param depth number of moves, passes included
+     * @return returns the same count as perft()
+     */
+    public static long perftBits(BitBoard board, int depth){
+        if(depth == 0){
+            return 1;
+        }
+        long moves = board.movesFor(board.hasCurrentTurn());
+        if(moves == 0){
+            board.passTurn();
+            long nodes;
+            if(board.movesFor(board.hasCurrentTurn()) == 0){
+                nodes = 1;
+            }
+            else{
+                nodes = perftBits(board, depth - 1);
+            }
+            board.passTurn();
+            return nodes;
+        }
+        if(depth == 1){
+            return Long.bitCount(moves);
+        }
+        long nodes = 0;
+        while(moves != 0){
+            int square = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            long flipped = board.makeMove(square);
+            nodes += perftBits(board, depth - 1);
+            board.undoMove(square, flipped);
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts the positions after exactly depth moves on a WideBoard, playing and taking back
+     * moves in place
+     *
+     * @param board position to count from, the player to move is the board's, it is the same afterwards
+     * @param depth number of moves, passes included
+     * @param lists one move list per remaining depth, lists[depth] is used at this depth
+     * @return returns the same count as perft()
+     */
+    public static long perftWide(WideBoard board, int depth, MoveList[] lists){
+        if(depth == 0){
+            return 1;
+        }
+        MoveList moves = lists[depth];
+        board.generateMoves(board.hasCurrentTurn(), moves);
+        if(moves.isEmpty()){
+            board.passTurn();
+            long nodes;
+            if(!board.hasValidMove(board.hasCurrentTurn())){
+                nodes = 1;
+            }
+            else{
+                nodes = perftWide(board, depth - 1, lists);
+            }
+            board.passTurn();
+            return nodes;
+        }
+        if(depth == 1){
+            return moves.size();
+        }
+        long nodes = 0;
+        for(int i = 0; i<moves.size(); i++){
+            int move = moves.get(i);
+            board.makeMove(move);
+            nodes += perftWide(board, depth - 1, lists);
+            board.undoMove(move);
+        }
+        return nodes;
+    }
+
+    //perft() with the root moves shared out over the pool, or on this thread without one
+    private static <T extends TwoPlayerPlayable<T>> long perftRoot(T board, char playerChar, int depth, ExecutorService pool){
+        List<T> children = board.findValidMoves(playerChar);
+        if(pool == null || depth < 2 || children.size() == 0){
+            return perft(board, playerChar, depth);
+        }
+        char otherChar = playerChar == 'x' ? 'o' : 'x';
+        List<Future<Long>> counts = new ArrayList<Future<Long>>();
+        for(T child: children){
+            counts.add(pool.submit(() -> perft(child, otherChar, depth - 1)));
+        }
+        return sum(counts);
+    }
+
+    //perftBits() with each root move searched on its own copy of the board
+    private static long perftBitsRoot(BitBoard board, int depth, ExecutorService pool){
+        long moves = board.movesFor(board.hasCurrentTurn());
+        if(pool == null || depth < 2 || moves == 0){
+            return perftBits(board.copy(), depth);
+        }
+        List<Future<Long>> counts = new ArrayList<Future<Long>>();
+        while(moves != 0){
+            int square = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            BitBoard child = board.copy();
+            child.makeMove(square);
+            counts.add(pool.submit(() -> perftBits(child, depth - 1)));
+        }
+        return sum(counts);
+    }
+
+    private static long sum(List<Future<Long>> counts){
+        long nodes = 0;
+        for(Future<Long> count: counts){
+            try{
+                nodes += count.get();
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Perft interrupted", e);
+            }
+            catch(ExecutionException e){
+                throw new IllegalStateException("Perft failed", e.getCause());
+            }
+        }
+        return nodes;
+    }
+
+    //prints the count below each root move, to narrow a mismatch down to one line of play
+    private static void divide(BitBoard board, char playerChar, int depth, ExecutorService pool){
+        long begin = System.nanoTime();
+        long moves = board.movesFor(playerChar);
+        if(moves == 0 || depth == 0){
+            report("total", depth, perftBits(board.copy(), depth), System.nanoTime() - begin);
+            return;
+        }
+        long total = 0;
+        while(moves != 0){
+            int square = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            BitBoard child = board.copy();
+            child.makeMove(square);
+            long nodes = perftBitsRoot(child, depth - 1, pool);
+            long check = perft(toReversiBoard(child), child.hasCurrentTurn(), depth - 1);
+            System.out.println(squareName(square) + ": " + nodes + (check == nodes ? "" : "  MISMATCH, reversi counts " + check));
+            total += nodes;
+        }
+        report("total", depth, total, System.nanoTime() - begin);
+    }
+
+    /**
+     * -----------POSITION CODE--------------
+     */
+
+    /**
+     * Plays a sequence of moves written as in game records, for example "f5d6c3". Forced
+     * passes are made without being written.
+     *
+     * @param board board to play on
+     * @param moves moves to play
+     * @throws IllegalArgumentException if a move is not legal
+     */
+    public static void playMoves(BitBoard board, String moves){
+        for(int i = 0; i + 1<moves.length(); i += 2){
+            if(board.movesFor(board.hasCurrentTurn()) == 0){
+                board.passTurn();
+            }
+            int x = Character.toLowerCase(moves.charAt(i)) - 'a';
+            int y = moves.charAt(i + 1) - '1';
+            if(!board.movePiece(x, y, board.hasCurrentTurn())){
+                throw new IllegalArgumentException("Illegal move " + moves.substring(i, i + 2));
+            }
+        }
+    }
+
+    //the same position as a ReversiBoard
+    public static ReversiBoard toReversiBoard(BitBoard position){
+        int size = position.getGameSize();
+        char[][] squares = new char[size][size];
+        for(int x = 0; x<size; x++){
+            for(int y = 0; y<size; y++){
+                squares[x][y] = position.pieceAt(x, y);
+            }
+        }
+        return new ReversiBoard(size, squares, position.hasCurrentTurn());
+    }
+
+    private static String squareName(int square){
+        return "" + (char)('a' + BitBoard.squareX(square)) + (BitBoard.squareY(square) + 1);
+    }
+}
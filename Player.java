@@ -1,54 +1,218 @@
-import java.util.List;
 import java.util.Random;
 /*
  * File: Player.java
  * 
  * Representation of a player for a Reversi game.
  */
-public class Player {
+public class Player<T extends TwoPlayerPlayable<T>> {
 
     /**
      * REMOVE MENTIONS OF HAS CURRENT TURN and player
      */
-    private ReversiBoard board;
+    private T board;
     private COLOR color;
     private int playerType;
+    private Search search;
+    private ParallelSearch parallelSearch;
+    private WideSearch wideSearch;
+    //minimax players' cutoff, best move and scratch lists, so boards searched by other players are not touched
+    private SearchContext<T> context;
+    private int searchDepth;
+    private long moveTimeMillis;
+    private Evaluator evaluator;
+    private OpeningBook book;
+    private Ponderer ponderer;
+    private MoveList moves = new MoveList();
+    //MoveList move of the last CPU move, -1 if it did not play one
+    private int lastMove = -1;
 
-    public Player(ReversiBoard board, COLOR color){
+    public Player(T board, COLOR color){
         this.board = board;
         this.color = color;
         playerType = 0;
     }
     
-    public Player(ReversiBoard board, COLOR color, int playerType){
+    public Player(T board, COLOR color, int playerType){
         this.board = board;
         this.color = color;
         this.playerType = playerType;
+        searchDepth = 5;
+        moveTimeMillis = 0;
+        if(playerType >= 2 && board.getGameSize() > BitBoard.MAX_SIZE){
+            wideSearch = new WideSearch();
+        }
+        else if(playerType >= 2){
+            search = new Search();
+        }
+    }
+
+    /**
+     * Player that searches with the given Search, so several games in a row can reuse one
+     * Search and its transposition table instead of allocating a new one per game
+     * 
+     * @param search search to use for player types 2 and above, boards larger than a BitBoard
+     *               use a WideSearch of their own instead
+     */
+    public Player(T board, COLOR color, int playerType, Search search){
+        this.board = board;
+        this.color = color;
+        this.playerType = playerType;
+        if(board.getGameSize() > BitBoard.MAX_SIZE){
+            wideSearch = new WideSearch();
+        }
+        else{
+            this.search = search;
+        }
+        searchDepth = 5;
+        moveTimeMillis = 0;
     }
 
     /**
      * Chooses how the CPU plays depending on playerType
      * 
-     * @param playerType player type, 1 corresponds to random, 2 corresponds to minimax AI
+     * @param playerType player type, 1 corresponds to random, 2 and 3 correspond to minimax AI,
+     *                   4 corresponds to the in place alpha-beta search. Minimax players with a time
+     *                   limit per move use the in place search with iterative deepening instead.
+     *                   Every type but random plays from the opening book first if it has one,
+     *                   then the answer found while pondering if it was searched deep enough.
      * @return returns if the move is value
      */
     public boolean cpuMove(int playerType){
+        stopPondering();
+        lastMove = -1;
         if(playerType == 1){
             return randomMove();
         }
-        else if(playerType == 2){
-            board.minimax(true, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, board);
-            board.cpuMinimax();
+        else if(playerType >= 2 && bookMove()){
             return true;
         }
-        else if(playerType == 3){
-            board.minimax(true, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, board);
-            board.cpuMinimax();
+        else if(playerType >= 2 && ponderMove()){
             return true;
         }
+        else if(playerType >= 2 && playerType <= 4 && moveTimeMillis > 0){
+            return timedMove();
+        }
+        else if(playerType == 2){
+            return minimaxMove();
+        }
+        else if(playerType == 3){
+            return minimaxMove();
+        }
+        else if(playerType == 4){
+            return searchMove();
+        }
         return false;
     }
 
+    /**
+     * Finds the best move with minimax, copying the board for every child, cut off at the search
+     * depth, and plays it
+     * 
+     * @return returns if the move is valid
+     */
+    public boolean minimaxMove(){
+        if(context == null){
+            context = new SearchContext<T>(searchDepth);
+        }
+        context.reset(searchDepth);
+        //minimax plays for the player to move, which is still the other player if they had to pass
+        board.setPlayerTurn(color.getPiece());
+        board.minimax(true, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, board, context);
+        if(context.getBestMove() == null){
+            return false;
+        }
+        lastMove = board.cpuMinimax(context);
+        return true;
+    }
+
+    /**
+     * Finds the best move with the in place alpha-beta search and plays it
+     * 
+     * @return returns if the move is valid
+     */
+    public boolean searchMove(){
+        int move = moveSearch().findMove(board, color.getPiece(), searchDepth);
+        return play(move);
+    }
+
+    /**
+     * Deepens the in place alpha-beta search until the time limit per move runs out and plays
+     * the best move of the last depth that finished
+     * 
+     * @return returns if the move is valid
+     */
+    public boolean timedMove(){
+        int move = moveSearch().findMoveTimed(board, color.getPiece(), searchDepth, moveTimeMillis);
+        return play(move);
+    }
+
+    //search the in place players use, by board size and number of threads
+    private MoveSearch moveSearch(){
+        if(wideSearch != null){
+            return wideSearch;
+        }
+        if(parallelSearch != null){
+            return parallelSearch;
+        }
+        return search;
+    }
+
+    /**
+     * Plays the book move of the position if the opening book has one
+     * 
+     * @return returns true if a book move was played
+     */
+    public boolean bookMove(){
+        if(book == null){
+            return false;
+        }
+        int square = book.lookup(board, color.getPiece());
+        if(square < 0){
+            return false;
+        }
+        return play(BitBoard.toMove(square));
+    }
+
+    /**
+     * Plays the answer the pondering thread found to the move just made, if it searched as deep
+     * as a fixed depth search would or for as long as a timed search may take
+     * 
+     * @return returns true if a pondered move was played
+     */
+    public boolean ponderMove(){
+        if(ponderer == null){
+            return false;
+        }
+        int square;
+        if(moveTimeMillis > 0){
+            square = ponderer.getAnswer(board, searchDepth, moveTimeMillis * 1000000L);
+        }
+        else{
+            square = ponderer.getAnswer(board, searchDepth, Long.MAX_VALUE);
+        }
+        if(square < 0){
+            return false;
+        }
+        return play(BitBoard.toMove(square));
+    }
+
+    /**
+     * Starts searching the replies to the user's next move in the background, does nothing if
+     * pondering is off or already running
+     */
+    public void startPondering(){
+        if(ponderer != null && !ponderer.isRunning()){
+            ponderer.start(board, color.getPiece(), searchDepth);
+        }
+    }
+
+    //stops the background search so the CPU can use the cores for its own move
+    public void stopPondering(){
+        if(ponderer != null){
+            ponderer.stop();
+        }
+    }
+
     /**
      * Lets a player move their piece in the form of (letter)(numer) 
      * Example: a2
@@ -58,7 +222,7 @@ public class Player {
      * @return returns if the move is valid, true if true, false otherwise
      */
     public boolean move(char x, int y) {
-        boolean check = board.safeMove(((int)x-97), y-1, color.getPiece());
+        boolean check = board.safeMove(Character.toLowerCase(x) - 'a', y-1, color.getPiece());
         return check;
     }
 
@@ -68,22 +232,31 @@ public class Player {
      * @return returns if the move is valid
      */
     public boolean randomMove(){
-        List<List<Integer>> moves = board.storeValidMoves(color.getPiece());
+        board.generateMoves(color.getPiece(), moves);
         if(moves.size() <= 0){
             return false;
         }
         Random r = new Random();
         int move = r.nextInt(moves.size());
         
-        return board.movePiece(moves.get(move).get(0), moves.get(move).get(1), color.getPiece());
+        return play(moves.get(move));
+    }
+
+    //plays a MoveList move for this player and remembers it, -1 is no move
+    private boolean play(int move){
+        if(move < 0 || !board.apply(move, color.getPiece())){
+            return false;
+        }
+        lastMove = move;
+        return true;
     }
 
     public void validMovesHelper(){
-        List<List<Integer>> moves = board.storeValidMoves(color.getPiece());
+        board.generateMoves(color.getPiece(), moves);
         System.out.print("[");
-        for(List<Integer> list: moves){
-            int i = list.get(0) + 97;
-            System.out.print("[" + (char)i + ", " + (list.get(1)+1) + "]");
+        for(int m = 0; m<moves.size(); m++){
+            int i = MoveList.moveX(moves.get(m)) + 97;
+            System.out.print("[" + (char)i + ", " + (MoveList.moveY(moves.get(m))+1) + "]");
         }
         System.out.print("]\n");
     }
@@ -99,4 +272,104 @@ public class Player {
     public int getPlayerType() {
         return playerType;
     }
+
+    //MoveList move of the last cpuMove(), -1 if it did not play one
+    public int getLastMove() {
+        return lastMove;
+    }
+
+    //search used by the in place players, null for the others
+    public Search getSearch() {
+        return search;
+    }
+
+    //context of the last minimax move, null if the player has not played one
+    public SearchContext<T> getSearchContext() {
+        return context;
+    }
+
+    public int getSearchDepth() {
+        return searchDepth;
+    }
+
+    public void setSearchDepth(int searchDepth) {
+        this.searchDepth = searchDepth;
+    }
+
+    /**
+     * Sets how many threads the in place search uses, more than 1 searches on several cores at once
+     * 
+     * @param threads number of threads to search with
+     */
+    public void setThreads(int threads) {
+        if(parallelSearch != null){
+            parallelSearch.shutdown();
+            parallelSearch = null;
+        }
+        if(threads > 1 && playerType >= 2 && wideSearch == null){
+            parallelSearch = new ParallelSearch(threads);
+            if(evaluator != null){
+                parallelSearch.setEvaluator(evaluator);
+            }
+        }
+    }
+
+    /**
+     * Sets the evaluation function the in place search uses at its cutoff depth
+     * 
+     * @param evaluator evaluation function to use
+     */
+    public void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+        if(search != null){
+            search.setEvaluator(evaluator);
+        }
+        if(parallelSearch != null){
+            parallelSearch.setEvaluator(evaluator);
+        }
+    }
+
+    /**
+     * Turns searching on the user's time on or off. Only players that search in place can
+     * ponder, as the pondering thread shares their transposition table. Call this after
+     * setThreads() and setEvaluator().
+     * 
+     * @param pondering true to search while the user thinks
+     */
+    public void setPondering(boolean pondering) {
+        stopPondering();
+        ponderer = null;
+        boolean searches = playerType == 4 || (playerType >= 2 && moveTimeMillis > 0);
+        //the pondering thread searches BitBoards only
+        searches = searches && wideSearch == null;
+        if(pondering && searches){
+            ponderer = new Ponderer(parallelSearch != null ? parallelSearch.getTable() : search.getTable());
+            if(evaluator != null){
+                ponderer.getSearch().setEvaluator(evaluator);
+            }
+        }
+    }
+
+    //pondering thread, null when pondering is off
+    public Ponderer getPonderer() {
+        return ponderer;
+    }
+
+    public OpeningBook getBook() {
+        return book;
+    }
+
+    //book the CPU plays from before it searches, null for none
+    public void setBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    public long getMoveTimeMillis() {
+        return moveTimeMillis;
+    }
+
+    //a time limit above 0 makes minimax players deepen until the time runs out
+    public void setMoveTimeMillis(long moveTimeMillis) {
+        this.moveTimeMillis = moveTimeMillis;
+    }
 }
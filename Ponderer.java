@@ -0,0 +1,218 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+/*
+ * File: Ponderer.java
+ *
+ * Searches on the opponent's time. While the user thinks about a move, a background thread
+ * plays each of the user's legal replies on a copy of the board and searches the CPU's answer
+ * to it, one depth at a time over all the replies so every one gets some work before any gets
+ * a lot. The reply the user is expected to play, the best move of a short search from the
+ * user's side, is searched a couple of moves deeper than the rest.
+ *
+ * The pondering search shares the transposition table of the CPU's own search, so even when
+ * the answer it found is not deep enough to play outright the real search starts from a warm
+ * table. Once the user has moved the thread is stopped and the answer to the move played, if
+ * one was searched deep or long enough, is played without searching again.
+ */
+public class Ponderer {
+
+    //depth of the search that guesses the user's move
+    private static final int PREDICT_DEPTH = 4;
+    //how much deeper than the other replies the guessed move is searched
+    private static final int PREDICTED_EXTRA_DEPTH = 2;
+
+    private Search search;
+    private AtomicBoolean stopSignal;
+    private Thread thread;
+    private char cpuChar;
+    private int maxDepth;
+    private BitBoard root;
+    //for each reply of the user, the position after it and what pondering found there
+    private BitBoard[] children;
+    private long[] keys;
+    private int[] answers;
+    private int[] depths;
+    private long[] nanos;
+    private boolean[] finished;
+    private int count;
+    private long hits;
+
+    /**
+     * @param table transposition table of the CPU's search, shared with the pondering search
+     */
+    public Ponderer(TranspositionTable table){
+        stopSignal = new AtomicBoolean();
+        search = new Search(table);
+        search.setStopSignal(stopSignal);
+        search.setPublishStats(false);
+        children = new BitBoard[64];
+        keys = new long[64];
+        answers = new int[64];
+        depths = new int[64];
+        nanos = new long[64];
+        finished = new boolean[64];
+    }
+
+    /**
+     * Starts pondering a position where the user is to move. The board is copied before this
+     * returns, so the caller may change it while the thread runs.
+     *
+     * @param position board the user is about to move on, it is not changed
+     * @param cpuChar piece of the CPU
+     * @param maxDepth deepest search worth doing for each reply, Integer.MAX_VALUE for no limit
+     */
+    public void start(TwoPlayerPlayable<?> position, char cpuChar, int maxDepth){
+        stop();
+        this.cpuChar = cpuChar;
+        this.maxDepth = maxDepth;
+        root = BitBoard.fromBoard(position, cpuChar == 'x' ? 'o' : 'x');
+        count = 0;
+        stopSignal.set(false);
+        thread = new Thread(this::ponder, "ponder");
+        //a game left unfinished never keeps the program running
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the pondering thread and waits for it, after which its results can be read
+     */
+    public void stop(){
+        if(thread == null){
+            return;
+        }
+        stopSignal.set(true);
+        boolean interrupted = false;
+        while(thread.isAlive()){
+            try{
+                thread.join();
+            }
+            catch(InterruptedException e){
+                interrupted = true;
+            }
+        }
+        thread = null;
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning(){
+        return thread != null;
+    }
+
+    /**
+     * Finds the answer pondered for the position the user's move led to. Call stop() first.
+     *
+     * @param position board after the user's move, it is not changed
+     * @param depth depth the answer must have been searched to
+     * @param budgetNanos time that is as good as the depth, an answer pondered this long is also taken
+     * @return returns the bit index of the pondered move, -1 if the position was not pondered enough
+     */
+    public int getAnswer(TwoPlayerPlayable<?> position, int depth, long budgetNanos){
+        BitBoard board = BitBoard.fromBoard(position, cpuChar);
+        long key = Zobrist.hash(board.getBlack(), board.getWhite(), cpuChar);
+        for(int i = 0; i<count; i++){
+            if(keys[i] != key || answers[i] < 0){
+                continue;
+            }
+            if(finished[i] || depths[i] >= depth || nanos[i] >= budgetNanos){
+                hits++;
+                return answers[i];
+            }
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * -----------PONDER CODE--------------
+     */
+
+    //runs on the pondering thread until every reply is searched as deep as it needs or stop() is called
+    private void ponder(){
+        char userChar = root.hasCurrentTurn();
+        long moves = root.movesFor(userChar);
+        if(moves == 0){
+            return;
+        }
+        int predicted = search.deepen(root, userChar, 1, PREDICT_DEPTH, Long.MAX_VALUE);
+        if(stopSignal.get()){
+            return;
+        }
+
+        for(long bits = moves; bits != 0; bits &= bits - 1){
+            int square = Long.numberOfTrailingZeros(bits);
+            BitBoard child = root.copy();
+            child.makeMove(square);
+            children[count] = child;
+            keys[count] = Zobrist.hash(child.getBlack(), child.getWhite(), child.hasCurrentTurn());
+            answers[count] = -1;
+            depths[count] = 0;
+            nanos[count] = 0;
+            //the CPU has to pass after this reply, nothing to search
+            finished[count] = child.hasCurrentTurn() != cpuChar || child.movesFor(cpuChar) == 0;
+            //the guessed move goes first
+            if(square == predicted && count > 0){
+                swapReplies(0, count);
+            }
+            count++;
+        }
+
+        for(int depth = 1; depth<=maxDepth && depth<Search.MAX_PLY && !allFinished(); depth++){
+            for(int i = 0; i<count; i++){
+                int target = Math.min(i == 0 ? depth + PREDICTED_EXTRA_DEPTH : depth, maxDepth);
+                if(finished[i] || depths[i] >= target){
+                    continue;
+                }
+                long begin = System.nanoTime();
+                int answer = search.deepen(children[i], cpuChar, target, target, Long.MAX_VALUE);
+                nanos[i] += System.nanoTime() - begin;
+                //stopped before the depth finished
+                if(search.getCompletedDepth() == 0){
+                    return;
+                }
+                answers[i] = answer;
+                depths[i] = search.getCompletedDepth();
+                //solved, or the search already sees the end of every line
+                finished[i] = search.getStats().isSolved() || depths[i] >= children[i].getEmptyCount();
+                if(stopSignal.get()){
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean allFinished(){
+        for(int i = 0; i<count; i++){
+            if(!finished[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void swapReplies(int a, int b){
+        BitBoard child = children[a];
+        children[a] = children[b];
+        children[b] = child;
+        long key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        boolean done = finished[a];
+        finished[a] = finished[b];
+        finished[b] = done;
+    }
+
+    /**
+     * ---------GETTERS----------
+     */
+
+    //number of CPU moves that were played from pondering
+    public long getHits() {
+        return hits;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+}
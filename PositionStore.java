@@ -0,0 +1,386 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+/*
+ * File: PositionStore.java
+ *
+ * Search results kept on disk from one run to the next, so a restarted program answers the
+ * positions it has searched before without searching them again. Positions are keyed by the
+ * canonical hash of Symmetry, so one entry serves all 8 orientations of a position, with the
+ * board size mixed in. Each entry holds the packed result of TranspositionTable: the depth
+ * searched, whether the score is exact or a bound, the score and the best move, stored in the
+ * canonical orientation and turned back to the board on the way out.
+ *
+ * The file is memory mapped and probed in place, so opening a store costs nothing however big
+ * it is, and what is stored reaches the file through the mapping even if the process is
+ * killed. It is an open addressing table of fixed size with linear probing over at most
+ * PROBE_LIMIT slots, filled once and then replacing the shallowest result of the slots a key
+ * can go to. In front of it a direct mapped long[] laid out like TranspositionTable keeps the
+ * entries used last in memory, each one replacing whatever held its slot.
+ *
+ * File layout, big endian: int magic, int version, int slot count (a power of two), int number
+ * of slots in use, then each slot as long key XOR data followed by long data, data 0 marking an empty slot. A
+ * slot whose two longs do not XOR back to its key was torn by a writer and is ignored, so
+ * probes need no lock. Stores to the file are synchronized, the memory slots are written without
+ * a lock and checked the same way.
+ *
+ * Scores depend on the evaluator, so a store should only be shared by searches that use the same
+ * one. Usage: java PositionStore FILE prints how full a store is.
+ */
+public class PositionStore implements AutoCloseable {
+
+    public static final int MAGIC = 0x52565053;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int SLOT_BYTES = 16;
+    private static final int ENTRY_COUNT_OFFSET = 12;
+    public static final int DEFAULT_MEGABYTES = 64;
+    public static final int DEFAULT_MEMORY_ENTRIES = 1 << 16;
+    //results searched less deep than this are cheaper to search again than to store
+    public static final int DEFAULT_MIN_DEPTH = 5;
+    //slots looked at for a key before the shallowest of them is replaced
+    private static final int PROBE_LIMIT = 8;
+    //largest table a single mapping can hold
+    private static final int MAX_SLOTS = 1 << 26;
+    //mixed into the key so equal pieces on boards of different sizes are different positions
+    private static final long SIZE_KEY = 0x9E3779B97F4A7C15L;
+
+    private Path file;
+    private FileChannel channel;
+    private MappedByteBuffer slots;
+    private int slotMask;
+    private int entryCount;
+    private int minDepth;
+    //canonical key XOR canonical data, then canonical data, of the entries used last
+    private long[] recent;
+    private int recentMask;
+    private LongAdder probes = new LongAdder();
+    private LongAdder memoryHits = new LongAdder();
+    private LongAdder fileHits = new LongAdder();
+    private LongAdder stores = new LongAdder();
+
+    public static void main(String[] args) throws IOException {
+        if(args.length != 1){
+            System.out.println("Usage: java PositionStore FILE");
+            return;
+        }
+        try(PositionStore store = open(Paths.get(args[0]))){
+            int[] byDepth = new int[TranspositionTable.MAX_DEPTH + 1];
+            int exact = 0;
+            for(int i = 0; i<=store.slotMask; i++){
+                long data = store.slots.getLong(dataOffset(i));
+                if(data == 0){
+                    continue;
+                }
+                byDepth[TranspositionTable.depthOf(data)]++;
+                if(TranspositionTable.boundOf(data) == TranspositionTable.EXACT){
+                    exact++;
+                }
+            }
+            System.out.printf("%s: %d of %d slots used (%.1f%%), %d exact scores%n", args[0], store.entryCount,
+                store.slotMask + 1, 100.0 * store.entryCount / (store.slotMask + 1), exact);
+            for(int depth = 0; depth<byDepth.length; depth++){
+                if(byDepth[depth] > 0){
+                    System.out.println((depth == TranspositionTable.MAX_DEPTH ? "solved" : "depth " + depth) + ": " + byDepth[depth]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a store, creating it with DEFAULT_MEGABYTES of slots if the file does not exist
+     *
+     * @param file store file
+     * @return returns the store
+     * @throws IOException if the file cannot be mapped or is not a position store
+     */
+    public static PositionStore open(Path file) throws IOException {
+        return open(file, DEFAULT_MEGABYTES, DEFAULT_MEMORY_ENTRIES);
+    }
+
+    /**
+     * Opens a store, creating it if the file does not exist
+     *
+     * @param file store file
+     * @param megabytes size of a new file, the largest power of two of slots that fits, an existing
+     *                  file keeps its size
+     * @param memoryEntries entries kept in memory in front of the file, rounded down to a power of two
+     * @return returns the store
+     * @throws IOException if the file cannot be mapped or is not a position store
+     */
+    public static PositionStore open(Path file, int megabytes, int memoryEntries) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try{
+            boolean created = channel.size() == 0;
+            int slotCount;
+            if(created){
+                slotCount = (int)Math.min(MAX_SLOTS, Long.highestOneBit(Math.max(PROBE_LIMIT, (long)megabytes * 1024 * 1024 / SLOT_BYTES)));
+            }
+            else{
+                slotCount = checkHeader(channel, file);
+            }
+            //mapping past the end of a new file grows it, the new slots read as zero
+            MappedByteBuffer slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long)slotCount * SLOT_BYTES);
+            slots.order(ByteOrder.BIG_ENDIAN);
+            if(created){
+                slots.putInt(0, MAGIC);
+                slots.putInt(4, VERSION);
+                slots.putInt(8, slotCount);
+            }
+            return new PositionStore(file, channel, slots, slotCount, memoryEntries);
+        }
+        catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    //returns the slot count of an existing store, throws unless the header and length agree
+    private static int checkHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+        while(header.hasRemaining()){
+            if(channel.read(header, header.position()) < 0){
+                break;
+            }
+        }
+        if(header.hasRemaining() || header.getInt(0) != MAGIC){
+            throw new IOException(file + " is not a position store");
+        }
+        if(header.getInt(4) != VERSION){
+            throw new IOException(file + " has position store version " + header.getInt(4) + ", expected " + VERSION);
+        }
+        int slotCount = header.getInt(8);
+        if(slotCount < PROBE_LIMIT || slotCount > MAX_SLOTS || Integer.bitCount(slotCount) != 1
+            || channel.size() != HEADER_BYTES + (long)slotCount * SLOT_BYTES){
+            throw new IOException(file + " should hold " + slotCount + " slots but is " + channel.size() + " bytes");
+        }
+        return slotCount;
+    }
+
+    private PositionStore(Path file, FileChannel channel, MappedByteBuffer slots, int slotCount, int memoryEntries){
+        this.file = file;
+        this.channel = channel;
+        this.slots = slots;
+        slotMask = slotCount - 1;
+        minDepth = DEFAULT_MIN_DEPTH;
+        int capacity = Integer.highestOneBit(Math.min(Math.max(1, memoryEntries), 1 << 29));
+        recent = new long[capacity * 2];
+        recentMask = capacity - 1;
+        entryCount = slots.getInt(ENTRY_COUNT_OFFSET);
+    }
+
+    /**
+     * -----------LOOKUP CODE--------------
+     */
+
+    /**
+     * Looks up a position, in memory first and then in the file
+     *
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @param size width and height of the board
+     * @return returns the packed result of TranspositionTable with the move turned to this
+     *         orientation of the position, 0 if the position is not in the store
+     */
+    public long probe(long own, long opp, int size){
+        probes.increment();
+        int symmetry = Symmetry.canonicalSymmetry(own, opp, size);
+        long key = key(own, opp, size, symmetry);
+        int slot = ((int)key & recentMask) << 1;
+        long data = recent[slot + 1];
+        if(data != 0 && (recent[slot] ^ data) == key){
+            memoryHits.increment();
+        }
+        else{
+            data = probeFile(key);
+            if(data == 0){
+                return 0;
+            }
+            fileHits.increment();
+            remember(key, data);
+        }
+        int move = TranspositionTable.moveOf(data);
+        if(move >= 0){
+            move = Symmetry.fromCanonical(move, symmetry, size);
+        }
+        return TranspositionTable.pack(TranspositionTable.depthOf(data), TranspositionTable.boundOf(data),
+            TranspositionTable.scoreOf(data), move, 0);
+    }
+
+    private long probeFile(long key){
+        int slot = (int)key & slotMask;
+        for(int i = 0; i<PROBE_LIMIT; i++){
+            long data = slots.getLong(dataOffset(slot));
+            //nothing is ever removed, so the key is not past an empty slot
+            if(data == 0){
+                return 0;
+            }
+            if((slots.getLong(keyOffset(slot)) ^ data) == key){
+                return data;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return 0;
+    }
+
+    //puts an entry in its memory slot, a probe filling the slot while a store writes it may leave
+    //the older result there, which is still a result searched for that position
+    private void remember(long key, long data){
+        int slot = ((int)key & recentMask) << 1;
+        recent[slot] = key ^ data;
+        recent[slot + 1] = data;
+    }
+
+    /**
+     * Stores a search result, unless the store already holds the position searched deeper
+     *
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @param size width and height of the board
+     * @param depth depth searched, TranspositionTable.MAX_DEPTH for a position solved to the end
+     * @param bound TranspositionTable.EXACT, LOWER or UPPER
+     * @param score score of the position for the player to move
+     * @param move bit index of the best move, -1 if there is none
+     */
+    public void store(long own, long opp, int size, int depth, int bound, int score, int move){
+        int symmetry = Symmetry.canonicalSymmetry(own, opp, size);
+        long key = key(own, opp, size, symmetry);
+        depth = Math.min(Math.max(depth, 0), TranspositionTable.MAX_DEPTH);
+        if(move >= 0){
+            move = Symmetry.applyToSquare(move, symmetry, size);
+        }
+        synchronized(this){
+            int slot = (int)key & slotMask;
+            int target = -1;
+            boolean samePosition = false;
+            for(int i = 0; i<PROBE_LIMIT; i++){
+                long old = slots.getLong(dataOffset(slot));
+                if(old == 0){
+                    target = slot;
+                    break;
+                }
+                if((slots.getLong(keyOffset(slot)) ^ old) == key){
+                    target = slot;
+                    samePosition = true;
+                    break;
+                }
+                //every slot is taken by another position, the shallowest one makes way
+                if(target < 0 || TranspositionTable.depthOf(old) < TranspositionTable.depthOf(slots.getLong(dataOffset(target)))){
+                    target = slot;
+                }
+                slot = (slot + 1) & slotMask;
+            }
+            long old = slots.getLong(dataOffset(target));
+            if(samePosition){
+                //an exact score is kept over a bound of the same depth
+                if(TranspositionTable.depthOf(old) > depth || (TranspositionTable.depthOf(old) == depth
+                    && TranspositionTable.boundOf(old) == TranspositionTable.EXACT && bound != TranspositionTable.EXACT)){
+                    return;
+                }
+                if(move < 0){
+                    move = TranspositionTable.moveOf(old);
+                }
+            }
+            else if(old != 0 && TranspositionTable.depthOf(old) > depth){
+                return;
+            }
+            long data = TranspositionTable.pack(depth, bound, score, move, 0);
+            slots.putLong(keyOffset(target), key ^ data);
+            slots.putLong(dataOffset(target), data);
+            stores.increment();
+            if(old == 0){
+                entryCount++;
+                slots.putInt(ENTRY_COUNT_OFFSET, entryCount);
+            }
+            remember(key, data);
+        }
+    }
+
+    //the canonical hash with the board size mixed in
+    private static long key(long own, long opp, int size, int symmetry){
+        return Zobrist.hash(Symmetry.apply(own, symmetry, size), Symmetry.apply(opp, symmetry, size), 'x') ^ (size * SIZE_KEY);
+    }
+
+    //at most MAX_SLOTS, so every offset fits in the int a mapping is indexed by
+    private static int keyOffset(int slot){
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private static int dataOffset(int slot){
+        return keyOffset(slot) + 8;
+    }
+
+    /**
+     * Writes what was stored to the disk, the file already holds it but the disk may not
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        slots.force();
+    }
+
+    public synchronized void close() throws IOException {
+        if(!channel.isOpen()){
+            return;
+        }
+        try{
+            slots.force();
+        }
+        finally{
+            channel.close();
+        }
+    }
+
+    /**
+     * ---------GETTERS----------
+     */
+
+    public Path getFile() {
+        return file;
+    }
+
+    //positions in the file
+    public synchronized int getEntryCount() {
+        return entryCount;
+    }
+
+    public int getSlotCount() {
+        return slotMask + 1;
+    }
+
+    //searches only store and look up results at least this deep
+    public int getMinDepth() {
+        return minDepth;
+    }
+
+    public void setMinDepth(int minDepth) {
+        this.minDepth = Math.max(1, minDepth);
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getFileHits() {
+        return fileHits.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    public String getStatsLine() {
+        return String.format("storeEntries=%d storeProbes=%d storeMemoryHits=%d storeFileHits=%d storeWrites=%d",
+            getEntryCount(), getProbes(), getMemoryHits(), getFileHits(), getStores());
+    }
+}
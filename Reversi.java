@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Scanner;
 /*
  * File: Reversi.java
@@ -7,35 +9,150 @@ import java.util.Scanner;
 public class Reversi {
 
     public static void main(String[] args){
+        //"-bitboard" plays on the bitboard representation instead of the char[][] board
+        //"-threads=N" lets the CPU search on N cores
+        //"-weights=FILE" evaluates positions with MobilityEvaluator using the weights in FILE
+        //"-patterns=FILE" evaluates 8x8 positions with PatternEvaluator using the tables in FILE
+        //"-searchlog" prints one line of search statistics for every CPU move
+        //"-book=FILE" plays the first moves from the opening book in FILE, on boards of the book's size
+        //"-ponder" lets the CPU search the replies to the user's move while the user thinks
+        //"-simd" finds moves with the Vector API on the bitboards, the JVM needs "--add-modules jdk.incubator.vector"
+        boolean useBitBoard = false;
+        int threads = 1;
+        Evaluator evaluator = null;
+        String patterns = null;
+        OpeningBook book = null;
+        boolean ponder = false;
+        for(String arg: args){
+            if(arg.equals("-bitboard")){
+                useBitBoard = true;
+            }
+            else if(arg.startsWith("-threads=")){
+                threads = Integer.parseInt(arg.substring("-threads=".length()));
+            }
+            else if(arg.startsWith("-weights=")){
+                try{
+                    evaluator = MobilityEvaluator.load(Paths.get(arg.substring("-weights=".length())));
+                }
+                catch(IOException e){
+                    System.out.println("Could not read weights file: " + e.getMessage());
+                    return;
+                }
+            }
+            else if(arg.startsWith("-patterns=")){
+                patterns = arg.substring("-patterns=".length());
+            }
+            else if(arg.startsWith("-book=")){
+                try{
+                    book = OpeningBook.open(Paths.get(arg.substring("-book=".length())));
+                }
+                catch(IOException e){
+                    System.out.println("Could not read opening book: " + e.getMessage());
+                    return;
+                }
+            }
+            else if(arg.equals("-ponder")){
+                ponder = true;
+            }
+            else if(arg.equals("-searchlog")){
+                SearchMetrics.getInstance().setLogging(true);
+            }
+            else if(arg.equals("-simd")){
+                if(!MoveGenerators.setVector(true)){
+                    System.out.println("Vector API not available, finding moves without it: " + MoveGenerators.getUnavailableReason());
+                }
+            }
+        }
+        if(patterns != null){
+            try{
+                evaluator = PatternEvaluator.load(Paths.get(patterns), evaluator == null ? new MobilityEvaluator() : evaluator);
+            }
+            catch(IOException e){
+                System.out.println("Could not read patterns file: " + e.getMessage());
+                return;
+            }
+        }
         Scanner sc = new Scanner(System.in);
-        gameEngine(sc);
+        gameEngine(sc, useBitBoard, threads, evaluator, book, ponder);
         sc.close();
     }
 
     public static void gameEngine(Scanner sc){
+        gameEngine(sc, false, 1, null, null, false);
+    }
+
+    public static void gameEngine(Scanner sc, boolean useBitBoard, int threads, Evaluator evaluator, OpeningBook book, boolean ponder){
         //user input prompt
         System.out.println("Welcome to Reversi");
         System.out.println("Please choose your game:");
         System.out.println("1. Small 4x4 Reversi");
         System.out.println("2. Medium 6x6 Reversi");
         System.out.println("3. Standard 8x8 Reversi");
+        System.out.println("4. Large 10x10 Reversi");
+        System.out.println("5. Large 12x12 Reversi");
+        System.out.println("6. Huge 16x16 Reversi");
+        System.out.println("7. Custom size Reversi");
         System.out.print("Please enter your choice: ");
         int num = 0;
         
         //assigns choice to num with error checking
-        num = numberCheck(num, 1, 3, sc);  
+        num = numberCheck(num, 1, 7, sc);  
 
         //depending on user choice, set board size
-        ReversiBoard board = null;
+        int size = 0;
         if(num == 1){
-            board = new ReversiBoard(4);
+            size = 4;
         }
         else if(num == 2){            
-            board = new ReversiBoard(6);
+            size = 6;
         }
         else if(num == 3){
-            board = new ReversiBoard(8);
+            size = 8;
+        }
+        else if(num == 4){
+            size = 10;
+        }
+        else if(num == 5){
+            size = 12;
+        }
+        else if(num == 6){
+            size = 16;
+        }
+        else if(num == 7){
+            //every column needs a letter, and the start needs a center square
+            System.out.print("Please enter an even size from 4 to " + WideBoard.MAX_SIZE + ": ");
+            size = numberCheck(size, 4, WideBoard.MAX_SIZE, sc);
+            while(size % 2 != 0){
+                System.out.print("Please choose a valid option: ");
+                size = numberCheck(size, 4, WideBoard.MAX_SIZE, sc);
+            }
         }
+
+        //boards larger than a BitBoard are always played on the wide bitboard
+        if(useBitBoard || size > BitBoard.MAX_SIZE){
+            if(size > BitBoard.MAX_SIZE){
+                playGame(sc, new WideBoard(size), threads, evaluator, book, ponder);
+            }
+            else{
+                playGame(sc, new BitBoard(size), threads, evaluator, book, ponder);
+            }
+        }
+        else{
+            playGame(sc, new ReversiBoard(size), threads, evaluator, book, ponder);
+        }
+    }
+
+    /**
+     * Sets up the players on the given board and plays the game until it is over or the user quits
+     *
+     * @param sc scanner reading user input
+     * @param board board to play on, either representation
+     * @param threads number of threads the CPU searches with
+     * @param evaluator evaluation function of the CPU search, null for the default heuristic
+     * @param book opening book of the CPU, null for none
+     * @param ponder true to let the CPU search while the user thinks
+     */
+    public static <T extends TwoPlayerPlayable<T>> void playGame(Scanner sc, T board, int threads, Evaluator evaluator, OpeningBook book, boolean ponder){
         board.initBoard();
 
         //user input prompt
@@ -43,15 +160,16 @@ public class Reversi {
         System.out.println("1. An agent that plays randomly");
         System.out.println("2. An agent that uses MINIMAX with a-b pruning");
         System.out.println("3. An agent that uses H-MINIMAX with a fixed depth cutoff and a-b pruning");
+        System.out.println("4. An agent that uses H-MINIMAX searching in place with a fixed depth cutoff and a-b pruning");
         System.out.print("Please enter your choice: ");
         int num2 = 0;
 
         //assigns choice to num2 with error checking
         num2 = numberCheck(num2, 1, 4, sc);
 
-        //assigns the cutoff depth if option 2 was chosen
+        //assigns the cutoff depth if option 3 or 4 was chosen
         int cutoff = -1;
-        if(num2 == 3){
+        if(num2 == 3 || num2 == 4){
             System.out.print("Please enter a cutoff (recommmended 10, -1 for no cutoff): ");
             while (!sc.hasNextInt()) {
                 System.out.println("That's not a number!");
@@ -61,14 +179,17 @@ public class Reversi {
             cutoff = sc.nextInt();
         }
 
-        //if cutoff is negative remove cutoff depth, otherwise set it to the user input
-        if(cutoff < 0){
-            board.setMaxLevel(Integer.MAX_VALUE);
-        }
-        else{
-            board.setMaxLevel(cutoff);
+        //without a cutoff the search deepens until a time limit per move runs out
+        long moveTime = 0;
+        if(num2 >= 2 && cutoff < 0){
+            System.out.print("Please enter a time limit per move in milliseconds (recommended 1000): ");
+            while (!sc.hasNextInt()) {
+                System.out.println("That's not a number!");
+                System.out.print("Please enter your choice: ");
+                sc.next();
+            }
+            moveTime = Math.max(1, sc.nextInt());
         }
-        
 
         //user input prompt
         System.out.println("Do you want to play DARK (x) or LIGHT (o)? ");
@@ -78,30 +199,47 @@ public class Reversi {
         }
         String color = sc.next();
 
-        Player p1 = null;
+        Player<T> p1 = null;
         COLOR otherPlayerColor = null;
 
         //sets p1 color based on user input
         if(color.charAt(0) == 'x'){
-            p1 = new Player(board, COLOR.BLACK);
+            p1 = new Player<T>(board, COLOR.BLACK);
             otherPlayerColor = COLOR.WHITE;
         }
         else if(color.charAt(0) == 'o'){
-            p1 = new Player(board, COLOR.WHITE);
+            p1 = new Player<T>(board, COLOR.WHITE);
             otherPlayerColor = COLOR.BLACK;
         }
 
         //sets p2 to the color p1 didnt choose
-        Player p2 = null;
+        Player<T> p2 = null;
         if(num2 == 1){
-            p2 = new Player(board, otherPlayerColor, 1);
+            p2 = new Player<T>(board, otherPlayerColor, 1);
         }
         else if(num2 == 2){            
-            p2 = new Player(board, otherPlayerColor, 2);
+            p2 = new Player<T>(board, otherPlayerColor, 2);
         }
         else if(num2 == 3){
-            p2 = new Player(board, otherPlayerColor, 3);
+            p2 = new Player<T>(board, otherPlayerColor, 3);
+        }
+        else if(num2 == 4){
+            p2 = new Player<T>(board, otherPlayerColor, 4);
+        }
+        //if cutoff is negative remove cutoff depth, otherwise set it to the user input
+        if(num2 >= 2){
+            p2.setSearchDepth(cutoff < 0 ? Integer.MAX_VALUE : cutoff);
+        }
+        if(moveTime > 0){
+            p2.setSearchDepth(Integer.MAX_VALUE);
+            p2.setMoveTimeMillis(moveTime);
+        }
+        p2.setThreads(threads);
+        if(evaluator != null){
+            p2.setEvaluator(evaluator);
         }
+        p2.setBook(book);
+        p2.setPondering(ponder);
 
         //displays initial state of the board
         board.printBoard();
@@ -152,13 +290,13 @@ public class Reversi {
         return num;
     }
 
-    public static boolean playerTurnLoop(Scanner sc, Player p1, Player p2, ReversiBoard board, boolean isTurn){
+    public static <T extends TwoPlayerPlayable<T>> boolean playerTurnLoop(Scanner sc, Player<T> p1, Player<T> p2, T board, boolean isTurn){
         boolean quit = false;
         if(isTurn){
             while(!board.isGameOver()){
                 
                 //Player Turn actions
-                if(board.findValidMoves(p1.getColor().getPiece()).size() == 0){
+                if(!board.hasValidMove(p1.getColor().getPiece())){
                     System.out.println("\nNo moves for " + p1.getColor() + " to play! Skipping to " + p2.getColor() + "'s turn\n");
                     System.out.println("Next to play: " + p2.getColor());
                     System.out.println();
@@ -167,20 +305,22 @@ public class Reversi {
                     board.printBoard();
                     continue;
                 }
+                //the CPU searches its answers while the user thinks
+                p2.startPondering();
                 System.out.println("Next to play: " + p1.getColor());
                 System.out.println();
                 System.out.println("Type \"h\" for help or \"q\" to quit");
                 System.out.print("Your move (format: (letter)(number) example: \"a2\"): ");
-                while (!sc.hasNext("[a-zA-Z][0-9]|q|h")){
+                while (!sc.hasNext("[a-zA-Z][0-9]{1,2}|q|h")){
                     System.out.print("Please choose a valid option: ");
                     sc.next();
                 }
                 String play = sc.next();
                 char x = 0;
                 int y = 0;
-                if(play.length() == 2){
+                if(play.length() >= 2){
                     x = play.charAt(0);
-                    y = Character.getNumericValue(play.charAt(1));
+                    y = Integer.parseInt(play.substring(1));
                 }
                 else{
                     if(play.charAt(0) == 'q'){
@@ -197,14 +337,14 @@ public class Reversi {
                 while(!move){
                     System.out.println();
                     System.out.print("Please enter a valid move: ");
-                    while (!sc.hasNext("[a-zA-Z][0-9]|q|h")){
+                    while (!sc.hasNext("[a-zA-Z][0-9]{1,2}|q|h")){
                     System.out.print("Please choose a valid option: ");
                         sc.next();
                     }  
                     play = sc.next();
-                    if(play.length() == 2){
+                    if(play.length() >= 2){
                         x = play.charAt(0);
-                        y = Character.getNumericValue(play.charAt(1));
+                        y = Integer.parseInt(play.substring(1));
                         move = p1.move(x, y);
                         System.out.println(move);
                     }
@@ -226,7 +366,7 @@ public class Reversi {
                 board.printBoard();
 
                 //CPU turn actions
-                if(board.findValidMoves(p2.getColor().getPiece()).size() == 0){
+                if(!board.hasValidMove(p2.getColor().getPiece())){
                     System.out.println("\nNo moves for " + p2.getColor() + " to play! Skipping to " + p1.getColor() + "'s turn\n");
                 }
                 else{
@@ -241,7 +381,7 @@ public class Reversi {
         else{
             while(!board.isGameOver()){
                 //CPU turn actions
-                if(board.findValidMoves(p2.getColor().getPiece()).size() == 0){
+                if(!board.hasValidMove(p2.getColor().getPiece())){
                     System.out.println("\nNo moves for " + p2.getColor() + " to play! Skipping to " + p1.getColor() + "'s turn\n");
                 }
                 else{
@@ -253,7 +393,7 @@ public class Reversi {
                 }
 
                 //Player Turn actions
-                if(board.findValidMoves(p1.getColor().getPiece()).size() == 0){
+                if(!board.hasValidMove(p1.getColor().getPiece())){
                     System.out.println("\nNo moves for " + p1.getColor() + " to play! Skipping to " + p2.getColor() + "'s turn\n");
                     System.out.println("Next to play: " + p2.getColor());
                     System.out.println();
@@ -262,20 +402,22 @@ public class Reversi {
                     board.printBoard();
                     continue;
                 }
+                //the CPU searches its answers while the user thinks
+                p2.startPondering();
                 System.out.println("Next to play: " + p1.getColor());
                 System.out.println();
                 System.out.println("Type \"h\" for help or \"q\" to quit");
                 System.out.print("Your move (format: (letter)(number) example: \"a2\"): ");
-                while (!sc.hasNext("[a-zA-Z][0-9]|q|h")){
+                while (!sc.hasNext("[a-zA-Z][0-9]{1,2}|q|h")){
                     System.out.print("Please choose a valid option: ");
                     sc.next();
                 }
                 String play = sc.next();
                 char x = 0;
                 int y = 0;
-                if(play.length() == 2){
+                if(play.length() >= 2){
                     x = play.charAt(0);
-                    y = Character.getNumericValue(play.charAt(1));
+                    y = Integer.parseInt(play.substring(1));
                 }
                 else{
                     if(play.charAt(0) == 'q'){
@@ -292,14 +434,14 @@ public class Reversi {
                 while(!move){
                     System.out.println();
                     System.out.print("Please enter a valid move: ");
-                    while (!sc.hasNext("[a-zA-Z][0-9]|q|h")){
+                    while (!sc.hasNext("[a-zA-Z][0-9]{1,2}|q|h")){
                         System.out.print("Please choose a valid option: ");
                         sc.next();
                     }  
                     play = sc.next();
-                    if(play.length() == 2){
+                    if(play.length() >= 2){
                         x = play.charAt(0);
-                        y = Character.getNumericValue(play.charAt(1));
+                        y = Integer.parseInt(play.substring(1));
                         move = p1.move(x, y);
                         System.out.println(move);
                     }
@@ -321,6 +463,7 @@ public class Reversi {
                 board.printBoard();
             }
         }
+        p2.stopPondering();
         return quit;
     }
 }
\ No newline at end of file
@@ -8,21 +8,39 @@ import java.util.List;
  * Representation of a board for a game of Reversi. Implements TwoPlayerPlayable that
  * follows the formal model of a two-player, perfect knowledge, zero sum game.
  */
-public class ReversiBoard implements TwoPlayerPlayable{
+public class ReversiBoard implements TwoPlayerPlayable<ReversiBoard>{
     
     private int gameSize;
     private char playerTurn;
     private char[][] board;
-    private ReversiBoard bestMove;
-
-    public static int maxLevel;
+    //pieces of each color and empty squares, kept up to date by every move
+    private int blackCount;
+    private int whiteCount;
+    private int emptyCount;
+    //legal moves by square x * gameSize + y, BLACK_MOVE and WHITE_MOVE flags, and how many each player has
+    private byte[] legal;
+    private int blackMoves;
+    private int whiteMoves;
+    //the legal moves are brought up to date when first asked for, so boards nobody asks, such as
+    //the leaves of a search, never pay for it. legal may be shared with copies until one changes it.
+    private boolean legalShared;
+    private int pendingSquare;
+    //square of the last move played on this board or the board it was copied from, -1 for none
+    private int lastSquare = -1;
+    //pieces flipped in each direction by the pending move, packed FLIP_BITS per direction
+    private long pendingFlips;
+    private boolean movesStale;
+
+    //a run of flipped pieces is at most 24 long on the largest board, so it fits in 5 bits
+    private static final int FLIP_BITS = 5;
+    private static final long FLIP_MASK = (1L << FLIP_BITS) - 1;
+    private static final byte BLACK_MOVE = 1;
+    private static final byte WHITE_MOVE = 2;
 
     public ReversiBoard(int gameSize){
         this.gameSize = gameSize;
         this.board = new char[gameSize][gameSize];
-        maxLevel = 5;
         playerTurn = 'x';
-        bestMove = null;
         initBoard();
     }
 
@@ -30,6 +48,15 @@ public class ReversiBoard implements TwoPlayerPlayable{
         this.gameSize = gameSize;
         this.board = board;
         this.playerTurn = playerChar;
+        recount();
+    }
+
+    //copy of another board before a move of the given player is played on it
+    private ReversiBoard(ReversiBoard other, char playerChar){
+        this.gameSize = other.gameSize;
+        this.board = copyGameState(gameSize, other.board);
+        this.playerTurn = playerChar;
+        copyTracking(other);
     }
 
     /**
@@ -52,6 +79,7 @@ public class ReversiBoard implements TwoPlayerPlayable{
         board[leftMidLength][topMidWidth] ='o';
         board[rightMidLength][bottomMidWidth] ='o';
         board[rightMidLength][topMidWidth] = 'x';
+        recount();
     }
 
     
@@ -73,6 +101,8 @@ public class ReversiBoard implements TwoPlayerPlayable{
         }
 
         boolean validPlay = false;
+        //pieces flipped in each direction, so the moves around them can be checked afterwards
+        long flipped = 0;
 
         for(int i = -1; i<2; i++){
             for(int j = -1; j<2; j++){
@@ -105,11 +135,13 @@ public class ReversiBoard implements TwoPlayerPlayable{
                     }
                     board[newX][newY] = playerChar;
                     validPlay = true;
+                    flipped |= (long)(directionCount - 1) << (((i + 1) * 3 + (j + 1)) * FLIP_BITS);
                 }
                 
             }
         }
         if(validPlay){
+            trackMove(x, y, playerChar, flipped);
             playerTurn = otherChar;
             return validPlay;
         }
@@ -140,33 +172,72 @@ public class ReversiBoard implements TwoPlayerPlayable{
 
     public List<ReversiBoard> findValidMoves(char playerChar){
         ArrayList<ReversiBoard> validMovesList = new ArrayList<ReversiBoard>();
-        ReversiBoard nextMoveBoard = new ReversiBoard(gameSize, copyGameState(gameSize, board), playerChar);
-        
+        findValidMoves(playerChar, validMovesList);
+        return validMovesList;
+    }
+
+    public void findValidMoves(char playerChar, List<ReversiBoard> validMovesList){
+        validMovesList.clear();
+
+        //only the legal moves are copied and played
         for(int i = 0; i<gameSize; i++){
             for(int j = 0; j<gameSize; j++){
-                if(nextMoveBoard.movePiece(i, j, playerChar)){
+                if(isValidMove(i, j, playerChar)){
+                    ReversiBoard nextMoveBoard = new ReversiBoard(this, playerChar);
+                    nextMoveBoard.movePiece(i, j, playerChar);
                     validMovesList.add(nextMoveBoard);
-                    nextMoveBoard = new ReversiBoard(gameSize, copyGameState(gameSize, board), playerChar);
                 }
             }
         }
-        
-        return validMovesList;
+    }
+
+    /**
+     * Puts the legal moves in a list without copying the board or boxing the locations
+     *
+     * @param playerChar player to find moves for
+     * @param list list to fill, cleared first
+     */
+    public void generateMoves(char playerChar, MoveList list){
+        list.clear();
+        for(int i = 0; i<gameSize; i++){
+            for(int j = 0; j<gameSize; j++){
+                if(isValidMove(i, j, playerChar)){
+                    list.add(i, j);
+                }
+            }
+        }
+    }
+
+    public boolean apply(int move, char playerChar){
+        return movePiece(MoveList.moveX(move), MoveList.moveY(move), playerChar);
+    }
+
+    /**
+     * Copies the board only once a move is chosen, instead of a copy for every legal move
+     *
+     * @param move move from generateMoves()
+     * @param playerChar player making the move
+     * @return returns the board after the move, null if the move is not legal
+     */
+    public ReversiBoard applied(int move, char playerChar){
+        if(!isValidMove(MoveList.moveX(move), MoveList.moveY(move), playerChar)){
+            return null;
+        }
+        ReversiBoard nextMoveBoard = new ReversiBoard(this, playerChar);
+        nextMoveBoard.apply(move, playerChar);
+        return nextMoveBoard;
     }
 
     public List<List<Integer>> storeValidMoves(char playerChar){
         ArrayList<List<Integer>> validMovesList = new ArrayList<List<Integer>>();
-        ReversiBoard nextMoveBoard = new ReversiBoard(gameSize, copyGameState(gameSize, board), playerChar);
-        ArrayList<Integer> boardLocation = new ArrayList<Integer>();
 
         for(int i = 0; i<gameSize; i++){
             for(int j = 0; j<gameSize; j++){
-                if(nextMoveBoard.movePiece(i, j, playerChar)){
+                if(isValidMove(i, j, playerChar)){
+                    ArrayList<Integer> boardLocation = new ArrayList<Integer>();
                     boardLocation.add(i);
                     boardLocation.add(j);
                     validMovesList.add(boardLocation);
-                    nextMoveBoard = new ReversiBoard(gameSize, copyGameState(gameSize, board), playerChar);
-                    boardLocation = new ArrayList<Integer>();
                 }
             }
         }
@@ -187,6 +258,250 @@ public class ReversiBoard implements TwoPlayerPlayable{
         return copiedBoard;
     }
 
+    /**
+     * -----------MOVE TRACKING CODE--------------
+     */
+
+    /**
+     * Returns if a board location is a legal move, without trying the move
+     *
+     * @param x x axis location
+     * @param y y axis location
+     * @param playerChar player to move
+     * @return returns true if the player may play there
+     */
+    public boolean isValidMove(int x, int y, char playerChar){
+        if(x < 0 || x >= gameSize || y < 0 || y >= gameSize){
+            return false;
+        }
+        updateMoves();
+        return (legal[x * gameSize + y] & moveFlag(playerChar)) != 0;
+    }
+
+    //Returns if the player has any legal move
+    public boolean hasValidMove(char playerChar){
+        return countValidMoves(playerChar) > 0;
+    }
+
+    //Gets the number of legal moves of the player
+    public int countValidMoves(char playerChar){
+        updateMoves();
+        if(playerChar == 'x'){
+            return blackMoves;
+        }
+        else if(playerChar == 'o'){
+            return whiteMoves;
+        }
+        return 0;
+    }
+
+    //counts the pieces and finds the legal moves of both players from scratch
+    private void recount(){
+        blackCount = 0;
+        whiteCount = 0;
+        emptyCount = 0;
+        blackMoves = 0;
+        whiteMoves = 0;
+        legal = new byte[gameSize * gameSize];
+        legalShared = false;
+        pendingSquare = -1;
+        pendingFlips = 0;
+        movesStale = false;
+        for(int i = 0; i<gameSize; i++){
+            for(int j = 0; j<gameSize; j++){
+                if(board[i][j] == 'x'){
+                    blackCount++;
+                }
+                else if(board[i][j] == 'o'){
+                    whiteCount++;
+                }
+                else{
+                    emptyCount++;
+                    checkSquare(i, j);
+                }
+            }
+        }
+    }
+
+    //takes over the counts and legal moves of another board, sharing the legal array until one of them changes it
+    private void copyTracking(ReversiBoard other){
+        blackCount = other.blackCount;
+        whiteCount = other.whiteCount;
+        emptyCount = other.emptyCount;
+        blackMoves = other.blackMoves;
+        whiteMoves = other.whiteMoves;
+        legal = other.legal;
+        legalShared = true;
+        other.legalShared = true;
+        pendingSquare = other.pendingSquare;
+        pendingFlips = other.pendingFlips;
+        lastSquare = other.lastSquare;
+        movesStale = other.movesStale;
+    }
+
+    /**
+     * Updates the piece counts after a move and notes the move so the legal moves can be
+     * brought up to date later. A second move before then means a full recount instead.
+     *
+     * @param x x axis location of the piece played
+     * @param y y axis location of the piece played
+     * @param playerChar player that moved
+     * @param flipped number of pieces flipped in each direction, FLIP_BITS for direction (i + 1) * 3 + (j + 1)
+     */
+    private void trackMove(int x, int y, char playerChar, long flipped){
+        int total = 0;
+        for(int direction = 0; direction<9; direction++){
+            total += flipsIn(flipped, direction);
+        }
+        if(playerChar == 'x'){
+            blackCount += total + 1;
+            whiteCount -= total;
+        }
+        else{
+            whiteCount += total + 1;
+            blackCount -= total;
+        }
+        emptyCount--;
+        lastSquare = x * gameSize + y;
+
+        if(pendingSquare < 0 && !movesStale){
+            pendingSquare = x * gameSize + y;
+            pendingFlips = flipped;
+        }
+        else{
+            pendingSquare = -1;
+            pendingFlips = 0;
+            movesStale = true;
+        }
+    }
+
+    //brings the legal moves up to date with the moves played since they were last asked for
+    private void updateMoves(){
+        if(movesStale){
+            recount();
+            return;
+        }
+        if(pendingSquare < 0){
+            return;
+        }
+        if(legalShared){
+            legal = legal.clone();
+            legalShared = false;
+        }
+        int x = pendingSquare / gameSize;
+        int y = pendingSquare % gameSize;
+        long flipped = pendingFlips;
+        pendingSquare = -1;
+        pendingFlips = 0;
+        updateMovesAround(x, y, flipped);
+    }
+
+    /**
+     * Updates the legal moves after a move. A move can only change whether an empty square is
+     * legal if the square looks along a line of pieces at one of the squares the move changed,
+     * so only the first empty square in each direction from those squares is checked.
+     *
+     * @param x x axis location of the piece played
+     * @param y y axis location of the piece played
+     * @param flipped number of pieces flipped in each direction, FLIP_BITS for direction (i + 1) * 3 + (j + 1)
+     */
+    private void updateMovesAround(int x, int y, long flipped){
+        checkSquare(x, y);
+        checkAround(x, y);
+        for(int i = -1; i<2; i++){
+            for(int j = -1; j<2; j++){
+                int count = flipsIn(flipped, (i + 1) * 3 + (j + 1));
+                for(int flipCount = 1; flipCount<=count; flipCount++){
+                    checkAround(x + i * flipCount, y + j * flipCount);
+                }
+            }
+        }
+    }
+
+    //pieces flipped in one direction of a packed move
+    private static int flipsIn(long flipped, int direction){
+        return (int)((flipped >>> (direction * FLIP_BITS)) & FLIP_MASK);
+    }
+
+    //checks the first empty square past the line of pieces in every direction from a changed square
+    private void checkAround(int x, int y){
+        for(int i = -1; i<2; i++){
+            for(int j = -1; j<2; j++){
+                if(i == 0 && j == 0){
+                    continue;
+                }
+                int nextX = x + i;
+                int nextY = y + j;
+                while(onBoard(nextX, nextY) && isPiece(board[nextX][nextY])){
+                    nextX += i;
+                    nextY += j;
+                }
+                if(onBoard(nextX, nextY)){
+                    checkSquare(nextX, nextY);
+                }
+            }
+        }
+    }
+
+    //works out again if a square is a legal move for each player
+    private void checkSquare(int x, int y){
+        boolean empty = !isPiece(board[x][y]);
+        setLegal(x * gameSize + y, BLACK_MOVE, empty && flipsAny(x, y, 'x', 'o'));
+        setLegal(x * gameSize + y, WHITE_MOVE, empty && flipsAny(x, y, 'o', 'x'));
+    }
+
+    private void setLegal(int index, byte flag, boolean isLegal){
+        if(((legal[index] & flag) != 0) == isLegal){
+            return;
+        }
+        legal[index] ^= flag;
+        int change = isLegal ? 1 : -1;
+        if(flag == BLACK_MOVE){
+            blackMoves += change;
+        }
+        else{
+            whiteMoves += change;
+        }
+    }
+
+    //true if a piece played on the square would close a line of the other player's pieces
+    private boolean flipsAny(int x, int y, char playerChar, char otherChar){
+        for(int i = -1; i<2; i++){
+            for(int j = -1; j<2; j++){
+                int nextX = x + i;
+                int nextY = y + j;
+                boolean passedOtherChar = false;
+                while(onBoard(nextX, nextY) && board[nextX][nextY] == otherChar){
+                    nextX += i;
+                    nextY += j;
+                    passedOtherChar = true;
+                }
+                if(passedOtherChar && onBoard(nextX, nextY) && board[nextX][nextY] == playerChar){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean onBoard(int x, int y){
+        return x >= 0 && x < gameSize && y >= 0 && y < gameSize;
+    }
+
+    private static boolean isPiece(char piece){
+        return piece == 'x' || piece == 'o';
+    }
+
+    private static byte moveFlag(char playerChar){
+        if(playerChar == 'x'){
+            return BLACK_MOVE;
+        }
+        else if(playerChar == 'o'){
+            return WHITE_MOVE;
+        }
+        return 0;
+    }
+
     /**
      * -----------MINIMAX CODE-------------
      */
@@ -201,32 +516,35 @@ public class ReversiBoard implements TwoPlayerPlayable{
      * @param alpha Holds the value of alpha in the context of alpha-beta pruning. Initial call should make this Integer.Min_Value.
      * @param beta Holds the value of beta in the context of alpha-beta pruning. Initial call should make this Integer.Max_Value.
      * @param board Holds the current board. Initial call should make this the given board.
+     * @param context Holds the cutoff depth, the best move and the lists of children of this search.
+     *                Initial call should reset it.
      * @return Returns the value of the board.
      */
-    public int minimax (boolean maxPlayer, int level, int alpha, int beta, ReversiBoard board){
+    public int minimax (boolean maxPlayer, int level, int alpha, int beta, ReversiBoard board, SearchContext<ReversiBoard> context){
+        context.visit();
         //reached the cutoff level
-        if(level > maxLevel){
+        if(level > context.getMaxLevel()){
             return board.reversiHeuristic(board.playerTurn);
         }
 
         //holds the list of valid moves
-        List<ReversiBoard> children;
+        List<ReversiBoard> children = context.children(level);
 
         //finds children for the correct color
         if(board.playerTurn == 'x'){
             if(maxPlayer){
-                children = board.findValidMoves('x'); 
+                board.findValidMoves('x', children); 
             }
             else{
-                children = board.findValidMoves('o'); 
+                board.findValidMoves('o', children); 
             }
         }
         else{
             if(maxPlayer){
-                children = board.findValidMoves('o'); 
+                board.findValidMoves('o', children); 
             }
             else{
-                children = board.findValidMoves('x'); 
+                board.findValidMoves('x', children); 
             }
         }
         
@@ -260,20 +578,21 @@ public class ReversiBoard implements TwoPlayerPlayable{
 
             //run minimax for each children
             for(int i = 0; i<children.size(); i++){
-                int keep = minimax(false, level + 1, alpha, beta, children.get(i));
+                int keep = minimax(false, level + 1, alpha, beta, children.get(i), context);
                 max = Math.max(max, keep);
                 if(keep > alpha){
                     alpha = keep;
                     bestMoveLocation = i;
                 }
                 if(beta <= alpha){
+                    context.cutoff();
                     break;
                 }
             }
 
             //back at top of tree
             if(level == 0){
-                bestMove = children.get(bestMoveLocation);
+                context.setBestMove(children.get(bestMoveLocation));
             }
 
             return max;
@@ -282,7 +601,7 @@ public class ReversiBoard implements TwoPlayerPlayable{
         else{
             int min = Integer.MAX_VALUE;
             for(int i = 0; i<children.size(); i++){
-                int keep = minimax(true, level + 1, alpha, beta, children.get(i));
+                int keep = minimax(true, level + 1, alpha, beta, children.get(i), context);
                 min = Math.min(min, keep);
                 if(keep < beta){
                     beta = keep;
@@ -294,15 +613,21 @@ public class ReversiBoard implements TwoPlayerPlayable{
 
     /**
      * Function that changes the current board to the best move as per minimax()
+     *
+     * @param context context the search was run with
+     * @return returns the MoveList move played
      */
-    public void cpuMinimax(){
+    public int cpuMinimax(SearchContext<ReversiBoard> context){
+        ReversiBoard bestMove = context.getBestMove();
         board = bestMove.getBoard();
+        copyTracking(bestMove);
         if(playerTurn == 'x'){
             playerTurn = 'o';
         }
         else{
             playerTurn = 'x';
         }
+        return MoveList.move(lastSquare / gameSize, lastSquare % gameSize);
     }
 
     /**
@@ -314,12 +639,8 @@ public class ReversiBoard implements TwoPlayerPlayable{
      * @return true if there are no more valid moves, false if there is
      */
     public boolean isGameOver() {
-        if(findValidMoves('x').size() == 0 && findValidMoves('o').size() == 0){
-            return true;
-        }
-        else{
-            return false;
-        }
+        updateMoves();
+        return blackMoves == 0 && whiteMoves == 0;
     }
 
     /**
@@ -392,6 +713,11 @@ public class ReversiBoard implements TwoPlayerPlayable{
         return getValue('o') - getValue('x');
     }
 
+    //Gets the number of empty squares left on the board
+    public int getEmptyCount(){
+        return emptyCount;
+    }
+
 
     /**
      * Finds the value of the board in favor the the given player character,
@@ -401,6 +727,12 @@ public class ReversiBoard implements TwoPlayerPlayable{
      * @return returns the number of pieces of given playerChar
      */
     public int getValue(char playerChar) {
+        if(playerChar == 'x'){
+            return blackCount;
+        }
+        else if(playerChar == 'o'){
+            return whiteCount;
+        }
         int val = 0;
         for(int i = 0; i<board.length; i++){
             for(int j = 0; j<board[i].length; j++){
@@ -485,22 +817,14 @@ public class ReversiBoard implements TwoPlayerPlayable{
         return gameSize;
     }
 
-    public ReversiBoard getBestMove() {
-        return bestMove;
+    public char pieceAt(int x, int y) {
+        return board[x][y];
     }
-    
+
     private char[][] getBoard() {
         return board;
     }
 
-    public static int getMaxLevel() {
-        return maxLevel;
-    }
-    
-    public void setMaxLevel(int maxLevel) {
-        ReversiBoard.maxLevel = maxLevel;
-    }
-
     public char hasCurrentTurn() {
         return playerTurn;
     }
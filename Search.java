@@ -0,0 +1,617 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+/*
+ * File: Search.java
+ *
+ * Alpha-beta search that plays moves in place on a single BitBoard and takes them back on
+ * return, instead of building a new board for every child like ReversiBoard.minimax().
+ * The flipped pieces of each ply go on an undo stack that is allocated once, so the search
+ * itself allocates nothing. Results are kept in a transposition table keyed by the board's
+ * Zobrist hash, so positions reached by different move orders are only searched once.
+ * Moves are tried in the order given by a MoveOrderer and the cutoff depth is scored by an
+ * Evaluator, HeuristicEvaluator unless another one is set. Once few enough squares are left the
+ * EndgameSolver takes over and plays perfectly.
+ * findBestMoveTimed() deepens one move at a time until a time budget runs out.
+ *
+ * With a PositionStore set, results searched deep enough are also written to the store and
+ * looked up there, so they are kept from one run of the program to the next. A root position
+ * the store holds an exact result for, searched at least as deep as asked, is answered at once.
+ *
+ * All search state lives in the Search object, so one Search per thread can search the same
+ * position at once while sharing a transposition table, as ParallelSearch does.
+ *
+ * While searching, the Search counts nodes, leaf evaluations, cutoffs and table use in its own
+ * fields and keeps the principal variation in a triangular table. When the move is chosen they
+ * are copied into a SearchStats and passed to SearchMetrics, which publishes them over JMX and
+ * can log one line per move.
+ */
+public class Search implements MoveSearch {
+
+    //score of a finished game is WIN_SCORE plus the piece difference, so any win beats any heuristic value
+    public static final int WIN_SCORE = 10000;
+    //longest possible game is every square filled with a pass between each move
+    public static final int MAX_PLY = 130;
+    private static final int INFINITY = Integer.MAX_VALUE - 1;
+    public static final int DEFAULT_TABLE_MEGABYTES = 16;
+    //how many nodes are searched between looks at the clock
+    private static final int TIME_CHECK_INTERVAL = 1024;
+
+    private BitBoard board;
+    private long[] undoStack;
+    private TranspositionTable table;
+    private MoveOrderer orderer;
+    private Evaluator evaluator;
+    private EndgameSolver solver;
+    private int endgameEmpties;
+    private boolean ownsTable;
+    private PositionStore store;
+    private int orderedSize;
+    private AtomicBoolean stopSignal;
+    private int bestSquare;
+    private int rootMove;
+    private int completedDepth;
+    private long deadline;
+    private boolean timed;
+    private boolean stopped;
+    private long nodes;
+    private long ttHits;
+    private long ttCutoffs;
+    private long ttProbes;
+    private long leafEvaluations;
+    private long betaCutoffs;
+    private long firstMoveCutoffs;
+    private long endgameNodes;
+    private long[] cutoffsByDepth;
+    //pvTable[ply] holds the best line found from ply onwards, from index ply to pvLength[ply] - 1
+    private int[][] pvTable;
+    private int[] pvLength;
+    private int[] rootPv;
+    private int rootPvLength;
+    private int rootScore;
+    private long searchStart;
+    private SearchStats stats;
+    private boolean publishStats;
+
+    public Search(){
+        this(DEFAULT_TABLE_MEGABYTES);
+    }
+
+    /**
+     * @param tableMegabytes memory budget of the transposition table
+     */
+    public Search(int tableMegabytes){
+        this(new TranspositionTable(tableMegabytes), true);
+    }
+
+    /**
+     * Search using a table that may be shared with other searches. The owner of a shared
+     * table calls newSearch() on it before each move.
+     *
+     * @param table transposition table to use
+     */
+    public Search(TranspositionTable table){
+        this(table, false);
+    }
+
+    private Search(TranspositionTable table, boolean ownsTable){
+        this.table = table;
+        this.ownsTable = ownsTable;
+        undoStack = new long[MAX_PLY];
+        bestSquare = -1;
+        rootMove = -1;
+        evaluator = new HeuristicEvaluator();
+        solver = new EndgameSolver();
+        endgameEmpties = EndgameSolver.DEFAULT_EMPTIES;
+        cutoffsByDepth = new long[SearchStats.MAX_DEPTH + 1];
+        pvTable = new int[MAX_PLY + 1][MAX_PLY + 1];
+        pvLength = new int[MAX_PLY + 1];
+        rootPv = new int[MAX_PLY + 1];
+        stats = new SearchStats();
+        publishStats = true;
+    }
+
+    /**
+     * Searches the given position to a fixed depth and returns the best move for the given player
+     *
+     * @param position board to search from, it is not changed
+     * @param playerChar player to find a move for
+     * @param depth number of moves to look ahead, passes are not counted
+     * @return returns the bit index of the best move, -1 if the player has no moves
+     */
+    public int findBestMove(TwoPlayerPlayable<?> position, char playerChar, int depth){
+        startSearch(position, playerChar);
+        if(answerWithoutSearch(Math.max(depth, 1), Long.MAX_VALUE)){
+            return bestSquare;
+        }
+        long iterationStart = System.nanoTime();
+        rootScore = negamax(0, Math.max(depth, 1), -INFINITY, INFINITY);
+        completedDepth = Math.max(depth, 1);
+        saveRootPv();
+        stats.setDepth(completedDepth, nodes, System.nanoTime() - iterationStart);
+        finishSearch(false);
+        return bestSquare;
+    }
+
+    /**
+     * Searches one move deeper at a time until the time budget runs out, trying the best move
+     * of the previous depth first. The search that runs out of time is thrown away, so the
+     * move returned is the best move of the last depth that finished. The first depth always
+     * finishes so a move is returned whenever there is one.
+     *
+     * @param position board to search from, it is not changed
+     * @param playerChar player to find a move for
+     * @param maxDepth deepest search to try, Integer.MAX_VALUE for no limit
+     * @param budgetMillis wall clock time the search may take
+     * @return returns the bit index of the best move, -1 if the player has no moves
+     */
+    public int findBestMoveTimed(TwoPlayerPlayable<?> position, char playerChar, int maxDepth, long budgetMillis){
+        return deepen(position, playerChar, 1, maxDepth, System.nanoTime() + budgetMillis * 1000000L);
+    }
+
+    //findBestMove() as a MoveList move
+    public int findMove(TwoPlayerPlayable<?> position, char playerChar, int depth){
+        return BitBoard.toMove(findBestMove(position, playerChar, depth));
+    }
+
+    //findBestMoveTimed() as a MoveList move
+    public int findMoveTimed(TwoPlayerPlayable<?> position, char playerChar, int maxDepth, long budgetMillis){
+        return BitBoard.toMove(findBestMoveTimed(position, playerChar, maxDepth, budgetMillis));
+    }
+
+    /**
+     * Forgets what earlier searches learned, the table entries and the move ordering history, so
+     * the next search gives the same answer whatever was searched before it
+     */
+    public void clear(){
+        table.clear();
+        orderer = null;
+    }
+
+    /**
+     * Iterative deepening loop behind findBestMoveTimed(), also used by helper threads that
+     * start at a different depth
+     *
+     * @param position board to search from, it is not changed
+     * @param playerChar player to find a move for
+     * @param firstDepth depth of the first search
+     * @param maxDepth deepest search to try
+     * @param deadlineNanos value of System.nanoTime() at which to stop, Long.MAX_VALUE for no limit
+     * @return returns the bit index of the best move, -1 if no depth finished
+     */
+    public int deepen(TwoPlayerPlayable<?> position, char playerChar, int firstDepth, int maxDepth, long deadlineNanos){
+        startSearch(position, playerChar);
+        deadline = deadlineNanos;
+        int empties = board.getEmptyCount();
+        int result = -1;
+        if(answerWithoutSearch(maxDepth, deadlineNanos)){
+            return bestSquare;
+        }
+
+        for(int depth = Math.max(firstDepth, 1); depth <= maxDepth && depth < MAX_PLY; depth++){
+            rootMove = result;
+            bestSquare = -1;
+            long iterationStart = System.nanoTime();
+            long iterationNodes = nodes;
+            int score = negamax(0, depth, -INFINITY, INFINITY);
+            if(stopped){
+                break;
+            }
+            result = bestSquare;
+            completedDepth = depth;
+            rootScore = score;
+            saveRootPv();
+            stats.setDepth(depth, nodes - iterationNodes, System.nanoTime() - iterationStart);
+            //only check the clock once there is a move to fall back on
+            timed = true;
+            //every line already reaches the end of the game
+            if(depth >= empties || System.nanoTime() > deadline){
+                break;
+            }
+        }
+
+        timed = false;
+        rootMove = -1;
+        bestSquare = result;
+        finishSearch(false);
+        return result;
+    }
+
+    /**
+     * Hands the root to the endgame solver once few enough squares are left
+     *
+     * @param deadlineNanos value of System.nanoTime() at which the solver gives up
+     * @return returns true if the position was solved and bestSquare holds the perfect move
+     */
+    private boolean solveEndgame(long deadlineNanos){
+        if(board.getEmptyCount() > endgameEmpties){
+            return false;
+        }
+        boolean solved = solver.solve(board, board.hasCurrentTurn(), deadlineNanos);
+        nodes += solver.getNodes();
+        endgameNodes += solver.getNodes();
+        if(solved){
+            bestSquare = solver.getBestSquare();
+            completedDepth = board.getEmptyCount();
+            rootScore = solver.getScore();
+            rootPv[0] = bestSquare;
+            rootPvLength = bestSquare < 0 ? 0 : 1;
+        }
+        return solved;
+    }
+
+    /**
+     * Answers the root from the position store or with the endgame solver if either can, and
+     * keeps a solved position in the store
+     *
+     * @param maxDepth depth the search was asked for
+     * @param deadlineNanos value of System.nanoTime() at which the solver gives up
+     * @return returns true if the search is finished and bestSquare holds the move
+     */
+    private boolean answerWithoutSearch(int maxDepth, long deadlineNanos){
+        if(answerFromStore(maxDepth)){
+            return true;
+        }
+        if(solveEndgame(deadlineNanos)){
+            //stored as negamax scores a finished game, so the searches can use it below their root
+            if(store != null && bestSquare >= 0){
+                store.store(ownPieces(), otherPieces(), board.getGameSize(), TranspositionTable.MAX_DEPTH,
+                    TranspositionTable.EXACT, finalScore(rootScore), bestSquare);
+            }
+            finishSearch(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Answers the root from the position store if it holds an exact result searched at least as
+     * deep as asked, or to the end of the game, and finishes the search. Only a position the
+     * endgame solver stored is reported solved, a result searched past the last empty square
+     * keeps its negamax score, as deepen() reports it.
+     *
+     * @param maxDepth depth the search was asked for
+     * @return returns true if bestSquare holds the stored move
+     */
+    private boolean answerFromStore(int maxDepth){
+        if(store == null){
+            return false;
+        }
+        long entry = store.probe(ownPieces(), otherPieces(), board.getGameSize());
+        if(entry == 0 || TranspositionTable.boundOf(entry) != TranspositionTable.EXACT){
+            return false;
+        }
+        int move = TranspositionTable.moveOf(entry);
+        int depth = TranspositionTable.depthOf(entry);
+        int empties = board.getEmptyCount();
+        //a move that is not legal here means two positions share a hash
+        if(move < 0 || ((board.movesFor(board.hasCurrentTurn()) >>> move) & 1) == 0 || depth < Math.min(maxDepth, empties)){
+            return false;
+        }
+        int score = TranspositionTable.scoreOf(entry);
+        bestSquare = move;
+        completedDepth = Math.min(depth, empties);
+        //solved positions report the piece difference, as the endgame solver does
+        if(depth == TranspositionTable.MAX_DEPTH){
+            rootScore = score > 0 ? score - WIN_SCORE : score < 0 ? score + WIN_SCORE : 0;
+        }
+        else{
+            rootScore = score;
+        }
+        rootPv[0] = move;
+        rootPvLength = 1;
+        finishSearch(depth == TranspositionTable.MAX_DEPTH);
+        return true;
+    }
+
+    //pieces of the player to move
+    private long ownPieces(){
+        return board.hasCurrentTurn() == 'x' ? board.getBlack() : board.getWhite();
+    }
+
+    private long otherPieces(){
+        return board.hasCurrentTurn() == 'x' ? board.getWhite() : board.getBlack();
+    }
+
+    //resets the board and counters before a new search
+    private void startSearch(TwoPlayerPlayable<?> position, char playerChar){
+        board = BitBoard.fromBoard(position, playerChar);
+        bestSquare = -1;
+        rootMove = -1;
+        completedDepth = 0;
+        timed = false;
+        stopped = false;
+        nodes = 0;
+        ttHits = 0;
+        ttCutoffs = 0;
+        ttProbes = 0;
+        leafEvaluations = 0;
+        betaCutoffs = 0;
+        firstMoveCutoffs = 0;
+        endgameNodes = 0;
+        java.util.Arrays.fill(cutoffsByDepth, 0);
+        rootPvLength = 0;
+        rootScore = 0;
+        stats.reset();
+        searchStart = System.nanoTime();
+        if(ownsTable){
+            table.newSearch();
+        }
+        if(orderer == null || orderedSize != board.getGameSize()){
+            orderer = new MoveOrderer(board.getGameSize());
+            orderedSize = board.getGameSize();
+        }
+        orderer.newSearch();
+    }
+
+    //copies the counters into the stats of this search and publishes them
+    private void finishSearch(boolean solved){
+        stats.setCounters(nodes, leafEvaluations, betaCutoffs, firstMoveCutoffs, ttProbes, ttHits, ttCutoffs,
+            endgameNodes, cutoffsByDepth);
+        stats.setResult(completedDepth, solved, bestSquare, rootScore, System.nanoTime() - searchStart);
+        stats.setPv(rootPv, rootPvLength);
+        if(publishStats){
+            SearchMetrics.getInstance().record(stats);
+        }
+    }
+
+    //keeps the line of the last finished depth, a search that runs out of time leaves the table half written
+    private void saveRootPv(){
+        rootPvLength = pvLength[0];
+        System.arraycopy(pvTable[0], 0, rootPv, 0, rootPvLength);
+    }
+
+    /**
+     * Alpha-beta search in negamax form, every score is from the view of the player to move
+     *
+     * @param ply number of moves and passes played since the root
+     * @param depth number of moves left before the heuristic is used
+     * @param alpha lower bound of the window
+     * @param beta upper bound of the window
+     * @return returns the value of the board for the player to move
+     */
+    private int negamax(int ply, int depth, int alpha, int beta){
+        nodes++;
+        if((nodes % TIME_CHECK_INTERVAL) == 0 && shouldStop()){
+            stopped = true;
+        }
+        if(stopped){
+            return 0;
+        }
+        pvLength[ply] = ply;
+        char turn = board.hasCurrentTurn();
+        long moves = board.movesFor(turn);
+
+        //no moves means either a pass or the end of the game
+        if(moves == 0){
+            if(board.movesFor(turn == 'x' ? 'o' : 'x') == 0){
+                return finalScore(board.getValue(turn) - board.getValue(turn == 'x' ? 'o' : 'x'));
+            }
+            board.passTurn();
+            int score = -negamax(ply + 1, depth, -beta, -alpha);
+            board.passTurn();
+            updatePv(ply, -1);
+            return score;
+        }
+
+        //reached the cutoff level, keep heuristic values below the score of a finished game
+        if(depth <= 0){
+            leafEvaluations++;
+            int value = evaluator.evaluate(board);
+            return Math.max(-WIN_SCORE + 1, Math.min(WIN_SCORE - 1, value));
+        }
+
+        //use a stored result if it was searched deep enough, otherwise try its best move first
+        long key = board.getHash();
+        ttProbes++;
+        long entry = table.probe(key);
+        int ttMove = ply == 0 ? rootMove : -1;
+        if(entry != 0){
+            ttHits++;
+            if(ttMove < 0){
+                ttMove = TranspositionTable.moveOf(entry);
+            }
+            if(ply > 0 && TranspositionTable.depthOf(entry) >= Math.min(depth, TranspositionTable.MAX_DEPTH)){
+                int ttScore = TranspositionTable.scoreOf(entry);
+                int bound = TranspositionTable.boundOf(entry);
+                if(bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && ttScore >= beta)
+                    || (bound == TranspositionTable.UPPER && ttScore <= alpha)){
+                    ttCutoffs++;
+                    return ttScore;
+                }
+            }
+        }
+
+        long own = turn == 'x' ? board.getBlack() : board.getWhite();
+        long opp = turn == 'x' ? board.getWhite() : board.getBlack();
+        //deep results may be in the store from an earlier run, the root was looked up before searching
+        boolean persist = store != null && depth >= store.getMinDepth();
+        if(persist && ply > 0){
+            long storeEntry = store.probe(own, opp, board.getGameSize());
+            if(storeEntry != 0){
+                if(ttMove < 0){
+                    ttMove = TranspositionTable.moveOf(storeEntry);
+                }
+                int storeScore = TranspositionTable.scoreOf(storeEntry);
+                int bound = TranspositionTable.boundOf(storeEntry);
+                if(TranspositionTable.depthOf(storeEntry) >= depth
+                    && (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && storeScore >= beta)
+                    || (bound == TranspositionTable.UPPER && storeScore <= alpha))){
+                    table.store(key, TranspositionTable.depthOf(storeEntry), bound, storeScore, TranspositionTable.moveOf(storeEntry));
+                    return storeScore;
+                }
+            }
+        }
+
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestMoveHere = -1;
+        //at the root of a position that is its own mirror image, mirrored moves lead to the same game
+        if(ply == 0){
+            moves = Symmetry.uniqueMoves(moves, own, opp, board.getGameSize());
+        }
+        int count = Long.bitCount(moves);
+        int[] ordered = orderer.orderMoves(moves, ply, ttMove, turn);
+        for(int i = 0; i<count; i++){
+            int square = ordered[i];
+
+            undoStack[ply] = board.makeMove(square);
+            int score = -negamax(ply + 1, depth - 1, -beta, -alpha);
+            board.undoMove(square, undoStack[ply]);
+            //out of time, the result of this node is not complete
+            if(stopped){
+                return 0;
+            }
+
+            if(score > best){
+                best = score;
+                bestMoveHere = square;
+                if(ply == 0){
+                    bestSquare = square;
+                }
+            }
+            if(score > alpha){
+                alpha = score;
+                updatePv(ply, square);
+            }
+            if(alpha >= beta){
+                orderer.recordCutoff(ply, square, depth, turn, i);
+                betaCutoffs++;
+                cutoffsByDepth[Math.min(depth, SearchStats.MAX_DEPTH)]++;
+                if(i == 0){
+                    firstMoveCutoffs++;
+                }
+                break;
+            }
+        }
+
+        int bound = TranspositionTable.EXACT;
+        if(best <= originalAlpha){
+            bound = TranspositionTable.UPPER;
+        }
+        else if(best >= beta){
+            bound = TranspositionTable.LOWER;
+        }
+        table.store(key, depth, bound, best, bestMoveHere);
+        if(persist){
+            store.store(own, opp, board.getGameSize(), depth, bound, best, bestMoveHere);
+        }
+        return best;
+    }
+
+    //the best line from ply is the move made there followed by the best line of the child
+    private void updatePv(int ply, int square){
+        int[] line = pvTable[ply];
+        line[ply] = square;
+        int childLength = pvLength[ply + 1];
+        System.arraycopy(pvTable[ply + 1], ply + 1, line, ply + 1, childLength - ply - 1);
+        pvLength[ply] = Math.max(childLength, ply + 1);
+    }
+
+    //out of time, or told to stop by another thread
+    private boolean shouldStop(){
+        if(timed && System.nanoTime() > deadline){
+            return true;
+        }
+        return stopSignal != null && stopSignal.get();
+    }
+
+    /**
+     * Scores a finished game so that wins and losses outweigh every heuristic value
+     *
+     * @param discDiff pieces of the player to move minus pieces of the other player
+     * @return returns the score of the finished game
+     */
+    public static int finalScore(int discDiff){
+        if(discDiff > 0){
+            return WIN_SCORE + discDiff;
+        }
+        else if(discDiff < 0){
+            return -WIN_SCORE + discDiff;
+        }
+        return 0;
+    }
+
+    /**
+     * ---------GETTERS----------
+     */
+
+    public int getBestSquare() {
+        return bestSquare;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    //deepest search that finished during the last call
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    //transposition table entries found during the last search
+    public long getTtHits() {
+        return ttHits;
+    }
+
+    //nodes of the last search answered straight from the transposition table
+    public long getTtCutoffs() {
+        return ttCutoffs;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    public PositionStore getStore() {
+        return store;
+    }
+
+    //store of results kept between runs, searched and written to as well as the table, null for none
+    public void setStore(PositionStore store) {
+        this.store = store;
+    }
+
+    //counters of the last search, the same object is reused by the next search
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    //searches publish their stats to SearchMetrics unless told not to, as ParallelSearch does for its threads
+    public void setPublishStats(boolean publishStats) {
+        this.publishStats = publishStats;
+    }
+
+    //move ordering of the last search, including how often the first move caused a cutoff
+    public MoveOrderer getOrderer() {
+        return orderer;
+    }
+
+    //a search stops soon after another thread sets the signal to true
+    public void setStopSignal(AtomicBoolean stopSignal) {
+        this.stopSignal = stopSignal;
+        solver.setStopSignal(stopSignal);
+    }
+
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    public void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    public int getEndgameEmpties() {
+        return endgameEmpties;
+    }
+
+    //the endgame solver takes over at the root once this many squares or fewer are empty
+    public void setEndgameEmpties(int endgameEmpties) {
+        this.endgameEmpties = endgameEmpties;
+    }
+
+    //exact final piece difference of the last search, only meaningful if the endgame solver took over
+    public EndgameSolver getSolver() {
+        return solver;
+    }
+}
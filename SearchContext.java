@@ -0,0 +1,94 @@
+import java.util.ArrayList;
+import java.util.List;
+/*
+ * File: SearchContext.java
+ *
+ * Everything one minimax search needs besides the boards it searches: the cutoff depth, the
+ * best move found at the root, how many boards it visited and cut off, and a list per level
+ * that the children of that level are put in. The boards keep none of it, so any number of
+ * boards can be searched at the same time as long as every search has its own context. A
+ * context is reused from one move to the next, reset() starts a new search.
+ */
+public class SearchContext<T extends TwoPlayerPlayable<T>> {
+
+    private int maxLevel;
+    private T bestMove;
+    private long nodes;
+    private long cutoffs;
+    //children of the board being searched at each level, reused by every search
+    private List<List<T>> children = new ArrayList<List<T>>();
+
+    /**
+     * @param maxLevel cutoff depth, boards below it are scored with the heuristic
+     */
+    public SearchContext(int maxLevel){
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * Starts a new search: forgets the best move, the counters and the children of the last one
+     *
+     * @param maxLevel cutoff depth of the new search
+     */
+    public void reset(int maxLevel){
+        this.maxLevel = maxLevel;
+        bestMove = null;
+        nodes = 0;
+        cutoffs = 0;
+        for(int i = 0; i<children.size(); i++){
+            children.get(i).clear();
+        }
+    }
+
+    /**
+     * @param level depth of the board whose children are wanted
+     * @return returns the empty list of the level, only valid until the level is searched again
+     */
+    public List<T> children(int level){
+        while(children.size() <= level){
+            children.add(new ArrayList<T>());
+        }
+        List<T> list = children.get(level);
+        list.clear();
+        return list;
+    }
+
+    //a board was searched
+    public void visit(){
+        nodes++;
+    }
+
+    //the rest of a board's children were skipped
+    public void cutoff(){
+        cutoffs++;
+    }
+
+    /**
+     * ---------GETTERS AND SETTERS----------
+     */
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    public void setMaxLevel(int maxLevel) {
+        this.maxLevel = maxLevel;
+    }
+
+    //child of the root the last search chose, null if the root had no moves
+    public T getBestMove() {
+        return bestMove;
+    }
+
+    public void setBestMove(T bestMove) {
+        this.bestMove = bestMove;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getCutoffs() {
+        return cutoffs;
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+/*
+ * File: SearchMetrics.java
+ *
+ * Collects the SearchStats of every move searched in this JVM and publishes them as a JMX
+ * MBean, so a running game or tournament can be watched from JConsole without a profiler.
+ * Besides totals it keeps the stats of the last move and of the slowest move, which is the
+ * one to look at when a move took much longer than expected. With logging on, every move
+ * also prints one line of key=value pairs, see SearchStats.toLogLine().
+ *
+ * Searches only report here once per move, so the lock taken is never contended in the
+ * search itself.
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+
+    public static final String OBJECT_NAME = "Reversi:type=SearchMetrics";
+
+    private static final SearchMetrics INSTANCE = register(new SearchMetrics());
+
+    private long searches;
+    private long totalNodes;
+    private long totalNanos;
+    private SearchStats last = new SearchStats();
+    private SearchStats slowest = new SearchStats();
+    private boolean hasSlowest;
+    private volatile boolean logging;
+    private PrintStream log = System.err;
+
+    //the JMX server may refuse the bean, for example under a security manager, the metrics still work without it
+    private static SearchMetrics register(SearchMetrics metrics){
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if(!server.isRegistered(name)){
+                server.registerMBean(metrics, name);
+            }
+        }
+        catch(JMException | SecurityException e){
+            System.err.println("Search metrics are not available over JMX: " + e.getMessage());
+        }
+        return metrics;
+    }
+
+    public static SearchMetrics getInstance(){
+        return INSTANCE;
+    }
+
+    /**
+     * Adds the stats of a finished move and logs them if logging is on
+     *
+     * @param stats stats of the move, copied so the search can reuse them
+     */
+    public void record(SearchStats stats){
+        synchronized(this){
+            searches++;
+            totalNodes += stats.getNodes();
+            totalNanos += stats.getElapsedNanos();
+            last.copyFrom(stats);
+            if(!hasSlowest || stats.getElapsedNanos() > slowest.getElapsedNanos()){
+                slowest.copyFrom(stats);
+                hasSlowest = true;
+            }
+        }
+        if(logging){
+            log.println(stats.toLogLine());
+        }
+    }
+
+    //where log lines go, standard error unless set
+    public void setLog(PrintStream log){
+        this.log = log;
+    }
+
+    /**
+     * ---------MBEAN ATTRIBUTES----------
+     */
+
+    public synchronized long getSearches() {
+        return searches;
+    }
+
+    public synchronized long getTotalNodes() {
+        return totalNodes;
+    }
+
+    public synchronized long getTotalMillis() {
+        return totalNanos / 1000000L;
+    }
+
+    public synchronized double getAverageNodesPerSecond() {
+        return totalNanos == 0 ? 0 : totalNodes * 1e9 / totalNanos;
+    }
+
+    public synchronized long getLastNodes() {
+        return last.getNodes();
+    }
+
+    public synchronized long getLastLeafEvaluations() {
+        return last.getLeafEvaluations();
+    }
+
+    public synchronized long getLastBetaCutoffs() {
+        return last.getBetaCutoffs();
+    }
+
+    public synchronized double getLastFirstMoveCutoffPercent() {
+        return last.getBetaCutoffs() == 0 ? 0 : 100.0 * last.getFirstMoveCutoffs() / last.getBetaCutoffs();
+    }
+
+    public synchronized long getLastTtProbes() {
+        return last.getTtProbes();
+    }
+
+    public synchronized double getLastTtHitRate() {
+        return last.getTtHitRate();
+    }
+
+    public synchronized int getLastDepth() {
+        return last.getCompletedDepth();
+    }
+
+    public synchronized double getLastMillis() {
+        return last.getElapsedNanos() / 1e6;
+    }
+
+    public synchronized double getLastEffectiveBranchingFactor() {
+        return last.getEffectiveBranchingFactor();
+    }
+
+    public synchronized String getLastPrincipalVariation() {
+        return last.getPrincipalVariation();
+    }
+
+    public synchronized String getLastLogLine() {
+        return searches == 0 ? "" : last.toLogLine();
+    }
+
+    public synchronized double getSlowestMillis() {
+        return slowest.getElapsedNanos() / 1e6;
+    }
+
+    public synchronized String getSlowestLogLine() {
+        return hasSlowest ? slowest.toLogLine() : "";
+    }
+
+    public boolean isLogging() {
+        return logging;
+    }
+
+    public void setLogging(boolean logging) {
+        this.logging = logging;
+    }
+
+    public synchronized void reset() {
+        searches = 0;
+        totalNodes = 0;
+        totalNanos = 0;
+        last.reset();
+        slowest.reset();
+        hasSlowest = false;
+    }
+}
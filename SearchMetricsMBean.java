@@ -0,0 +1,48 @@
+/*
+ * File: SearchMetricsMBean.java
+ *
+ * Management interface of SearchMetrics, the attributes shown by JConsole or any other JMX
+ * client under Reversi:type=SearchMetrics. "Last" attributes describe the most recent move.
+ */
+public interface SearchMetricsMBean {
+
+    long getSearches();
+
+    long getTotalNodes();
+
+    long getTotalMillis();
+
+    double getAverageNodesPerSecond();
+
+    long getLastNodes();
+
+    long getLastLeafEvaluations();
+
+    long getLastBetaCutoffs();
+
+    double getLastFirstMoveCutoffPercent();
+
+    long getLastTtProbes();
+
+    double getLastTtHitRate();
+
+    int getLastDepth();
+
+    double getLastMillis();
+
+    double getLastEffectiveBranchingFactor();
+
+    String getLastPrincipalVariation();
+
+    String getLastLogLine();
+
+    double getSlowestMillis();
+
+    String getSlowestLogLine();
+
+    boolean isLogging();
+
+    void setLogging(boolean logging);
+
+    void reset();
+}
@@ -0,0 +1,299 @@
+/*
+ * File: SearchStats.java
+ *
+ * What one search did: how many nodes it visited and scored, where it cut off, how well the
+ * transposition table served it, how long each depth of iterative deepening took and the line
+ * of play it expects. A Search counts into its own primitive fields while it runs and copies
+ * them here once the move is chosen, so counting costs no more than an increment per node and
+ * nothing is shared between threads until the search is over.
+ */
+public class SearchStats {
+
+    //cutoffs are counted per remaining depth up to this, deeper ones go in the last slot
+    public static final int MAX_DEPTH = 64;
+    private static final int PASS = -1;
+
+    private long nodes;
+    private long leafEvaluations;
+    private long betaCutoffs;
+    private long firstMoveCutoffs;
+    private long ttProbes;
+    private long ttHits;
+    private long ttCutoffs;
+    private long endgameNodes;
+    private long[] cutoffsByDepth = new long[MAX_DEPTH + 1];
+    //for each finished depth of iterative deepening, nodes visited and time taken by that depth alone
+    private long[] depthNodes = new long[MAX_DEPTH + 1];
+    private long[] depthNanos = new long[MAX_DEPTH + 1];
+    private int completedDepth;
+    private boolean solved;
+    private int bestSquare;
+    private int score;
+    private long elapsedNanos;
+    private int[] pv = new int[Search.MAX_PLY];
+    private int pvLength;
+
+    public SearchStats(){
+        reset();
+    }
+
+    public void reset(){
+        nodes = 0;
+        leafEvaluations = 0;
+        betaCutoffs = 0;
+        firstMoveCutoffs = 0;
+        ttProbes = 0;
+        ttHits = 0;
+        ttCutoffs = 0;
+        endgameNodes = 0;
+        java.util.Arrays.fill(cutoffsByDepth, 0);
+        java.util.Arrays.fill(depthNodes, 0);
+        java.util.Arrays.fill(depthNanos, 0);
+        completedDepth = 0;
+        solved = false;
+        bestSquare = -1;
+        score = 0;
+        elapsedNanos = 0;
+        pvLength = 0;
+    }
+
+    /**
+     * Sets the counters of a finished search, called by Search once the move is chosen
+     */
+    void setCounters(long nodes, long leafEvaluations, long betaCutoffs, long firstMoveCutoffs,
+        long ttProbes, long ttHits, long ttCutoffs, long endgameNodes, long[] cutoffsByDepth){
+        this.nodes = nodes;
+        this.leafEvaluations = leafEvaluations;
+        this.betaCutoffs = betaCutoffs;
+        this.firstMoveCutoffs = firstMoveCutoffs;
+        this.ttProbes = ttProbes;
+        this.ttHits = ttHits;
+        this.ttCutoffs = ttCutoffs;
+        this.endgameNodes = endgameNodes;
+        System.arraycopy(cutoffsByDepth, 0, this.cutoffsByDepth, 0, this.cutoffsByDepth.length);
+    }
+
+    //records a depth of iterative deepening that finished
+    void setDepth(int depth, long nodes, long nanos){
+        int slot = Math.min(depth, MAX_DEPTH);
+        depthNodes[slot] = nodes;
+        depthNanos[slot] = nanos;
+    }
+
+    void setResult(int completedDepth, boolean solved, int bestSquare, int score, long elapsedNanos){
+        this.completedDepth = completedDepth;
+        this.solved = solved;
+        this.bestSquare = bestSquare;
+        this.score = score;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    //principal variation, PASS for a pass
+    void setPv(int[] line, int length){
+        pvLength = Math.min(length, pv.length);
+        System.arraycopy(line, 0, pv, 0, pvLength);
+    }
+
+    /**
+     * Adds the work counters of another search of the same move, as helper threads of a
+     * parallel search do. The result, timings and line stay this search's.
+     *
+     * @param other stats of the other search
+     */
+    public void addWork(SearchStats other){
+        nodes += other.nodes;
+        leafEvaluations += other.leafEvaluations;
+        betaCutoffs += other.betaCutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        ttProbes += other.ttProbes;
+        ttHits += other.ttHits;
+        ttCutoffs += other.ttCutoffs;
+        endgameNodes += other.endgameNodes;
+        for(int i = 0; i<cutoffsByDepth.length; i++){
+            cutoffsByDepth[i] += other.cutoffsByDepth[i];
+        }
+    }
+
+    public void copyFrom(SearchStats other){
+        reset();
+        addWork(other);
+        System.arraycopy(other.depthNodes, 0, depthNodes, 0, depthNodes.length);
+        System.arraycopy(other.depthNanos, 0, depthNanos, 0, depthNanos.length);
+        completedDepth = other.completedDepth;
+        solved = other.solved;
+        bestSquare = other.bestSquare;
+        score = other.score;
+        elapsedNanos = other.elapsedNanos;
+        setPv(other.pv, other.pvLength);
+    }
+
+    /**
+     * Average number of moves searched below a node, the number that raised to the completed
+     * depth gives the nodes visited
+     *
+     * @return returns the effective branching factor, 0 if nothing was searched
+     */
+    public double getEffectiveBranchingFactor(){
+        if(completedDepth <= 0 || nodes <= 1){
+            return 0;
+        }
+        return Math.pow(nodes, 1.0 / completedDepth);
+    }
+
+    public double getTtHitRate(){
+        return ttProbes == 0 ? 0 : (double)ttHits / ttProbes;
+    }
+
+    public double getNodesPerSecond(){
+        return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+    }
+
+    //principal variation as squares, for example "f5 d6 c3", with "pass" for a pass
+    public String getPrincipalVariation(){
+        StringBuilder line = new StringBuilder();
+        for(int i = 0; i<pvLength; i++){
+            if(i > 0){
+                line.append(' ');
+            }
+            line.append(squareName(pv[i]));
+        }
+        return line.toString();
+    }
+
+    /**
+     * One line of key=value pairs describing the search, meant for log files
+     *
+     * @return returns the log line
+     */
+    public String toLogLine(){
+        StringBuilder line = new StringBuilder("search");
+        line.append(" move=").append(squareName(bestSquare));
+        line.append(" score=").append(score);
+        line.append(" depth=").append(completedDepth);
+        line.append(" solved=").append(solved);
+        line.append(" ms=").append(String.format("%.1f", elapsedNanos / 1e6));
+        line.append(" nodes=").append(nodes);
+        line.append(" nps=").append(String.format("%.0f", getNodesPerSecond()));
+        line.append(" leaves=").append(leafEvaluations);
+        line.append(" endgameNodes=").append(endgameNodes);
+        line.append(" cutoffs=").append(betaCutoffs);
+        line.append(" firstMoveCutoffs=").append(firstMoveCutoffs);
+        line.append(" ebf=").append(String.format("%.2f", getEffectiveBranchingFactor()));
+        line.append(" ttProbes=").append(ttProbes);
+        line.append(" ttHits=").append(ttHits);
+        line.append(" ttCutoffs=").append(ttCutoffs);
+        line.append(" depthMs=").append(depthMillis());
+        line.append(" cutoffsByDepth=").append(cutoffsByDepth());
+        line.append(" pv=").append(getPrincipalVariation().replace(' ', ','));
+        return line.toString();
+    }
+
+    //time of each finished depth, for example "1:0.1,2:0.4,3:2.0"
+    private String depthMillis(){
+        StringBuilder text = new StringBuilder();
+        for(int depth = 1; depth<=MAX_DEPTH; depth++){
+            if(depthNodes[depth] == 0 && depthNanos[depth] == 0){
+                continue;
+            }
+            if(text.length() > 0){
+                text.append(',');
+            }
+            text.append(depth).append(':').append(String.format("%.1f", depthNanos[depth] / 1e6));
+        }
+        return text.toString();
+    }
+
+    //cutoffs at each remaining depth that had any, for example "1:500,2:120"
+    private String cutoffsByDepth(){
+        StringBuilder text = new StringBuilder();
+        for(int depth = 0; depth<=MAX_DEPTH; depth++){
+            if(cutoffsByDepth[depth] == 0){
+                continue;
+            }
+            if(text.length() > 0){
+                text.append(',');
+            }
+            text.append(depth).append(':').append(cutoffsByDepth[depth]);
+        }
+        return text.toString();
+    }
+
+    private static String squareName(int square){
+        if(square == PASS){
+            return "pass";
+        }
+        return "" + (char)('a' + BitBoard.squareX(square)) + (BitBoard.squareY(square) + 1);
+    }
+
+    /**
+     * ---------GETTERS----------
+     */
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getLeafEvaluations() {
+        return leafEvaluations;
+    }
+
+    public long getBetaCutoffs() {
+        return betaCutoffs;
+    }
+
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    //beta cutoffs with the given number of moves left to search
+    public long getCutoffsAtDepth(int depth) {
+        return cutoffsByDepth[Math.min(depth, MAX_DEPTH)];
+    }
+
+    public long getTtProbes() {
+        return ttProbes;
+    }
+
+    public long getTtHits() {
+        return ttHits;
+    }
+
+    public long getTtCutoffs() {
+        return ttCutoffs;
+    }
+
+    public long getEndgameNodes() {
+        return endgameNodes;
+    }
+
+    //nodes visited by one finished depth of iterative deepening alone
+    public long getDepthNodes(int depth) {
+        return depthNodes[Math.min(depth, MAX_DEPTH)];
+    }
+
+    //time taken by one finished depth of iterative deepening alone
+    public long getDepthNanos(int depth) {
+        return depthNanos[Math.min(depth, MAX_DEPTH)];
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    //true if the endgame solver found the exact result
+    public boolean isSolved() {
+        return solved;
+    }
+
+    public int getBestSquare() {
+        return bestSquare;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * File: Symmetry.java
+ *
+ * The 8 symmetries of the board, the rotations and reflections of the square, applied to
+ * whole bitboards with a few shifts and masks each. Square (x, y) is bit x * 8 + y, so
+ * reversing the bytes of a board mirrors x, reversing the bits inside each byte mirrors y, and
+ * swapping x with y is the usual bitboard transpose. Smaller boards sit in the low corner of
+ * the 64 bits, so after a mirror they are shifted back down by the rows and columns they lack.
+ *
+ * A symmetry is a number from 0 to 7 made of flags: 4 swaps x and y first, then 1 mirrors x and 2
+ * mirrors y, the same numbering as the pattern instances of PatternEvaluator. Positions that
+ * are symmetries of each other play the same, so their canonical form, the symmetry with the
+ * smallest pair of boards, can stand for all of them.
+ */
+public class Symmetry {
+
+    public static final int COUNT = 8;
+    public static final int IDENTITY = 0;
+
+    private Symmetry(){
+    }
+
+    public static long apply(long bits, int symmetry){
+        return apply(bits, symmetry, 8);
+    }
+
+    /**
+     * Applies a symmetry to a bitboard
+     *
+     * @param bits pieces to move, all inside the board
+     * @param symmetry number from 0 to 7
+     * @param size width and height of the board
+     * @return returns the pieces moved by the symmetry
+     */
+    public static long apply(long bits, int symmetry, int size){
+        if((symmetry & 4) != 0){
+            bits = transpose(bits);
+        }
+        if((symmetry & 1) != 0){
+            bits = Long.reverseBytes(bits) >>> (8 * (8 - size));
+        }
+        if((symmetry & 2) != 0){
+            //the squares past the board are empty, so nothing crosses into the next row
+            bits = mirrorBytes(bits) >>> (8 - size);
+        }
+        return bits;
+    }
+
+    public static int applyToSquare(int square, int symmetry){
+        return applyToSquare(square, symmetry, 8);
+    }
+
+    /**
+     * Moves a single square by a symmetry
+     *
+     * @param square bit index of the square
+     * @param symmetry number from 0 to 7
+     * @param size width and height of the board
+     * @return returns the bit index the square moves to
+     */
+    public static int applyToSquare(int square, int symmetry, int size){
+        int x = BitBoard.squareX(square);
+        int y = BitBoard.squareY(square);
+        if((symmetry & 4) != 0){
+            int swap = x;
+            x = y;
+            y = swap;
+        }
+        if((symmetry & 1) != 0){
+            x = size - 1 - x;
+        }
+        if((symmetry & 2) != 0){
+            y = size - 1 - y;
+        }
+        return BitBoard.square(x, y);
+    }
+
+    /**
+     * Moves a square of the canonical orientation back to the board it came from
+     *
+     * @param square bit index in the canonical orientation
+     * @param symmetry symmetry that gave the canonical orientation
+     * @param size width and height of the board
+     * @return returns the bit index on the original board
+     */
+    public static int fromCanonical(int square, int symmetry, int size){
+        return applyToSquare(square, inverse(symmetry), size);
+    }
+
+    /**
+     * The symmetry that undoes another. Mirrors undo themselves, but after a swap of x and y
+     * the mirror of x has become a mirror of y and the other way round.
+     *
+     * @param symmetry number from 0 to 7
+     * @return returns the inverse symmetry
+     */
+    public static int inverse(int symmetry){
+        if((symmetry & 4) == 0){
+            return symmetry;
+        }
+        return 4 | ((symmetry & 1) << 1) | ((symmetry & 2) >>> 1);
+    }
+
+    /**
+     * Finds the symmetry giving the canonical form of a position, the one whose own pieces and
+     * then other pieces are smallest as unsigned numbers
+     *
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @return returns the symmetry to apply to get the canonical form
+     */
+    public static int canonicalSymmetry(long own, long opp){
+        return canonicalSymmetry(own, opp, 8);
+    }
+
+    public static int canonicalSymmetry(long own, long opp, int size){
+        int best = IDENTITY;
+        long bestOwn = own;
+        long bestOpp = opp;
+        for(int symmetry = 1; symmetry<COUNT; symmetry++){
+            long o = apply(own, symmetry, size);
+            int compare = Long.compareUnsigned(o, bestOwn);
+            if(compare > 0){
+                continue;
+            }
+            long p = apply(opp, symmetry, size);
+            if(compare < 0 || Long.compareUnsigned(p, bestOpp) < 0){
+                best = symmetry;
+                bestOwn = o;
+                bestOpp = p;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Hash of the canonical form of a position, the same for all 8 orientations of it. The
+     * colors do not matter, only whose turn it is, so the position is hashed as if black moves.
+     *
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @return returns the canonical hash
+     */
+    public static long canonicalHash(long own, long opp){
+        return canonicalHash(own, opp, 8);
+    }
+
+    public static long canonicalHash(long own, long opp, int size){
+        int symmetry = canonicalSymmetry(own, opp, size);
+        return Zobrist.hash(apply(own, symmetry, size), apply(opp, symmetry, size), 'x');
+    }
+
+    /**
+     * Removes moves that are symmetries of other moves in a position that is its own mirror
+     * image, such as the start position, since they lead to the same game turned around.
+     * Positions with no symmetry, nearly all of them, only cost the check.
+     *
+     * @param moves legal moves
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @param size width and height of the board
+     * @return returns the moves with one move kept from each group of symmetric moves
+     */
+    public static long uniqueMoves(long moves, long own, long opp, int size){
+        int symmetries = 0;
+        for(int symmetry = 1; symmetry<COUNT; symmetry++){
+            if(apply(own, symmetry, size) == own && apply(opp, symmetry, size) == opp){
+                symmetries |= 1 << symmetry;
+            }
+        }
+        if(symmetries == 0){
+            return moves;
+        }
+        long unique = 0;
+        for(long bits = moves; bits != 0; bits &= bits - 1){
+            int square = Long.numberOfTrailingZeros(bits);
+            if(((moves >>> square) & 1L) == 0){
+                continue;
+            }
+            unique |= 1L << square;
+            for(int symmetry = 1; symmetry<COUNT; symmetry++){
+                if((symmetries & (1 << symmetry)) != 0){
+                    moves &= ~(1L << applyToSquare(square, symmetry, size));
+                }
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Moves a square to the canonical orientation of its position. A position that is its own
+     * mirror image has more than one symmetry giving its canonical form, so the smallest square
+     * any of them gives is taken, and moves that are symmetries of each other end up the same.
+     *
+     * @param square bit index of the square
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @param size width and height of the board
+     * @return returns the bit index in the canonical orientation
+     */
+    public static int canonicalSquare(int square, long own, long opp, int size){
+        int canonical = canonicalSymmetry(own, opp, size);
+        long canonicalOwn = apply(own, canonical, size);
+        long canonicalOpp = apply(opp, canonical, size);
+        int best = applyToSquare(square, canonical, size);
+        for(int symmetry = 0; symmetry<COUNT; symmetry++){
+            if(symmetry != canonical && apply(own, symmetry, size) == canonicalOwn && apply(opp, symmetry, size) == canonicalOpp){
+                best = Math.min(best, applyToSquare(square, symmetry, size));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * -----------BIT TRICK CODE--------------
+     */
+
+    //swaps x and y, bit x * 8 + y goes to bit y * 8 + x
+    private static long transpose(long bits){
+        long t = 0x0F0F0F0F00000000L & (bits ^ (bits << 28));
+        bits ^= t ^ (t >>> 28);
+        t = 0x3333000033330000L & (bits ^ (bits << 14));
+        bits ^= t ^ (t >>> 14);
+        t = 0x5500550055005500L & (bits ^ (bits << 7));
+        bits ^= t ^ (t >>> 7);
+        return bits;
+    }
+
+    //mirrors y, reversing the 8 bits of every byte
+    private static long mirrorBytes(long bits){
+        bits = ((bits >>> 1) & 0x5555555555555555L) | ((bits & 0x5555555555555555L) << 1);
+        bits = ((bits >>> 2) & 0x3333333333333333L) | ((bits & 0x3333333333333333L) << 2);
+        bits = ((bits >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((bits & 0x0F0F0F0F0F0F0F0FL) << 4);
+        return bits;
+    }
+}
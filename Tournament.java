@@ -0,0 +1,516 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+/*
+ * File: Tournament.java
+ *
+ * Command line tool that plays two CPU players against each other without any prompts, many
+ * games at once on a thread pool, and reports the result of player A against player B for
+ * each board size: wins, draws and losses, the Elo difference they imply, the nodes per
+ * second of each search and percentiles of the time each move took.
+ *
+ * Players are written as type[:depth][:evaluator]
+ *   random            plays a random legal move
+ *   minimax:N         ReversiBoard style minimax copying the board, cut off at depth N
+ *   search:N          in place alpha-beta search to depth N
+ *   timed:MS          in place search deepening until MS milliseconds per move run out
+ * The in place players take an evaluator of heuristic (the default), mobility or
+ * patterns=FILE, e.g. "search:6:mobility".
+ *
+ * Games are played on BitBoards and every player searches with state of its own, so games on
+ * different threads never share state. Every pair of games starts from the same random
+ * opening with the colors swapped, so neither player gains from the opening it was given.
+ * -record=FILE appends every game to a GameRecordWriter file, the opening included.
+ *
+ * Usage: java Tournament -a=PLAYER -b=PLAYER [-games=N] [-sizes=4,6,8] [-threads=N]
+ *                        [-opening=N] [-seed=N] [-record=FILE]
+ */
+public class Tournament {
+
+    private static final int TABLE_MEGABYTES = 4;
+
+    private PlayerSpec a;
+    private PlayerSpec b;
+    private int openingMoves;
+    private long seed;
+    //where the games are logged, null for nowhere
+    private GameRecordWriter recorder;
+    //one Search per worker thread and player, reused from game to game
+    private ThreadLocal<Search[]> searches = ThreadLocal.withInitial(() -> new Search[2]);
+
+    public static void main(String[] args) throws IOException {
+        String a = null;
+        String b = null;
+        int games = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int openingMoves = 4;
+        long seed = 1;
+        int[] sizes = {4, 6, 8};
+        String record = null;
+        for(String arg: args){
+            if(arg.startsWith("-a=")){
+                a = arg.substring("-a=".length());
+            }
+            else if(arg.startsWith("-b=")){
+                b = arg.substring("-b=".length());
+            }
+            else if(arg.startsWith("-games=")){
+                games = Integer.parseInt(arg.substring("-games=".length()));
+            }
+            else if(arg.startsWith("-threads=")){
+                threads = Math.max(1, Integer.parseInt(arg.substring("-threads=".length())));
+            }
+            else if(arg.startsWith("-opening=")){
+                openingMoves = Integer.parseInt(arg.substring("-opening=".length()));
+            }
+            else if(arg.startsWith("-seed=")){
+                seed = Long.parseLong(arg.substring("-seed=".length()));
+            }
+            else if(arg.startsWith("-record=")){
+                record = arg.substring("-record=".length());
+            }
+            else if(arg.startsWith("-sizes=")){
+                String[] parts = arg.substring("-sizes=".length()).split(",");
+                sizes = new int[parts.length];
+                for(int i = 0; i<parts.length; i++){
+                    sizes[i] = Integer.parseInt(parts[i].trim());
+                    if(sizes[i] != 4 && sizes[i] != 6 && sizes[i] != 8){
+                        System.out.println("Board sizes must be 4, 6 or 8");
+                        return;
+                    }
+                }
+            }
+            else{
+                System.out.println("Unknown option " + arg);
+                return;
+            }
+        }
+        if(a == null || b == null){
+            System.out.println("Usage: java Tournament -a=PLAYER -b=PLAYER [-games=N] [-sizes=4,6,8] [-threads=N] [-opening=N] [-seed=N] [-record=FILE]");
+            System.out.println("PLAYER is random, minimax:N, search:N or timed:MS, the last two optionally followed by");
+            System.out.println(":heuristic, :mobility or :patterns=FILE");
+            return;
+        }
+
+        Tournament tournament;
+        try{
+            tournament = new Tournament(PlayerSpec.parse(a), PlayerSpec.parse(b), openingMoves, seed);
+        }
+        catch(IllegalArgumentException e){
+            System.out.println(e.getMessage());
+            return;
+        }
+        if(record != null){
+            tournament.setRecorder(new GameRecordWriter(Paths.get(record)));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try{
+            for(int size: sizes){
+                System.out.println(tournament.play(size, games, pool).report(a, b));
+            }
+        }
+        finally{
+            pool.shutdown();
+            if(tournament.recorder != null){
+                tournament.recorder.close();
+                System.out.println("Recorded " + tournament.recorder.getGames() + " games in " + record);
+            }
+        }
+    }
+
+    /**
+     * @param a first player
+     * @param b second player
+     * @param openingMoves number of random moves played before the players take over
+     * @param seed seed of the random openings
+     */
+    public Tournament(PlayerSpec a, PlayerSpec b, int openingMoves, long seed){
+        this.a = a;
+        this.b = b;
+        this.openingMoves = openingMoves;
+        this.seed = seed;
+    }
+
+    /**
+     * Plays the given number of games on one board size, spread over the pool's threads
+     *
+     * @param size width and height of the board
+     * @param games number of games, player A is black in the even numbered ones
+     * @param pool threads to play on
+     * @return returns the combined results
+     */
+    public Results play(int size, int games, ExecutorService pool){
+        long start = System.nanoTime();
+        List<Future<GameResult>> futures = new ArrayList<Future<GameResult>>();
+        for(int i = 0; i<games; i++){
+            int game = i;
+            futures.add(pool.submit(() -> playGame(size, game)));
+        }
+        Results results = new Results(size);
+        for(Future<GameResult> future: futures){
+            try{
+                results.add(future.get());
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Tournament interrupted", e);
+            }
+            catch(ExecutionException e){
+                throw new IllegalStateException("Game failed", e.getCause());
+            }
+        }
+        results.wallNanos = System.nanoTime() - start;
+        return results;
+    }
+
+    /**
+     * Plays one game to the end
+     *
+     * @param size width and height of the board
+     * @param game number of the game, which decides the colors and the opening
+     * @return returns the piece difference for player A and the cost of every move
+     */
+    public GameResult playGame(int size, int game){
+        BitBoard board = new BitBoard(size);
+        board.initBoard();
+        boolean aIsBlack = game % 2 == 0;
+        Search[] cached = searches.get();
+        Player<BitBoard> playerA = a.create(board, aIsBlack ? COLOR.BLACK : COLOR.WHITE, cached, 0);
+        Player<BitBoard> playerB = b.create(board, aIsBlack ? COLOR.WHITE : COLOR.BLACK, cached, 1);
+        GameResult result = new GameResult();
+        GameRecord record = null;
+        if(recorder != null){
+            record = new GameRecord(size, (aIsBlack ? a : b).toString(), (aIsBlack ? b : a).toString());
+        }
+
+        //both games of a pair get the same opening
+        Random random = new Random(seed * 1000003L + size * 7919L + game / 2);
+        int ply = 0;
+        while(!board.isGameOver()){
+            //the board keeps the player to move, minimax plays for whoever that is
+            char turn = board.hasCurrentTurn();
+            long moves = board.movesFor(turn);
+            if(moves == 0){
+                board.passTurn();
+                if(record != null){
+                    record.addPass();
+                }
+                continue;
+            }
+            long occupied = board.getBlack() | board.getWhite();
+            if(ply < openingMoves){
+                int skip = random.nextInt(Long.bitCount(moves));
+                for(int i = 0; i<skip; i++){
+                    moves &= moves - 1;
+                }
+                int square = Long.numberOfTrailingZeros(moves);
+                board.movePiece(BitBoard.squareX(square), BitBoard.squareY(square), turn);
+            }
+            else{
+                boolean aToMove = (turn == 'x') == aIsBlack;
+                PlayerSpec spec = aToMove ? a : b;
+                Player<BitBoard> player = aToMove ? playerA : playerB;
+                long moveStart = System.nanoTime();
+                if(!player.cpuMove(player.getPlayerType())){
+                    throw new IllegalStateException(spec + " found no move with moves to play");
+                }
+                long elapsed = System.nanoTime() - moveStart;
+                long nodes = 0;
+                if(player.getSearchContext() != null){
+                    nodes = player.getSearchContext().getNodes();
+                }
+                else if(player.getSearch() != null){
+                    nodes = player.getSearch().getNodes();
+                }
+                result.record(aToMove ? 0 : 1, elapsed, nodes);
+            }
+            if(record != null){
+                int square = Long.numberOfTrailingZeros((board.getBlack() | board.getWhite()) & ~occupied);
+                record.addMove(MoveList.move(BitBoard.squareX(square), BitBoard.squareY(square)));
+            }
+            ply++;
+        }
+        result.diffA = aIsBlack ? board.valueDiffBlack() : -board.valueDiffBlack();
+        if(record != null){
+            try{
+                recorder.append(record);
+            }
+            catch(IOException e){
+                throw new IllegalStateException("Could not record the game", e);
+            }
+        }
+        return result;
+    }
+
+    //logs every game played from now on to the writer, null to stop
+    public void setRecorder(GameRecordWriter recorder){
+        this.recorder = recorder;
+    }
+
+    /**
+     * -----------PLAYER DESCRIPTION CODE--------------
+     */
+
+    //a player as written on the command line
+    public static class PlayerSpec {
+
+        public static final int RANDOM = 1;
+        public static final int MINIMAX = 3;
+        public static final int SEARCH = 4;
+
+        private String text;
+        private int type;
+        private int depth;
+        private long moveTimeMillis;
+        private Evaluator evaluator;
+
+        /**
+         * Reads a player description, see the top of the file
+         *
+         * @param text description such as "search:6:mobility"
+         * @return returns the player description
+         * @throws IllegalArgumentException if the description cannot be read
+         * @throws IOException if the evaluator's file cannot be read
+         */
+        public static PlayerSpec parse(String text) throws IOException {
+            PlayerSpec spec = new PlayerSpec();
+            spec.text = text;
+            String[] parts = text.split(":");
+            try{
+                if(parts[0].equals("random") && parts.length == 1){
+                    spec.type = RANDOM;
+                }
+                else if(parts[0].equals("minimax") && parts.length == 2){
+                    spec.type = MINIMAX;
+                    spec.depth = Integer.parseInt(parts[1]);
+                }
+                else if(parts[0].equals("search") && parts.length >= 2){
+                    spec.type = SEARCH;
+                    spec.depth = Integer.parseInt(parts[1]);
+                }
+                else if(parts[0].equals("timed") && parts.length >= 2){
+                    spec.type = SEARCH;
+                    spec.depth = Integer.MAX_VALUE;
+                    spec.moveTimeMillis = Math.max(1, Long.parseLong(parts[1]));
+                }
+                else{
+                    throw new IllegalArgumentException("Unknown player " + text);
+                }
+            }
+            catch(NumberFormatException e){
+                throw new IllegalArgumentException("Player " + text + " needs a number after the colon", e);
+            }
+            if(parts.length > 2){
+                spec.evaluator = evaluator(parts[2]);
+            }
+            return spec;
+        }
+
+        private static Evaluator evaluator(String name) throws IOException {
+            if(name.equals("heuristic")){
+                return new HeuristicEvaluator();
+            }
+            if(name.equals("mobility")){
+                return new MobilityEvaluator();
+            }
+            if(name.startsWith("patterns=")){
+                return PatternEvaluator.load(Paths.get(name.substring("patterns=".length())), new MobilityEvaluator());
+            }
+            throw new IllegalArgumentException("Unknown evaluator " + name);
+        }
+
+        //builds the player for one game, reusing the worker thread's Search in slot
+        private Player<BitBoard> create(BitBoard board, COLOR color, Search[] cached, int slot){
+            if(type == MINIMAX){
+                Player<BitBoard> player = new Player<BitBoard>(board, color, MINIMAX);
+                player.setSearchDepth(depth);
+                return player;
+            }
+            if(type != SEARCH){
+                return new Player<BitBoard>(board, color, type);
+            }
+            if(cached[slot] == null){
+                cached[slot] = new Search(TABLE_MEGABYTES);
+            }
+            Search search = cached[slot];
+            //a fresh table for every game, so a game's result does not depend on which thread played it
+            search.getTable().clear();
+            search.setEvaluator(evaluator == null ? new HeuristicEvaluator() : evaluator);
+            Player<BitBoard> player = new Player<BitBoard>(board, color, SEARCH, search);
+            player.setSearchDepth(depth);
+            player.setMoveTimeMillis(moveTimeMillis);
+            return player;
+        }
+
+        @Override
+        public String toString(){
+            return text;
+        }
+    }
+
+    /**
+     * -----------RESULT CODE--------------
+     */
+
+    //outcome of one game and the cost of each player's moves
+    public static class GameResult {
+        private int diffA;
+        private long[][] latencies = {new long[32], new long[32]};
+        private int[] moves = new int[2];
+        private long[] nodes = new long[2];
+
+        private void record(int player, long nanos, long searched){
+            if(moves[player] == latencies[player].length){
+                latencies[player] = Arrays.copyOf(latencies[player], moves[player] * 2);
+            }
+            latencies[player][moves[player]++] = nanos;
+            nodes[player] += searched;
+        }
+
+        //final piece difference from player A's view
+        public int getDiffA() {
+            return diffA;
+        }
+    }
+
+    //results of every game on one board size
+    public static class Results {
+        private int size;
+        private int wins;
+        private int draws;
+        private int losses;
+        private long wallNanos;
+        private long[][] latencies = {new long[1024], new long[1024]};
+        private int[] moves = new int[2];
+        private long[] nodes = new long[2];
+        private long[] thinkNanos = new long[2];
+
+        public Results(int size){
+            this.size = size;
+        }
+
+        public void add(GameResult game){
+            if(game.diffA > 0){
+                wins++;
+            }
+            else if(game.diffA < 0){
+                losses++;
+            }
+            else{
+                draws++;
+            }
+            for(int p = 0; p<2; p++){
+                if(moves[p] + game.moves[p] > latencies[p].length){
+                    latencies[p] = Arrays.copyOf(latencies[p], Math.max(latencies[p].length * 2, moves[p] + game.moves[p]));
+                }
+                System.arraycopy(game.latencies[p], 0, latencies[p], moves[p], game.moves[p]);
+                moves[p] += game.moves[p];
+                nodes[p] += game.nodes[p];
+                for(int i = 0; i<game.moves[p]; i++){
+                    thinkNanos[p] += game.latencies[p][i];
+                }
+            }
+        }
+
+        /**
+         * Elo difference of A over B from the score fraction, with a 95% confidence margin
+         *
+         * @return returns {difference, margin}, an infinite difference if one player won every game
+         */
+        public double[] elo(){
+            int games = wins + draws + losses;
+            if(games == 0){
+                return new double[] {0, Double.POSITIVE_INFINITY};
+            }
+            double score = (wins + 0.5 * draws) / games;
+            //variance of a single game's score around the mean
+            double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2) + losses * Math.pow(score, 2)) / games;
+            double error = 1.96 * Math.sqrt(variance / games);
+            double low = eloOf(Math.max(0, score - error));
+            double high = eloOf(Math.min(1, score + error));
+            return new double[] {eloOf(score), (high - low) / 2};
+        }
+
+        private static double eloOf(double score){
+            if(score <= 0){
+                return Double.NEGATIVE_INFINITY;
+            }
+            if(score >= 1){
+                return Double.POSITIVE_INFINITY;
+            }
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        /**
+         * Percentile of the move times of one player
+         *
+         * @param player 0 for A, 1 for B
+         * @param percentile from 0 to 100
+         * @return returns the time in nanoseconds, 0 if the player made no moves
+         */
+        public long latencyPercentile(int player, double percentile){
+            if(moves[player] == 0){
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies[player], moves[player]);
+            Arrays.sort(sorted);
+            int rank = (int)Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+        }
+
+        /**
+         * Nodes searched per second of thinking time, 0 for players that do not count nodes
+         *
+         * @param player 0 for A, 1 for B
+         * @return returns the nodes per second
+         */
+        public double nodesPerSecond(int player){
+            if(thinkNanos[player] == 0){
+                return 0;
+            }
+            return nodes[player] * 1e9 / thinkNanos[player];
+        }
+
+        public String report(String a, String b){
+            int games = wins + draws + losses;
+            double[] elo = elo();
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("%dx%d: %d games of A = %s against B = %s in %.1f s%n", size, size, games, a, b, wallNanos / 1e9));
+            text.append(String.format("  A wins %d, draws %d, loses %d, scoring %.1f%%%n", wins, draws, losses,
+                games == 0 ? 0 : 100.0 * (wins + 0.5 * draws) / games));
+            if(Double.isInfinite(elo[0])){
+                text.append(String.format("  Elo of A over B: %s (one player won every game)%n", elo[0] > 0 ? "+inf" : "-inf"));
+            }
+            else{
+                text.append(String.format("  Elo of A over B: %+.0f +/- %.0f%n", elo[0], elo[1]));
+            }
+            String[] names = {"A", "B"};
+            for(int p = 0; p<2; p++){
+                text.append(String.format("  %s: %d moves, %s nodes/s, move time p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    names[p], moves[p], nodes[p] == 0 ? "-" : String.format("%.0f", nodesPerSecond(p)),
+                    latencyPercentile(p, 50) / 1e6, latencyPercentile(p, 90) / 1e6,
+                    latencyPercentile(p, 99) / 1e6, latencyPercentile(p, 100) / 1e6));
+            }
+            return text.toString();
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getDraws() {
+            return draws;
+        }
+
+        public int getLosses() {
+            return losses;
+        }
+    }
+}
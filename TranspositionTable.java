@@ -0,0 +1,173 @@
+/*
+ * File: TranspositionTable.java
+ *
+ * Fixed size hash table of search results, stored in a long[] with two longs per entry:
+ * the full Zobrist key XOR the packed result, then the packed result. The number of entries
+ * is the largest power of two that fits in the memory budget, so the slot is found by masking
+ * the key.
+ *
+ * The table is safe to share between threads without locking. A probe only accepts an entry
+ * whose two longs XOR back to the key, so an entry torn by two threads writing at once is
+ * treated as a miss. The counters are not synchronized and are approximate when shared.
+ *
+ * Packed result layout, lowest bit first:
+ *   bits 0-7    depth searched
+ *   bits 8-9    bound type, 0 marks an empty slot
+ *   bits 10-17  best move square plus one, 0 when there is no move
+ *   bits 18-25  generation of the search that stored it
+ *   bits 32-63  score
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;
+    public static final int UPPER = 3;
+    public static final int MAX_DEPTH = 255;
+
+    private static final int BYTES_PER_ENTRY = 16;
+
+    private long[] entries;
+    private int indexMask;
+    private int generation;
+    private long probes;
+    private long hits;
+    private long stores;
+
+    /**
+     * @param megabytes memory budget of the table, at least one entry is always allocated
+     */
+    public TranspositionTable(int megabytes){
+        long entryCount = Long.highestOneBit(Math.max(1, (long)megabytes * 1024 * 1024 / BYTES_PER_ENTRY));
+        entryCount = Math.min(entryCount, 1L << 29);
+        entries = new long[(int)entryCount * 2];
+        indexMask = (int)entryCount - 1;
+    }
+
+    /**
+     * Marks the start of a new search so entries from earlier searches are replaced first
+     */
+    public void newSearch(){
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Empties the table and resets the counters
+     */
+    public void clear(){
+        java.util.Arrays.fill(entries, 0);
+        generation = 0;
+        probes = 0;
+        hits = 0;
+        stores = 0;
+    }
+
+    /**
+     * Looks up a position
+     *
+     * @param key Zobrist hash of the position
+     * @return returns the packed result, 0 if the position is not in the table
+     */
+    public long probe(long key){
+        probes++;
+        int slot = ((int)key & indexMask) << 1;
+        long data = entries[slot + 1];
+        if(data != 0 && (entries[slot] ^ data) == key){
+            hits++;
+            return data;
+        }
+        return 0;
+    }
+
+    /**
+     * Stores a search result. An entry from the current search is only replaced by a
+     * result of the same position or one searched at least as deep.
+     *
+     * @param key Zobrist hash of the position
+     * @param depth depth searched, clamped to MAX_DEPTH
+     * @param bound EXACT, LOWER or UPPER
+     * @param score score of the position for the player to move
+     * @param move bit index of the best move, -1 if there is none
+     */
+    public void store(long key, int depth, int bound, int score, int move){
+        int slot = ((int)key & indexMask) << 1;
+        long old = entries[slot + 1];
+        boolean samePosition = old != 0 && (entries[slot] ^ old) == key;
+        depth = Math.min(Math.max(depth, 0), MAX_DEPTH);
+        if(old != 0 && !samePosition && generationOf(old) == generation && depthOf(old) > depth){
+            return;
+        }
+        //keep the old best move when the new result has none
+        if(move < 0 && samePosition){
+            move = moveOf(old);
+        }
+        long data = pack(depth, bound, score, move, generation);
+        entries[slot] = key ^ data;
+        entries[slot + 1] = data;
+        stores++;
+    }
+
+    /**
+     * Fraction of a sample of slots in use by the current search, for sizing the table
+     *
+     * @return returns a value between 0 and 1
+     */
+    public double usage(){
+        int sample = Math.min(indexMask + 1, 1000);
+        int used = 0;
+        for(int i = 0; i<sample; i++){
+            long data = entries[(i << 1) + 1];
+            if(data != 0 && generationOf(data) == generation){
+                used++;
+            }
+        }
+        return (double)used / sample;
+    }
+
+    /**
+     * -----------PACKING CODE--------------
+     */
+
+    public static long pack(int depth, int bound, int score, int move, int generation){
+        return (long)depth | ((long)bound << 8) | ((long)(move + 1) << 10) | ((long)generation << 18) | ((long)score << 32);
+    }
+
+    public static int depthOf(long data){
+        return (int)(data & 0xFF);
+    }
+
+    public static int boundOf(long data){
+        return (int)((data >>> 8) & 3);
+    }
+
+    public static int moveOf(long data){
+        return (int)((data >>> 10) & 0xFF) - 1;
+    }
+
+    public static int generationOf(long data){
+        return (int)((data >>> 18) & 0xFF);
+    }
+
+    public static int scoreOf(long data){
+        return (int)(data >> 32);
+    }
+
+    /**
+     * ---------GETTERS----------
+     */
+
+    public int getEntryCount() {
+        return indexMask + 1;
+    }
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getStores() {
+        return stores;
+    }
+}
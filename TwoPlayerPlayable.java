@@ -1,20 +1,52 @@
 import java.util.List;
 /*
  * File: TwoPlayerPlayable.java
- * 
+ *
  * Holds the functionality of a formal model of a two-player, perfect knowledge, zero sum game.
+ * The type parameter is the concrete board class, so successor states keep their representation.
  */
-public interface TwoPlayerPlayable {
+public interface TwoPlayerPlayable<T extends TwoPlayerPlayable<T>> {
     //Initial State, how the game is set up
     public void initBoard();
     //Player, defines which player has the move
     public char hasCurrentTurn();
+    //Sets the player to move, e.g. after the other player had to pass
+    public void setPlayerTurn(char playerTurn);
     //Actions, returns legal moves
-    public List<ReversiBoard> findValidMoves(char playerChar);
+    public List<T> findValidMoves(char playerChar);
+    //Actions put in a reusable list, the list is cleared first
+    public void findValidMoves(char playerChar, List<T> children);
     //Transition model, defines the results of a move
     public boolean movePiece(int x, int y, char playerChar);
     //Terminal test, determines if the game is over
     public boolean isGameOver();
+    //Returns if the player has any legal move, without building the moves
+    public boolean hasValidMove(char playerChar);
     //Utility function, dertimes the numberic value of a terminal state
     public int getValue(char playerChar);
+
+    //Moves a piece, leaving the board untouched if the move is not legal
+    public boolean safeMove(int x, int y, char playerChar);
+    //Legal moves as (x, y) board locations
+    public List<List<Integer>> storeValidMoves(char playerChar);
+    //Legal moves put in a reusable list as MoveList moves, the list is cleared first
+    public void generateMoves(char playerChar, MoveList moves);
+    //Plays a MoveList move on this board
+    public boolean apply(int move, char playerChar);
+    //Copy of the board with a MoveList move played on it, null if the move is not legal
+    public T applied(int move, char playerChar);
+    //Adversarial search from the given board, the cutoff depth and best move are kept in the context
+    public int minimax(boolean maxPlayer, int level, int alpha, int beta, T board, SearchContext<T> context);
+    //Plays the best move a call to minimax found with the context, returns it as a MoveList move
+    public int cpuMinimax(SearchContext<T> context);
+    //Difference in number of pieces in favor of black
+    public int valueDiffBlack();
+    //Number of squares nobody has played on yet
+    public int getEmptyCount();
+    //Width and height of the board
+    public int getGameSize();
+    //Piece on a board location, 'x', 'o' or a space
+    public char pieceAt(int x, int y);
+    //Prints out the board
+    public void printBoard();
 }
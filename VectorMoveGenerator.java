@@ -0,0 +1,223 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+/*
+ * File: VectorMoveGenerator.java
+ *
+ * Move generation with the Vector API. On BitBoard's 64 bit layout the eight directions are
+ * eight lanes: the four directions that shift bits up are one vector of four longs and the four
+ * that shift bits down are another, so every step of the flood fill moves all eight directions
+ * at once with one variable shift per vector. The flips of a move are found the same way, and a
+ * lane only keeps its line if the line ends on one of the player's own pieces.
+ *
+ * On WideBoard's rows the lanes are rows instead, four rows shifted per instruction, and the
+ * directions are taken one after the other as in the scalar code.
+ *
+ * Compile and run with "--add-modules jdk.incubator.vector". Only MoveGenerators names this
+ * class, so the rest of the program runs without the module.
+ */
+public class VectorMoveGenerator implements MoveGenerator {
+
+    //four lanes of 64 bits, a size every x86 and ARM processor of the last decade does in one register
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_256;
+    private static final int LANES = SPECIES.length();
+    //BitBoard directions as x, y steps, the ones shifting bits up first
+    private static final int[] UP_DX = {0, 1, 1, 1};
+    private static final int[] UP_DY = {1, -1, 0, 1};
+    //WideBoard directions, in the order of WideBoard.DX and DY
+    private static final int[] DX = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DY = {-1, 0, 1, -1, 1, -1, 0, 1};
+    //one empty row above the board's rows, and a vector of them below, so no load or store leaves the array
+    private static final int PAD = 1;
+
+    private final int gameSize;
+    //longest run of the other player's pieces a line can hold, less the one found first
+    private final int growSteps;
+    //BitBoard layout
+    private final long mask;
+    //bits a step moves in each direction, up or down
+    private final LongVector shifts;
+    private final LongVector upMasks;
+    private final LongVector downMasks;
+    //WideBoard layout, rows y are at index PAD + y
+    private final long rowMask;
+    private final long[] ownRows;
+    private final long[] oppRows;
+    private final long[] emptyRows;
+    private final long[] runRows;
+    private final long[] moveRows;
+
+    /**
+     * @param gameSize width and height of the board, at most WideBoard.MAX_SIZE
+     */
+    public VectorMoveGenerator(int gameSize){
+        if(gameSize < 1 || gameSize > WideBoard.MAX_SIZE){
+            throw new IllegalArgumentException("No vector move generator for a board of size " + gameSize);
+        }
+        this.gameSize = gameSize;
+        this.growSteps = Math.max(0, gameSize - 3);
+        if(gameSize <= BitBoard.MAX_SIZE){
+            mask = BitBoard.squareMask(gameSize);
+            long[] shift = new long[LANES];
+            long[] upMask = new long[LANES];
+            long[] downMask = new long[LANES];
+            for(int d = 0; d<LANES; d++){
+                shift[d] = UP_DX[d] * 8 + UP_DY[d];
+                upMask[d] = targets(UP_DX[d], UP_DY[d]);
+                downMask[d] = targets(-UP_DX[d], -UP_DY[d]);
+            }
+            shifts = LongVector.fromArray(SPECIES, shift, 0);
+            upMasks = LongVector.fromArray(SPECIES, upMask, 0);
+            downMasks = LongVector.fromArray(SPECIES, downMask, 0);
+        }
+        else{
+            mask = 0;
+            shifts = null;
+            upMasks = null;
+            downMasks = null;
+        }
+        rowMask = (1L << gameSize) - 1;
+        int length = PAD + gameSize + PAD + LANES;
+        ownRows = new long[length];
+        oppRows = new long[length];
+        emptyRows = new long[length];
+        runRows = new long[length];
+        moveRows = new long[length];
+    }
+
+    //squares of a BitBoard a step of (dx, dy) can land on from a square of the board
+    private long targets(int dx, int dy){
+        long result = 0;
+        for(int x = 0; x<gameSize; x++){
+            for(int y = 0; y<gameSize; y++){
+                int fromX = x - dx;
+                int fromY = y - dy;
+                if(fromX >= 0 && fromX < gameSize && fromY >= 0 && fromY < gameSize){
+                    result |= 1L << BitBoard.square(x, y);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * -----------64 BIT CODE--------------
+     */
+
+    /**
+     * Floods all eight directions at once, the same steps as BitBoard.legalMoves()
+     *
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @return returns the bits of every empty square that flips at least one piece
+     */
+    public long legalMoves(long own, long opp){
+        LongVector ownV = LongVector.broadcast(SPECIES, own);
+        LongVector oppV = LongVector.broadcast(SPECIES, opp);
+        //the other player's pieces a step can land on, per direction
+        LongVector oppUp = oppV.and(upMasks);
+        LongVector oppDown = oppV.and(downMasks);
+        LongVector runUp = ownV.lanewise(VectorOperators.LSHL, shifts).and(oppUp);
+        LongVector runDown = ownV.lanewise(VectorOperators.LSHR, shifts).and(oppDown);
+        for(int i = 0; i<growSteps; i++){
+            runUp = runUp.or(runUp.lanewise(VectorOperators.LSHL, shifts).and(oppUp));
+            runDown = runDown.or(runDown.lanewise(VectorOperators.LSHR, shifts).and(oppDown));
+        }
+        LongVector ends = runUp.lanewise(VectorOperators.LSHL, shifts).and(upMasks)
+            .or(runDown.lanewise(VectorOperators.LSHR, shifts).and(downMasks));
+        return ends.reduceLanes(VectorOperators.OR) & ~(own | opp) & mask;
+    }
+
+    /**
+     * Floods from the move in all eight directions at once and keeps the lines that end on one of
+     * the player's own pieces, the same result as BitBoard.flips()
+     *
+     * @param square bit index of the square played
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @return returns the bits of every flipped piece, 0 if the move is not legal
+     */
+    public long flips(int square, long own, long opp){
+        LongVector moveV = LongVector.broadcast(SPECIES, 1L << square);
+        LongVector ownV = LongVector.broadcast(SPECIES, own);
+        LongVector oppV = LongVector.broadcast(SPECIES, opp);
+        LongVector oppUp = oppV.and(upMasks);
+        LongVector oppDown = oppV.and(downMasks);
+        LongVector runUp = moveV.lanewise(VectorOperators.LSHL, shifts).and(oppUp);
+        LongVector runDown = moveV.lanewise(VectorOperators.LSHR, shifts).and(oppDown);
+        for(int i = 0; i<growSteps; i++){
+            runUp = runUp.or(runUp.lanewise(VectorOperators.LSHL, shifts).and(oppUp));
+            runDown = runDown.or(runDown.lanewise(VectorOperators.LSHR, shifts).and(oppDown));
+        }
+        //a line is only flipped if the square past its end is the player's own
+        VectorMask<Long> openUp = runUp.lanewise(VectorOperators.LSHL, shifts).and(upMasks).and(ownV).compare(VectorOperators.EQ, 0L);
+        VectorMask<Long> openDown = runDown.lanewise(VectorOperators.LSHR, shifts).and(downMasks).and(ownV).compare(VectorOperators.EQ, 0L);
+        return runUp.blend(0L, openUp).or(runDown.blend(0L, openDown)).reduceLanes(VectorOperators.OR);
+    }
+
+    /**
+     * -----------ROW CODE--------------
+     */
+
+    /**
+     * Shift based move generation over WideBoard's rows, LANES rows at a time. Rows that are
+     * grown earlier in a pass are read again later in the same pass, which only makes lines
+     * reach their full length in fewer passes. The last vector of a pass runs past the board
+     * into the padding rows, which stay empty because every result is masked by the other
+     * player's pieces or the empty squares, and both are 0 there.
+     *
+     * @param own pieces of the player to move, one long per row
+     * @param opp pieces of the other player, one long per row
+     * @param moves filled with the legal moves, one long per row
+     */
+    public void legalMoves(long[] own, long[] opp, long[] moves){
+        System.arraycopy(own, 0, ownRows, PAD, gameSize);
+        System.arraycopy(opp, 0, oppRows, PAD, gameSize);
+        for(int y = 0; y<gameSize; y++){
+            emptyRows[PAD + y] = ~(own[y] | opp[y]) & rowMask;
+            moveRows[PAD + y] = 0;
+        }
+        for(int d = 0; d<DX.length; d++){
+            int dx = DX[d];
+            int dy = DY[d];
+            for(int y = 0; y<gameSize; y += LANES){
+                shift(ownRows, y, dx, dy).and(LongVector.fromArray(SPECIES, oppRows, PAD + y)).intoArray(runRows, PAD + y);
+            }
+            for(int i = 0; i<growSteps; i++){
+                LongVector grown = LongVector.zero(SPECIES);
+                for(int y = 0; y<gameSize; y += LANES){
+                    LongVector run = LongVector.fromArray(SPECIES, runRows, PAD + y);
+                    LongVector next = run.or(shift(runRows, y, dx, dy).and(LongVector.fromArray(SPECIES, oppRows, PAD + y)));
+                    grown = grown.or(next.and(run.not()));
+                    next.intoArray(runRows, PAD + y);
+                }
+                //no line got longer, so none will
+                if(grown.reduceLanes(VectorOperators.OR) == 0){
+                    break;
+                }
+            }
+            for(int y = 0; y<gameSize; y += LANES){
+                LongVector found = shift(runRows, y, dx, dy).and(LongVector.fromArray(SPECIES, emptyRows, PAD + y));
+                LongVector.fromArray(SPECIES, moveRows, PAD + y).or(found).intoArray(moveRows, PAD + y);
+            }
+        }
+        System.arraycopy(moveRows, PAD, moves, 0, gameSize);
+    }
+
+    //rows y to y + LANES - 1 of the given rows moved one step in direction (dx, dy)
+    private LongVector shift(long[] rows, int y, int dx, int dy){
+        LongVector v = LongVector.fromArray(SPECIES, rows, PAD + y - dy);
+        if(dx > 0){
+            return v.lanewise(VectorOperators.LSHL, 1).and(rowMask);
+        }
+        else if(dx < 0){
+            return v.lanewise(VectorOperators.LSHR, 1);
+        }
+        return v;
+    }
+
+    public int getGameSize(){
+        return gameSize;
+    }
+}
@@ -0,0 +1,697 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+/*
+ * File: WideBoard.java
+ *
+ * Representation of a board for a game of Reversi on boards too large for BitBoard, such as
+ * 10x10, 12x12 and 16x16, up to 26x26 so every column still has a letter. Each row of the board
+ * is one long per color, bit x of row y being square (x, y). Moves are found for every square
+ * at once by shifting whole boards of rows, where a step along a row is a bit shift and a step
+ * between rows is a step along the array, the same flood fill BitBoard does on 64 bits.
+ *
+ * The search plays and takes back moves in place with makeMove() and undoMove(), which keep the
+ * flipped squares on a stack inside the board. Implements TwoPlayerPlayable and plays
+ * identically to ReversiBoard.
+ */
+public class WideBoard implements TwoPlayerPlayable<WideBoard>{
+
+    public static final int MAX_SIZE = 26;
+    //steps of the eight directions, in the same order as the loops in ReversiBoard.movePiece()
+    private static final int[] DX = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DY = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    private int gameSize;
+    private char playerTurn;
+    private long[] black;
+    private long[] white;
+    private long rowMask;
+    //rows used while finding moves
+    private long[] moves;
+    private long[] run;
+    private long[] shifted;
+    //vector move generation, null for the scalar loops below
+    private MoveGenerator generator;
+    //squares flipped by the moves made with makeMove(), and how many each move flipped
+    private int[] undoSquares;
+    private int undoTop;
+    private int[] undoCounts;
+    private int undoDepth;
+
+    public WideBoard(int gameSize){
+        this(gameSize, 'x');
+        initBoard();
+    }
+
+    private WideBoard(int gameSize, char playerChar){
+        if(gameSize < 4 || gameSize > MAX_SIZE || gameSize % 2 != 0){
+            throw new IllegalArgumentException("WideBoard supports even sizes from 4 to " + MAX_SIZE + ", got " + gameSize);
+        }
+        this.gameSize = gameSize;
+        this.playerTurn = playerChar;
+        this.black = new long[gameSize];
+        this.white = new long[gameSize];
+        this.rowMask = (1L << gameSize) - 1;
+        this.moves = new long[gameSize];
+        this.run = new long[gameSize];
+        this.shifted = new long[gameSize];
+        this.undoSquares = new int[gameSize * 4];
+        this.undoCounts = new int[gameSize * gameSize];
+        this.generator = MoveGenerators.forRows(gameSize);
+    }
+
+    //copy of another board with the given player to move, sharing nothing with it
+    private WideBoard(WideBoard other, char playerChar){
+        this(other.gameSize, playerChar);
+        System.arraycopy(other.black, 0, black, 0, gameSize);
+        System.arraycopy(other.white, 0, white, 0, gameSize);
+        //the generator's scratch rows cannot be shared, so a copy gets its own
+        if(other.generator != null && generator == null){
+            generator = MoveGenerators.create(gameSize);
+        }
+    }
+
+    /**
+     * -------------GAMEPLAY CODE------------------
+     */
+
+    public void initBoard(){
+        Arrays.fill(black, 0);
+        Arrays.fill(white, 0);
+        int low = gameSize/2 - 1;
+        int high = gameSize/2;
+        setPiece(low, high, 'x');
+        setPiece(low, low, 'o');
+        setPiece(high, high, 'o');
+        setPiece(high, low, 'x');
+        playerTurn = 'x';
+        undoTop = 0;
+        undoDepth = 0;
+    }
+
+    public boolean movePiece(int x, int y, char playerChar){
+        //location already occupied or is off the board
+        if(x < 0 || x >= gameSize || y < 0 || y >= gameSize || pieceAt(x, y) != (char)32){
+            return false;
+        }
+        long[] own = playerChar == 'x' ? black : white;
+        long[] opp = playerChar == 'x' ? white : black;
+        boolean validPlay = false;
+        for(int d = 0; d<DX.length; d++){
+            int length = flipLength(x, y, d, own, opp);
+            for(int i = 1; i<=length; i++){
+                int flipX = x + DX[d] * i;
+                int flipY = y + DY[d] * i;
+                own[flipY] |= 1L << flipX;
+                opp[flipY] &= ~(1L << flipX);
+            }
+            validPlay |= length > 0;
+        }
+        if(!validPlay){
+            return false;
+        }
+        own[y] |= 1L << x;
+        playerTurn = playerChar == 'x' ? 'o' : 'x';
+        return true;
+    }
+
+    public boolean safeMove(int x, int y, char playerChar){
+        //movePiece never changes the board on an illegal move, so no copy is needed
+        if(movePiece(x, y, playerChar)){
+            return true;
+        }
+        else{
+            printBoard();
+            return false;
+        }
+    }
+
+    public List<WideBoard> findValidMoves(char playerChar){
+        ArrayList<WideBoard> validMovesList = new ArrayList<WideBoard>();
+        findValidMoves(playerChar, validMovesList);
+        return validMovesList;
+    }
+
+    public void findValidMoves(char playerChar, List<WideBoard> validMovesList){
+        validMovesList.clear();
+        MoveList list = new MoveList();
+        generateMoves(playerChar, list);
+        for(int i = 0; i<list.size(); i++){
+            WideBoard nextMoveBoard = new WideBoard(this, playerChar);
+            nextMoveBoard.apply(list.get(i), playerChar);
+            validMovesList.add(nextMoveBoard);
+        }
+    }
+
+    public List<List<Integer>> storeValidMoves(char playerChar){
+        ArrayList<List<Integer>> validMovesList = new ArrayList<List<Integer>>();
+        MoveList list = new MoveList();
+        generateMoves(playerChar, list);
+        for(int i = 0; i<list.size(); i++){
+            ArrayList<Integer> boardLocation = new ArrayList<Integer>();
+            boardLocation.add(MoveList.moveX(list.get(i)));
+            boardLocation.add(MoveList.moveY(list.get(i)));
+            validMovesList.add(boardLocation);
+        }
+        return validMovesList;
+    }
+
+    //legal moves in the order of the x, y loops of ReversiBoard, so both boards play the same games
+    public void generateMoves(char playerChar, MoveList list){
+        list.clear();
+        long[] legal = movesFor(playerChar);
+        for(int x = 0; x<gameSize; x++){
+            for(int y = 0; y<gameSize; y++){
+                if(((legal[y] >>> x) & 1L) != 0){
+                    list.add(x, y);
+                }
+            }
+        }
+    }
+
+    public boolean apply(int move, char playerChar){
+        return movePiece(MoveList.moveX(move), MoveList.moveY(move), playerChar);
+    }
+
+    public WideBoard applied(int move, char playerChar){
+        WideBoard nextMoveBoard = new WideBoard(this, playerChar);
+        if(nextMoveBoard.apply(move, playerChar)){
+            return nextMoveBoard;
+        }
+        return null;
+    }
+
+    /**
+     * -------------ROW SHIFTING CODE------------------
+     */
+
+    /**
+     * Finds the legal moves of the given player. The rows returned are reused by the next call.
+     *
+     * @param playerChar player to find moves for
+     * @return returns for each row y the bits x of the legal moves in it
+     */
+    public long[] movesFor(char playerChar){
+        if(playerChar == 'x'){
+            return legalMoves(black, white);
+        }
+        return legalMoves(white, black);
+    }
+
+    /**
+     * Shift based move generation over rows. For each direction the other player's pieces next
+     * to the player's own are found, the line is grown one square at a time until no line gets
+     * longer, and the empty squares one past the end of a line are moves.
+     *
+     * @param own pieces of the player to move
+     * @param opp pieces of the other player
+     * @return returns the legal moves, in rows that are reused by the next call
+     */
+    private long[] legalMoves(long[] own, long[] opp){
+        if(generator != null){
+            generator.legalMoves(own, opp, moves);
+            return moves;
+        }
+        Arrays.fill(moves, 0);
+        for(int d = 0; d<DX.length; d++){
+            shift(own, d, run);
+            for(int y = 0; y<gameSize; y++){
+                run[y] &= opp[y];
+            }
+            for(int i = 0; i<gameSize - 3; i++){
+                shift(run, d, shifted);
+                long grown = 0;
+                for(int y = 0; y<gameSize; y++){
+                    long next = run[y] | (shifted[y] & opp[y]);
+                    grown |= next ^ run[y];
+                    run[y] = next;
+                }
+                //no line got longer, so none will
+                if(grown == 0){
+                    break;
+                }
+            }
+            shift(run, d, shifted);
+            for(int y = 0; y<gameSize; y++){
+                moves[y] |= shifted[y] & ~(own[y] | opp[y]);
+            }
+        }
+        for(int y = 0; y<gameSize; y++){
+            moves[y] &= rowMask;
+        }
+        return moves;
+    }
+
+    //moves every square one step in direction d, squares stepping off the board are dropped
+    private void shift(long[] rows, int d, long[] result){
+        int dx = DX[d];
+        int dy = DY[d];
+        for(int y = 0; y<gameSize; y++){
+            int from = y - dy;
+            long row = from >= 0 && from < gameSize ? rows[from] : 0;
+            if(dx > 0){
+                row = (row << 1) & rowMask;
+            }
+            else if(dx < 0){
+                row >>>= 1;
+            }
+            result[y] = row;
+        }
+    }
+
+    //number of the other player's pieces a move on (x, y) flips in direction d
+    private int flipLength(int x, int y, int d, long[] own, long[] opp){
+        int length = 0;
+        int nextX = x + DX[d];
+        int nextY = y + DY[d];
+        while(nextX >= 0 && nextX < gameSize && nextY >= 0 && nextY < gameSize && ((opp[nextY] >>> nextX) & 1L) != 0){
+            length++;
+            nextX += DX[d];
+            nextY += DY[d];
+        }
+        if(length == 0 || nextX < 0 || nextX >= gameSize || nextY < 0 || nextY >= gameSize || ((own[nextY] >>> nextX) & 1L) == 0){
+            return 0;
+        }
+        return length;
+    }
+
+    /**
+     * -------------MAKE/UNMAKE CODE------------------
+     */
+
+    /**
+     * Plays a legal move for the player whose turn it is, in place. The flipped squares are kept
+     * on the board's own stack for undoMove().
+     *
+     * @param move MoveList move of a legal move for the player to move
+     * @return returns the number of pieces flipped
+     */
+    public int makeMove(int move){
+        int x = MoveList.moveX(move);
+        int y = MoveList.moveY(move);
+        long[] own = playerTurn == 'x' ? black : white;
+        long[] opp = playerTurn == 'x' ? white : black;
+        int flipped = 0;
+        for(int d = 0; d<DX.length; d++){
+            int length = flipLength(x, y, d, own, opp);
+            if(undoTop + length > undoSquares.length){
+                undoSquares = Arrays.copyOf(undoSquares, Math.max(undoSquares.length * 2, undoTop + length));
+            }
+            for(int i = 1; i<=length; i++){
+                int flipX = x + DX[d] * i;
+                int flipY = y + DY[d] * i;
+                own[flipY] |= 1L << flipX;
+                opp[flipY] &= ~(1L << flipX);
+                undoSquares[undoTop++] = MoveList.move(flipX, flipY);
+            }
+            flipped += length;
+        }
+        own[y] |= 1L << x;
+        undoCounts[undoDepth++] = flipped;
+        playerTurn = playerTurn == 'x' ? 'o' : 'x';
+        return flipped;
+    }
+
+    /**
+     * Takes back the last move made by makeMove(), giving the turn back to the player who made it
+     *
+     * @param move the move to take back
+     */
+    public void undoMove(int move){
+        playerTurn = playerTurn == 'x' ? 'o' : 'x';
+        long[] own = playerTurn == 'x' ? black : white;
+        long[] opp = playerTurn == 'x' ? white : black;
+        own[MoveList.moveY(move)] &= ~(1L << MoveList.moveX(move));
+        int flipped = undoCounts[--undoDepth];
+        for(int i = 0; i<flipped; i++){
+            int square = undoSquares[--undoTop];
+            own[MoveList.moveY(square)] &= ~(1L << MoveList.moveX(square));
+            opp[MoveList.moveY(square)] |= 1L << MoveList.moveX(square);
+        }
+    }
+
+    /**
+     * Gives the turn to the other player without placing a piece
+     */
+    public void passTurn(){
+        playerTurn = playerTurn == 'x' ? 'o' : 'x';
+    }
+
+    /**
+     * Copies the position and player to move into a new board
+     *
+     * @return returns a board independent of this one
+     */
+    public WideBoard copy(){
+        return new WideBoard(this, playerTurn);
+    }
+
+    /**
+     * Builds a WideBoard holding the same position as any other board
+     *
+     * @param board board to copy
+     * @param playerChar player to move on the copy
+     * @return returns a WideBoard with the same pieces
+     */
+    public static WideBoard fromBoard(TwoPlayerPlayable<?> board, char playerChar){
+        if(board instanceof WideBoard){
+            return new WideBoard((WideBoard)board, playerChar);
+        }
+        WideBoard result = new WideBoard(board.getGameSize(), playerChar);
+        for(int i = 0; i<result.gameSize; i++){
+            for(int j = 0; j<result.gameSize; j++){
+                result.setPiece(i, j, board.pieceAt(i, j));
+            }
+        }
+        return result;
+    }
+
+    private void setPiece(int x, int y, char piece){
+        black[y] &= ~(1L << x);
+        white[y] &= ~(1L << x);
+        if(piece == 'x'){
+            black[y] |= 1L << x;
+        }
+        else if(piece == 'o'){
+            white[y] |= 1L << x;
+        }
+    }
+
+    /**
+     * -----------MINIMAX CODE-------------
+     */
+
+    /**
+     * Recursively implements the H-Minimax algorithm in the same way as ReversiBoard.minimax(),
+     * so every representation picks the same moves.
+     *
+     * @param maxPlayer if the current iteration of the method is true in wanting to maximize the value for the player,
+     *                  minimizing value if false. Initial call should make this true.
+     * @param level Keeps track of the current depth of the tree. Inital call should make this 0.
+     * @param alpha Holds the value of alpha in the context of alpha-beta pruning. Initial call should make this Integer.Min_Value.
+     * @param beta Holds the value of beta in the context of alpha-beta pruning. Initial call should make this Integer.Max_Value.
+     * @param board Holds the current board. Initial call should make this the given board.
+     * @param context Holds the cutoff depth, the best move and the lists of children of this search.
+     *                Initial call should reset it.
+     * @return Returns the value of the board.
+     */
+    public int minimax(boolean maxPlayer, int level, int alpha, int beta, WideBoard board, SearchContext<WideBoard> context){
+        context.visit();
+        //reached the cutoff level
+        if(level > context.getMaxLevel()){
+            return board.reversiHeuristic(board.playerTurn);
+        }
+
+        //finds children for the correct color, the player to move when maximizing and the other player otherwise
+        char turn = board.playerTurn;
+        char other = turn == 'x' ? 'o' : 'x';
+        List<WideBoard> children = context.children(level);
+        board.findValidMoves(maxPlayer ? turn : other, children);
+
+        //if no more moves, return value
+        if(children.size() == 0){
+            if(maxPlayer){
+                return board.getValue(turn);
+            }
+            else{
+                return -1 * board.getValue(turn);
+            }
+        }
+
+        //If the current iteration aims to find max value
+        if(maxPlayer){
+            int max = Integer.MIN_VALUE;
+            int bestMoveLocation = 0;
+
+            //run minimax for each children
+            for(int i = 0; i<children.size(); i++){
+                int keep = minimax(false, level + 1, alpha, beta, children.get(i), context);
+                max = Math.max(max, keep);
+                if(keep > alpha){
+                    alpha = keep;
+                    bestMoveLocation = i;
+                }
+                if(beta <= alpha){
+                    context.cutoff();
+                    break;
+                }
+            }
+
+            //back at top of tree
+            if(level == 0){
+                context.setBestMove(children.get(bestMoveLocation));
+            }
+
+            return max;
+        }
+        //if current iteration aims to minimize value
+        else{
+            int min = Integer.MAX_VALUE;
+            for(int i = 0; i<children.size(); i++){
+                int keep = minimax(true, level + 1, alpha, beta, children.get(i), context);
+                min = Math.min(min, keep);
+                if(keep < beta){
+                    beta = keep;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Function that changes the current board to the best move as per minimax()
+     *
+     * @param context context the search was run with
+     * @return returns the MoveList move played
+     */
+    public int cpuMinimax(SearchContext<WideBoard> context){
+        WideBoard bestMove = context.getBestMove();
+        //the one square the best move filled, bit x of row y
+        int move = -1;
+        for(int y = 0; y<gameSize && move < 0; y++){
+            long filled = (bestMove.black[y] | bestMove.white[y]) & ~(black[y] | white[y]);
+            if(filled != 0){
+                move = MoveList.move(Long.numberOfTrailingZeros(filled), y);
+            }
+        }
+        System.arraycopy(bestMove.black, 0, black, 0, gameSize);
+        System.arraycopy(bestMove.white, 0, white, 0, gameSize);
+        if(playerTurn == 'x'){
+            playerTurn = 'o';
+        }
+        else{
+            playerTurn = 'x';
+        }
+        return move;
+    }
+
+    /**
+     * -----------STATE OF GAME CODE--------------
+     */
+
+    /**
+     * Returns if the game is over. i.e. when there is no more valid moves
+     * @return true if there are no more valid moves, false if there is
+     */
+    public boolean isGameOver() {
+        return !hasValidMove('x') && !hasValidMove('o');
+    }
+
+    //Returns if the player has any legal move
+    public boolean hasValidMove(char playerChar) {
+        long[] legal = movesFor(playerChar);
+        for(int y = 0; y<gameSize; y++){
+            if(legal[y] != 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Gets the number of legal moves of the player
+    public int countValidMoves(char playerChar){
+        long[] legal = movesFor(playerChar);
+        int count = 0;
+        for(int y = 0; y<gameSize; y++){
+            count += Long.bitCount(legal[y]);
+        }
+        return count;
+    }
+
+    /**
+     * Heurisitc function that calculates the value of the current board state,
+     * in favor of the given player. Counts number of pieces and weighs corners highly
+     *
+     * @param playerChar given player character to calculate in favor of
+     * @return returns the value of the board
+     */
+    public int reversiHeuristic(char playerChar){
+        char otherChar = playerChar == 'x' ? 'o' : 'x';
+        int last = gameSize - 1;
+        int own = 0;
+        int opp = 0;
+        int[][] corners = {{0, 0}, {last, last}, {last, 0}, {0, last}};
+        for(int[] corner: corners){
+            char piece = pieceAt(corner[0], corner[1]);
+            if(piece == playerChar){
+                own++;
+            }
+            else if(piece == otherChar){
+                opp++;
+            }
+        }
+        int val = own == 0 ? 0 : own - opp;
+        return getValue(playerChar) - getValue(otherChar) + val*gameSize;
+    }
+
+    //Gets the difference in number of pieces in favor of black
+    public int valueDiffBlack(){
+        return getValue('x') - getValue('o');
+    }
+
+    //Gets the difference in number of pieces in favor of white
+    public int valueDiffWhite(){
+        return getValue('o') - getValue('x');
+    }
+
+    //Gets the number of empty squares left on the board
+    public int getEmptyCount(){
+        return gameSize * gameSize - getValue('x') - getValue('o');
+    }
+
+    /**
+     * Finds the value of the board in favor the the given player character,
+     * does this by counting the number of pieces of that color on the board
+     *
+     * @param playerChar piece that will have its value calculated
+     * @return returns the number of pieces of given playerChar
+     */
+    public int getValue(char playerChar) {
+        long[] rows = playerChar == 'x' ? black : playerChar == 'o' ? white : null;
+        if(rows == null){
+            return 0;
+        }
+        int val = 0;
+        for(int y = 0; y<gameSize; y++){
+            val += Long.bitCount(rows[y]);
+        }
+        return val;
+    }
+
+    /**
+     * -----------BOARD PRINTING CODE--------------
+     */
+
+    /**
+     * Prints out the board with formatted border
+     */
+    public void printBoard(){
+        printHorizontalBorder();
+        printBoardState();
+        printHorizontalBorder();
+    }
+
+    /**
+     * Helper funtion for printBoard() that prints the alphabetical borders, lined up with
+     * row numbers of two digits
+     */
+    public void printHorizontalBorder(){
+        System.out.print("   ");
+        for(int i = 97; i<gameSize + 97; i++){
+            if(i == gameSize+96){
+                System.out.print((char)i);
+            }
+            else{
+                System.out.print((char)i + "| ");
+            }
+        }
+        System.out.println();
+    }
+
+    /**
+     * Helper function for printBoard() that prints the current board state
+     */
+    public void printBoardState(){
+        printLine();
+        for(int i = 0; i<gameSize; i++){
+            System.out.print(String.format("%2d ", i + 1));
+            for(int j = 0; j<gameSize; j++){
+                if(j == gameSize - 1){
+                    System.out.print(pieceAt(j, i) + " ");
+                    System.out.print((i + 1) + " ");
+                }
+                else{
+                    System.out.print(pieceAt(j, i) + "| ");
+                }
+            }
+            System.out.println();
+            printLine();
+        }
+    }
+
+    /**
+     * Helper method for printBoardState() that prints out the horizontal lines
+     */
+    public void printLine(){
+        System.out.print("  ");
+        for(int i = 0; i<gameSize; i++){
+            System.out.print("___");
+        }
+        System.out.println();
+    }
+
+     /**
+     * -----------GETTERS AND SETTERS--------------
+     */
+
+    /**
+     * Finds the piece on a board location
+     *
+     * @param x x axis location
+     * @param y y axis location
+     * @return returns 'x', 'o' or a space for an empty square
+     */
+    public char pieceAt(int x, int y){
+        if(((black[y] >>> x) & 1L) != 0){
+            return 'x';
+        }
+        else if(((white[y] >>> x) & 1L) != 0){
+            return 'o';
+        }
+        return (char)32;
+    }
+
+    public int getGameSize() {
+        return gameSize;
+    }
+
+    //vector move generator of the board, null when it uses the scalar loops
+    public MoveGenerator getMoveGenerator() {
+        return generator;
+    }
+
+    //sets the move generator of this board alone, null for the scalar loops
+    public void setMoveGenerator(MoveGenerator generator) {
+        this.generator = generator;
+    }
+
+    public char hasCurrentTurn() {
+        return playerTurn;
+    }
+
+    public void setPlayerTurn(char playerTurn) {
+        this.playerTurn = playerTurn;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder text = new StringBuilder();
+        for(int y = 0; y<gameSize; y++){
+            for(int x = 0; x<gameSize; x++){
+                text.append(pieceAt(x, y) == (char)32 ? '-' : pieceAt(x, y));
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+}
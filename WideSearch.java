@@ -0,0 +1,271 @@
+import java.util.Arrays;
+/*
+ * File: WideSearch.java
+ *
+ * Alpha-beta search in the negamax form for boards too large for Search, playing and taking
+ * back moves in place on a WideBoard. It deepens one move at a time, trying the best root move
+ * of the previous depth first and the other moves corners first and squares next to a corner
+ * last. Leaves are scored with the same heuristic as HeuristicEvaluator, which works on every
+ * board size, and finished games with Search.finalScore() so both searches agree on wins.
+ *
+ * There is no transposition table or endgame solver, as the positions of a large board seldom
+ * repeat within a search and are far from solvable until the very end.
+ */
+public class WideSearch implements MoveSearch {
+
+    private static final int INFINITY = Integer.MAX_VALUE - 1;
+    //nodes between checks of the clock
+    private static final int TIME_CHECK_INTERVAL = 1024;
+    //order of moves by square, corners first and the squares that give a corner away last
+    private static final int CORNER = 4;
+    private static final int EDGE = 3;
+    private static final int INSIDE = 2;
+    private static final int NEXT_TO_CORNER = 0;
+
+    private WideBoard board;
+    private MoveList[] lists;
+    private int[][] ordered;
+    private int[][] keys;
+    private int[] squarePriority;
+    private int orderedSize;
+    private int bestMove;
+    private int rootMove;
+    private int completedDepth;
+    private int score;
+    private long nodes;
+    private long deadline;
+    private boolean timed;
+    private boolean stopped;
+
+    public WideSearch(){
+        lists = new MoveList[0];
+        ordered = new int[0][];
+        keys = new int[0][];
+        bestMove = -1;
+        rootMove = -1;
+    }
+
+    /**
+     * Searches the given position to a fixed depth
+     *
+     * @param position board to search from, it is not changed
+     * @param playerChar player to find a move for
+     * @param depth number of moves to look ahead, passes are not counted
+     * @return returns the MoveList move of the best move, -1 if the player has no moves
+     */
+    public int findMove(TwoPlayerPlayable<?> position, char playerChar, int depth){
+        return deepen(position, playerChar, Math.max(depth, 1), Long.MAX_VALUE);
+    }
+
+    /**
+     * Searches one move deeper at a time until the time budget runs out. The depth that runs out
+     * of time is thrown away and the first depth always finishes.
+     *
+     * @param position board to search from, it is not changed
+     * @param playerChar player to find a move for
+     * @param maxDepth deepest search to try, Integer.MAX_VALUE for no limit
+     * @param budgetMillis wall clock time the search may take
+     * @return returns the MoveList move of the best move, -1 if the player has no moves
+     */
+    public int findMoveTimed(TwoPlayerPlayable<?> position, char playerChar, int maxDepth, long budgetMillis){
+        return deepen(position, playerChar, maxDepth, System.nanoTime() + budgetMillis * 1000000L);
+    }
+
+    //iterative deepening behind both searches
+    private int deepen(TwoPlayerPlayable<?> position, char playerChar, int maxDepth, long deadlineNanos){
+        board = WideBoard.fromBoard(position, playerChar);
+        prepare(board.getGameSize());
+        nodes = 0;
+        completedDepth = 0;
+        score = 0;
+        stopped = false;
+        timed = false;
+        deadline = deadlineNanos;
+        rootMove = -1;
+        if(!board.hasValidMove(playerChar)){
+            return -1;
+        }
+
+        int empties = board.getEmptyCount();
+        int result = -1;
+        for(int depth = 1; depth<=maxDepth; depth++){
+            rootMove = result;
+            bestMove = -1;
+            int value = negamax(0, depth, -INFINITY, INFINITY);
+            if(stopped){
+                break;
+            }
+            result = bestMove;
+            score = value;
+            completedDepth = depth;
+            //only check the clock once there is a move to fall back on
+            timed = deadline != Long.MAX_VALUE;
+            //every line already reaches the end of the game
+            if(depth >= empties || System.nanoTime() > deadline){
+                break;
+            }
+        }
+        rootMove = -1;
+        return result;
+    }
+
+    /**
+     * Negamax search with alpha-beta pruning, playing moves in place on the board
+     *
+     * @param ply number of moves and passes played since the root
+     * @param depth number of moves left before the heuristic is used
+     * @param alpha lower bound of the window
+     * @param beta upper bound of the window
+     * @return returns the value of the board for the player to move
+     */
+    private int negamax(int ply, int depth, int alpha, int beta){
+        nodes++;
+        if(timed && (nodes % TIME_CHECK_INTERVAL) == 0 && System.nanoTime() > deadline){
+            stopped = true;
+        }
+        if(stopped){
+            return 0;
+        }
+        char turn = board.hasCurrentTurn();
+        char other = turn == 'x' ? 'o' : 'x';
+        MoveList moves = list(ply);
+        board.generateMoves(turn, moves);
+
+        //no moves means either a pass or the end of the game
+        if(moves.isEmpty()){
+            if(!board.hasValidMove(other)){
+                return Search.finalScore(board.getValue(turn) - board.getValue(other));
+            }
+            board.passTurn();
+            int score = -negamax(ply + 1, depth, -beta, -alpha);
+            board.passTurn();
+            return score;
+        }
+
+        //reached the cutoff level
+        if(depth == 0){
+            return board.reversiHeuristic(turn);
+        }
+
+        int count = order(ply, moves);
+        int[] order = ordered[ply];
+        int best = -INFINITY;
+        for(int i = 0; i<count; i++){
+            int move = order[i];
+            board.makeMove(move);
+            int score = -negamax(ply + 1, depth - 1, -beta, -alpha);
+            board.undoMove(move);
+            if(stopped){
+                return 0;
+            }
+            if(score > best){
+                best = score;
+                if(ply == 0){
+                    bestMove = move;
+                }
+            }
+            if(score > alpha){
+                alpha = score;
+            }
+            if(alpha >= beta){
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * -----------MOVE ORDERING CODE--------------
+     */
+
+    //sorts the moves of a ply into ordered[ply], best first, and returns how many there are
+    private int order(int ply, MoveList moves){
+        int count = moves.size();
+        int[] order = ordered[ply];
+        int[] key = keys[ply];
+        for(int i = 0; i<count; i++){
+            int move = moves.get(i);
+            int value = squarePriority[MoveList.moveX(move) * orderedSize + MoveList.moveY(move)];
+            if(ply == 0 && move == rootMove){
+                value = Integer.MAX_VALUE;
+            }
+            //insertion sort, the lists are short
+            int j = i;
+            while(j > 0 && key[j - 1] < value){
+                order[j] = order[j - 1];
+                key[j] = key[j - 1];
+                j--;
+            }
+            order[j] = move;
+            key[j] = value;
+        }
+        return count;
+    }
+
+    //builds the square priorities for a board size and makes sure there are lists for every ply
+    private void prepare(int size){
+        if(orderedSize != size){
+            orderedSize = size;
+            squarePriority = new int[size * size];
+            int last = size - 1;
+            for(int x = 0; x<size; x++){
+                for(int y = 0; y<size; y++){
+                    boolean edgeX = x == 0 || x == last;
+                    boolean edgeY = y == 0 || y == last;
+                    boolean nearX = x <= 1 || x >= last - 1;
+                    boolean nearY = y <= 1 || y >= last - 1;
+                    int priority = INSIDE;
+                    if(edgeX && edgeY){
+                        priority = CORNER;
+                    }
+                    else if(nearX && nearY){
+                        priority = NEXT_TO_CORNER;
+                    }
+                    else if(edgeX || edgeY){
+                        priority = EDGE;
+                    }
+                    squarePriority[x * size + y] = priority;
+                }
+            }
+            Arrays.fill(ordered, null);
+            Arrays.fill(keys, null);
+        }
+    }
+
+    //the move list of a ply, made the first time a search gets that deep
+    private MoveList list(int ply){
+        if(ply >= lists.length){
+            int length = Math.max(ply + 1, lists.length * 2);
+            lists = Arrays.copyOf(lists, length);
+            ordered = Arrays.copyOf(ordered, length);
+            keys = Arrays.copyOf(keys, length);
+        }
+        if(lists[ply] == null){
+            lists[ply] = new MoveList(orderedSize * orderedSize);
+        }
+        if(ordered[ply] == null){
+            ordered[ply] = new int[orderedSize * orderedSize];
+            keys[ply] = new int[orderedSize * orderedSize];
+        }
+        return lists[ply];
+    }
+
+    /**
+     * ---------GETTERS----------
+     */
+
+    //nodes visited by the last search
+    public long getNodes() {
+        return nodes;
+    }
+
+    //deepest search that finished in the last call
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    //value of the best move of the deepest search that finished, for the player to move
+    public int getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.SplittableRandom;
+/*
+ * File: Zobrist.java
+ *
+ * Random keys for Zobrist hashing of bitboard positions. The hash of a position is the
+ * XOR of one key per piece plus a key for white to move, so a move can update it by
+ * XORing only the placed piece and the flipped pieces.
+ */
+public class Zobrist {
+
+    //fixed seed so hashes are the same on every run
+    private static final long SEED = 0x5EED_0F_0E11L;
+
+    public static final long[] BLACK_KEYS = new long[64];
+    public static final long[] WHITE_KEYS = new long[64];
+    //a flipped piece changes color, so its key is the black and white keys together
+    public static final long[] FLIP_KEYS = new long[64];
+    public static final long WHITE_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for(int i = 0; i<64; i++){
+            BLACK_KEYS[i] = random.nextLong();
+            WHITE_KEYS[i] = random.nextLong();
+            FLIP_KEYS[i] = BLACK_KEYS[i] ^ WHITE_KEYS[i];
+        }
+        WHITE_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist(){
+    }
+
+    /**
+     * Computes the hash of a position from scratch
+     *
+     * @param black bits of the black pieces
+     * @param white bits of the white pieces
+     * @param playerChar player to move
+     * @return returns the Zobrist hash of the position
+     */
+    public static long hash(long black, long white, char playerChar){
+        long hash = playerChar == 'o' ? WHITE_TO_MOVE : 0;
+        for(long bits = black; bits != 0; bits &= bits - 1){
+            hash ^= BLACK_KEYS[Long.numberOfTrailingZeros(bits)];
+        }
+        for(long bits = white; bits != 0; bits &= bits - 1){
+            hash ^= WHITE_KEYS[Long.numberOfTrailingZeros(bits)];
+        }
+        return hash;
+    }
+
+    /**
+     * Finds the change in hash caused by a move
+     *
+     * @param square bit index of the placed piece
+     * @param flipped bits of the flipped pieces
+     * @param playerChar player who made the move
+     * @return returns the value to XOR into the hash, including the change of player to move
+     */
+    public static long moveDelta(int square, long flipped, char playerChar){
+        long delta = (playerChar == 'x' ? BLACK_KEYS[square] : WHITE_KEYS[square]) ^ WHITE_TO_MOVE;
+        for(long bits = flipped; bits != 0; bits &= bits - 1){
+            delta ^= FLIP_KEYS[Long.numberOfTrailingZeros(bits)];
+        }
+        return delta;
+    }
+}